@@ -0,0 +1,121 @@
+package smc;
+
+import java.nio.IntBuffer;
+import java.util.*;
+
+// The transition function of an OptimizedStateMachine as a dense table indexed
+// by state and event ordinals.  Each cell holds the next state, or UNHANDLED,
+// and the index of the cell's action sequence.  Identical action sequences
+// are shared, and sequence 0 is always the empty sequence.  The cells may be
+// backed by arrays or by a view of a mapped file.
+
+public class DenseStateMachine {
+  public static final int UNHANDLED = -1;
+  public final String fsm;
+  public final String actionsClass;
+  public final List<String> states;
+  public final List<String> events;
+  public final List<String> actions;
+  public final int initialState;
+  public final List<int[]> actionSequences;
+  private final IntBuffer nextStates;
+  private final IntBuffer cellActionSequences;
+
+  public DenseStateMachine(String fsm, String actionsClass,
+                           List<String> states, List<String> events, List<String> actions,
+                           int initialState, List<int[]> actionSequences,
+                           IntBuffer nextStates, IntBuffer cellActionSequences) {
+    this.fsm = fsm;
+    this.actionsClass = actionsClass;
+    this.states = states;
+    this.events = events;
+    this.actions = actions;
+    this.initialState = initialState;
+    this.actionSequences = actionSequences;
+    this.nextStates = nextStates;
+    this.cellActionSequences = cellActionSequences;
+  }
+
+  public static DenseStateMachine of(OptimizedStateMachine sm) {
+    Map<String, Integer> stateOrdinals = ordinals(sm.states);
+    Map<String, Integer> eventOrdinals = ordinals(sm.events);
+    Map<String, Integer> actionOrdinals = ordinals(sm.actions);
+    int cellCount = sm.states.size() * sm.events.size();
+    int[] nextStates = new int[cellCount];
+    int[] cellActionSequences = new int[cellCount];
+    Arrays.fill(nextStates, UNHANDLED);
+
+    List<int[]> actionSequences = new ArrayList<>();
+    Map<List<String>, Integer> sequenceIndices = new HashMap<>();
+    actionSequences.add(new int[0]);
+    sequenceIndices.put(List.of(), 0);
+    for (OptimizedStateMachine.Transition t : sm.transitions) {
+      int state = stateOrdinals.get(t.currentState);
+      for (OptimizedStateMachine.SubTransition st : t.subTransitions) {
+        int cell = state * sm.events.size() + eventOrdinals.get(st.event);
+        nextStates[cell] = stateOrdinals.get(st.nextState);
+        cellActionSequences[cell] = sequenceIndices.computeIfAbsent(st.actions, actions -> {
+          actionSequences.add(actions.stream().mapToInt(actionOrdinals::get).toArray());
+          return actionSequences.size() - 1;
+        });
+      }
+    }
+
+    return new DenseStateMachine(sm.header.fsm, sm.header.actions,
+      List.copyOf(sm.states), List.copyOf(sm.events), List.copyOf(sm.actions),
+      stateOrdinals.get(sm.header.initial), actionSequences,
+      IntBuffer.wrap(nextStates), IntBuffer.wrap(cellActionSequences));
+  }
+
+  private static Map<String, Integer> ordinals(List<String> names) {
+    Map<String, Integer> ordinals = new HashMap<>();
+    for (String name : names)
+      ordinals.put(name, ordinals.size());
+    return ordinals;
+  }
+
+  public int cellCount() {
+    return states.size() * events.size();
+  }
+
+  public int nextState(int state, int event) {
+    return nextStates.get(state * events.size() + event);
+  }
+
+  public int actionSequence(int state, int event) {
+    return cellActionSequences.get(state * events.size() + event);
+  }
+
+  public int[] actions(int state, int event) {
+    return actionSequences.get(actionSequence(state, event));
+  }
+
+  public OptimizedStateMachine toOptimizedStateMachine() {
+    OptimizedStateMachine sm = new OptimizedStateMachine();
+    sm.header = new OptimizedStateMachine.Header();
+    sm.header.fsm = fsm;
+    sm.header.actions = actionsClass;
+    sm.header.initial = states.get(initialState);
+    sm.states.addAll(states);
+    sm.events.addAll(events);
+    sm.actions.addAll(actions);
+    for (int state = 0; state < states.size(); state++) {
+      OptimizedStateMachine.Transition t = new OptimizedStateMachine.Transition();
+      t.currentState = states.get(state);
+      for (int event = 0; event < events.size(); event++)
+        if (nextState(state, event) != UNHANDLED)
+          t.subTransitions.add(toSubTransition(state, event));
+      sm.transitions.add(t);
+    }
+    return sm;
+  }
+
+  private OptimizedStateMachine.SubTransition toSubTransition(int state, int event) {
+    OptimizedStateMachine.SubTransition st = new OptimizedStateMachine.SubTransition();
+    st.event = events.get(event);
+    st.nextState = states.get(nextState(state, event));
+    for (int action : actions(state, event))
+      st.actions.add(actions.get(action));
+    return st;
+  }
+}
@@ -0,0 +1,172 @@
+package smc;
+
+import smc.lexer.Lexer;
+import smc.optimizer.Optimizer;
+import smc.parser.FsmSyntax;
+import smc.parser.ParallelParser;
+import smc.parser.Parser;
+import smc.parser.SyntaxBuilder;
+import smc.semanticAnalyzer.SemanticAnalyzer;
+import smc.semanticAnalyzer.SemanticStateMachine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static smc.parser.ParserEvent.EOF;
+
+// Keeps parsed and analyzed machines alive between compilations.  An entry is
+// keyed by the absolute path of its .sm file and is reused while the file's
+// modification time, or failing that the hash of its contents, is unchanged,
+// and none of the modules it includes has been modified.
+
+public class MachineCache {
+  // Sources at least this long are parsed on several threads.
+  private static final int PARALLEL_PARSE_THRESHOLD = Integer.getInteger("smc.parallelParseThreshold", 256 * 1024);
+  private final Map<Path, Machine> machines = new ConcurrentHashMap<>();
+  private final ModuleLinker linker = new ModuleLinker();
+
+  public Machine get(Path sourcePath) throws IOException {
+    Path key = sourcePath.toAbsolutePath().normalize();
+    FileTime lastModified = Files.getLastModifiedTime(key);
+    Machine cached = machines.get(key);
+    if (cached != null && cached.lastModified.equals(lastModified) && cached.compilation.modulesUnchanged())
+      return cached;
+
+    byte[] source = Files.readAllBytes(key);
+    String hash = hash(source);
+    Machine machine;
+    if (cached != null && cached.hash.equals(hash) && cached.compilation.modulesUnchanged())
+      machine = new Machine(cached, lastModified);
+    else
+      machine = new Machine(new Compilation(key, new String(source), linker), hash, lastModified);
+    machines.put(key, machine);
+    return machine;
+  }
+
+  // The fragments parsed from the machine and its modules go too; a module
+  // another machine still includes is parsed again when that machine is.
+  public void evict(Path sourcePath) {
+    Path key = sourcePath.toAbsolutePath().normalize();
+    Machine machine = machines.remove(key);
+    linker.forget(key);
+    if (machine != null)
+      machine.compilation.modules().forEach(linker::forget);
+  }
+
+  public int size() {
+    return machines.size();
+  }
+
+  public static String hash(byte[] bytes) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static FsmSyntax parse(String smContent) {
+    if (smContent.length() >= PARALLEL_PARSE_THRESHOLD)
+      return ParallelParser.parse(smContent);
+    SyntaxBuilder syntaxBuilder = new SyntaxBuilder();
+    Parser parser = new Parser(syntaxBuilder);
+    Lexer lexer = new Lexer(parser);
+    lexer.lex(smContent);
+    parser.handleEvent(EOF, -1, -1);
+    return syntaxBuilder.getFsm();
+  }
+
+  public static class Machine {
+    public final String hash;
+    public final FileTime lastModified;
+    private final Compilation compilation;
+
+    private Machine(Compilation compilation, String hash, FileTime lastModified) {
+      this.hash = hash;
+      this.lastModified = lastModified;
+      this.compilation = compilation;
+    }
+
+    private Machine(Machine machine, FileTime lastModified) {
+      hash = machine.hash;
+      this.lastModified = lastModified;
+      compilation = machine.compilation;
+    }
+
+    public FsmSyntax syntax() {
+      return compilation.syntax();
+    }
+
+    public SemanticStateMachine semanticStateMachine() {
+      return compilation.semanticStateMachine();
+    }
+
+    public OptimizedStateMachine optimizedStateMachine() {
+      return compilation.optimizedStateMachine();
+    }
+  }
+
+  private static class Compilation {
+    private final Path sourcePath;
+    private final String source;
+    private final ModuleLinker linker;
+    private FsmSyntax syntax;
+    private Map<Path, FileTime> modules;
+    private SemanticStateMachine semanticStateMachine;
+    private OptimizedStateMachine optimizedStateMachine;
+
+    private Compilation(Path sourcePath, String source, ModuleLinker linker) {
+      this.sourcePath = sourcePath;
+      this.source = source;
+      this.linker = linker;
+    }
+
+    synchronized FsmSyntax syntax() {
+      if (syntax == null) {
+        ModuleLinker.Linked linked = linker.link(sourcePath, source);
+        syntax = linked.syntax;
+        modules = linked.modules;
+      }
+      return syntax;
+    }
+
+    synchronized Set<Path> modules() {
+      return modules == null ? Set.of() : modules.keySet();
+    }
+
+    // Modules are only known once the source has been parsed.  A module that
+    // could not be read counts as changed once it exists.
+    synchronized boolean modulesUnchanged() {
+      if (modules == null)
+        return true;
+      try {
+        for (Map.Entry<Path, FileTime> module : modules.entrySet())
+          if (module.getValue() == null ? Files.exists(module.getKey()) : !Files.getLastModifiedTime(module.getKey()).equals(module.getValue()))
+            return false;
+        return true;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+
+    synchronized SemanticStateMachine semanticStateMachine() {
+      if (semanticStateMachine == null)
+        semanticStateMachine = new SemanticAnalyzer().analyze(syntax());
+      return semanticStateMachine;
+    }
+
+    synchronized OptimizedStateMachine optimizedStateMachine() {
+      if (optimizedStateMachine == null)
+        optimizedStateMachine = new Optimizer().optimize(semanticStateMachine());
+      return optimizedStateMachine;
+    }
+  }
+}
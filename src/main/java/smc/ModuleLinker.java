@@ -0,0 +1,180 @@
+package smc;
+
+import smc.parser.FsmSyntax;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static smc.parser.FsmSyntax.SyntaxError.Type.INCLUDE;
+
+// Resolves Include headers.  "Include: name" names the module name.smi in the
+// directory of the including file.  A module holds transitions and may include
+// further modules; its other headers are ignored.  Each module is included
+// once, however often it is named.
+//
+// Every file is parsed on its own, the modules of one level of includes in
+// parallel, and the fragment parsed from each file is kept with the hash of
+// its content, so editing one module parses only that module again.  Only
+// the latest fragment of a file is kept, so the cache grows with the number
+// of files rather than with the number of edits.  The modules' transitions
+// follow those of the including file, level by level in include order.
+// Modules that cannot be read are linked with no modification time, so that
+// creating them later is noticed.
+
+class ModuleLinker {
+  static final String MODULE_EXTENSION = ".smi";
+  private static final Pattern includePattern = Pattern.compile("\\bInclude\\s*:\\s*(\\w+)");
+  private final Map<Path, Fragment> fragments = new ConcurrentHashMap<>();
+
+  Linked link(Path sourcePath, String source) {
+    FsmSyntax main = fragment(sourcePath.toAbsolutePath().normalize(), source.getBytes());
+    FsmSyntax linked = new FsmSyntax();
+    linked.headers.addAll(main.headers);
+    linked.includes.addAll(main.includes);
+    linked.regions.addAll(main.regions);
+    linked.logic.addAll(main.logic);
+    linked.errors.addAll(main.errors);
+    linked.done = main.done;
+
+    Map<Path, FileTime> modules = new LinkedHashMap<>();
+    Set<Path> seen = new HashSet<>(Set.of(sourcePath));
+    List<Module> level = includesOf(sourcePath, null, main, seen);
+    while (!level.isEmpty()) {
+      level.parallelStream().forEach(Module::load);
+      List<Module> nextLevel = new ArrayList<>();
+      for (Module module : level) {
+        if (module.fragment == null) {
+          linked.errors.add(includeError(module.include, module.includedFrom, "Cannot read " + module.path.getFileName()));
+          modules.put(module.path, null);
+          continue;
+        }
+        modules.put(module.path, module.lastModified);
+        linked.logic.addAll(module.fragment.logic);
+        for (FsmSyntax.SyntaxError error : module.fragment.errors)
+          linked.errors.add(new FsmSyntax.SyntaxError(error.type, error.msg + " in " + module.path.getFileName(), error.lineNumber, error.position));
+        nextLevel.addAll(includesOf(module.path, module.path.getFileName().toString(), module.fragment, seen));
+      }
+      level = nextLevel;
+    }
+    return new Linked(linked, modules);
+  }
+
+  private List<Module> includesOf(Path path, String fileName, FsmSyntax fragment, Set<Path> seen) {
+    List<Module> includes = new ArrayList<>();
+    for (FsmSyntax.Include include : fragment.includes) {
+      Path modulePath = modulePath(path, include.name);
+      if (seen.add(modulePath))
+        includes.add(new Module(modulePath, include, fileName));
+    }
+    return includes;
+  }
+
+  private static FsmSyntax.SyntaxError includeError(FsmSyntax.Include include, String includedFrom, String message) {
+    String msg = includedFrom == null ? message : message + " in " + includedFrom;
+    return new FsmSyntax.SyntaxError(INCLUDE, msg, include.lineNumber, include.position);
+  }
+
+  private FsmSyntax fragment(Path path, byte[] source) {
+    String hash = MachineCache.hash(source);
+    return fragments.compute(path, (p, cached) ->
+      cached != null && cached.hash.equals(hash) ? cached : new Fragment(hash, MachineCache.parse(new String(source)))).syntax;
+  }
+
+  FsmSyntax cachedFragment(Path path) {
+    Fragment fragment = fragments.get(path);
+    return fragment == null ? null : fragment.syntax;
+  }
+
+  int cachedFragmentCount() {
+    return fragments.size();
+  }
+
+  void forget(Path path) {
+    fragments.remove(path);
+  }
+
+  private static Path modulePath(Path includingPath, String name) {
+    return includingPath.resolveSibling(name + MODULE_EXTENSION).toAbsolutePath().normalize();
+  }
+
+  // Every module a source includes, directly or not, found without parsing by
+  // looking for Include headers in front of the logic.  Modules that cannot be
+  // read are left out.
+  static List<Path> includedFiles(Path sourcePath) {
+    List<Path> files = new ArrayList<>();
+    Set<Path> seen = new HashSet<>(Set.of(sourcePath.toAbsolutePath().normalize()));
+    Deque<Path> pending = new ArrayDeque<>(seen);
+    while (!pending.isEmpty()) {
+      Path path = pending.poll();
+      String source;
+      try {
+        source = Files.readString(path);
+      } catch (IOException e) {
+        continue;
+      }
+      if (!path.equals(sourcePath.toAbsolutePath().normalize()))
+        files.add(path);
+      Matcher matcher = includePattern.matcher(headers(source));
+      while (matcher.find()) {
+        Path modulePath = modulePath(path, matcher.group(1));
+        if (seen.add(modulePath))
+          pending.add(modulePath);
+      }
+    }
+    return files;
+  }
+
+  private static String headers(String source) {
+    int logic = source.indexOf('{');
+    return (logic < 0 ? source : source.substring(0, logic)).replaceAll("//[^\n]*", "");
+  }
+
+  static class Linked {
+    final FsmSyntax syntax;
+    final Map<Path, FileTime> modules;
+
+    Linked(FsmSyntax syntax, Map<Path, FileTime> modules) {
+      this.syntax = syntax;
+      this.modules = modules;
+    }
+  }
+
+  private static class Fragment {
+    final String hash;
+    final FsmSyntax syntax;
+
+    Fragment(String hash, FsmSyntax syntax) {
+      this.hash = hash;
+      this.syntax = syntax;
+    }
+  }
+
+  private class Module {
+    final Path path;
+    final FsmSyntax.Include include;
+    final String includedFrom;
+    FileTime lastModified;
+    FsmSyntax fragment;
+
+    Module(Path path, FsmSyntax.Include include, String includedFrom) {
+      this.path = path;
+      this.include = include;
+      this.includedFrom = includedFrom;
+    }
+
+    void load() {
+      try {
+        lastModified = Files.getLastModifiedTime(path);
+        fragment = fragment(path, Files.readAllBytes(path));
+      } catch (IOException e) {
+        fragment = null;
+      }
+    }
+  }
+}
@@ -1,7 +1,6 @@
 package smc;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 // This is the final output of the finite state machine parser.
 // Code generators will use this format as their input.
@@ -12,6 +11,10 @@ public class OptimizedStateMachine {
   public List<String> actions = new ArrayList<>();
   public Header header;
   public List<Transition> transitions = new ArrayList<>();
+  public List<OptimizedStateMachine> regions = new ArrayList<>();
+  // Set when the product of the regions grew beyond the optimizer's limit and
+  // was not built.  Only a region dispatcher can be generated then.
+  public boolean productOmitted = false;
 
   public String transitionsToString() {
     StringBuilder result = new StringBuilder();
@@ -20,6 +23,24 @@ public class OptimizedStateMachine {
     return result.toString();
   }
 
+  // A form of the machine that does not depend on the order in which states,
+  // events and actions were declared.  Two machines with the same canonical
+  // string have the same transition function.
+  public String canonicalString() {
+    List<String> subTransitions = new ArrayList<>();
+    for (Transition t : transitions)
+      for (SubTransition st : t.subTransitions)
+        subTransitions.add(String.format("%s %s %s {%s}", t.currentState, st.event, st.nextState, st.actionsToString()));
+    Collections.sort(subTransitions);
+    StringBuilder regionStrings = new StringBuilder();
+    for (OptimizedStateMachine region : regions)
+      regionStrings.append("Region:\n").append(region.canonicalString());
+    return String.format("Initial: %s\nFsm: %s\nActions: %s\nStates: %s\nEvents: %s\nActionNames: %s\n%s\n%s",
+      header.initial, header.fsm, header.actions,
+      new TreeSet<>(states), new TreeSet<>(events), new TreeSet<>(actions),
+      String.join("\n", subTransitions), regionStrings);
+  }
+
   public String toString() {
     String transitionsString = transitionsToString().replaceAll("\n", "\n  ");
     transitionsString = transitionsString.substring(0, transitionsString.length()-2);
@@ -0,0 +1,196 @@
+package smc;
+
+import smc.generators.CodeGenerator;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+// An on-disk cache of generated files.  Entries are addressed by a hash of
+// everything that determines the output: the source bytes, the language, the
+// flags and the version of the compiler.  A hit restores the generated files
+// and replays the diagnostics without lexing, parsing or analyzing anything.
+// The least recently used entries are evicted once the cache outgrows its size
+// limit; an entry's modification time records when it was last used.
+
+public class OutputCache {
+  public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+  private static final String ENTRY_SUFFIX = ".entry";
+  private static String compilerVersion;
+  private final Path directory;
+  private final long maxBytes;
+
+  public OutputCache(Path directory, long maxBytes) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    Files.createDirectories(directory);
+  }
+
+  public static String key(byte[] source, String language, Map<String, String> flags) {
+    ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+    try (DataOutputStream key = new DataOutputStream(keyBytes)) {
+      key.writeUTF(compilerVersion());
+      key.writeUTF(language);
+      for (Map.Entry<String, String> flag : new TreeMap<>(flags).entrySet()) {
+        key.writeUTF(flag.getKey());
+        key.writeUTF(flag.getValue());
+      }
+      key.writeInt(source.length);
+      key.write(source);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return MachineCache.hash(keyBytes.toByteArray());
+  }
+
+  // The key of a source file also covers the modules it includes.
+  public static String key(Path sourcePath, String language, Map<String, String> flags) throws IOException {
+    ByteArrayOutputStream source = new ByteArrayOutputStream();
+    source.write(Files.readAllBytes(sourcePath));
+    for (Path module : ModuleLinker.includedFiles(sourcePath)) {
+      source.write(0);
+      source.write(module.getFileName().toString().getBytes());
+      source.write(0);
+      source.write(Files.readAllBytes(module));
+    }
+    return key(source.toByteArray(), language, flags);
+  }
+
+  public Entry get(String key) throws IOException {
+    Path entryPath = entryPath(key);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entryPath)))) {
+      Entry entry = Entry.readFrom(in);
+      Files.setLastModifiedTime(entryPath, FileTime.fromMillis(System.currentTimeMillis()));
+      return entry;
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  public void put(String key, String diagnostics, Path outputDirectory, List<Path> generatedFiles) throws IOException {
+    Entry entry = new Entry(diagnostics);
+    for (Path generatedFile : generatedFiles)
+      entry.files.put(outputDirectory.relativize(generatedFile).toString(), Files.readAllBytes(generatedFile));
+
+    Path temporary = Files.createTempFile(directory, key, ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      entry.writeTo(out);
+    }
+    Files.move(temporary, entryPath(key), REPLACE_EXISTING);
+    evictLeastRecentlyUsed();
+  }
+
+  private void evictLeastRecentlyUsed() throws IOException {
+    List<Path> entries;
+    try (Stream<Path> files = Files.list(directory)) {
+      entries = new ArrayList<>(files.filter(p -> p.toString().endsWith(ENTRY_SUFFIX)).toList());
+    }
+    Map<Path, FileTime> lastUsed = new HashMap<>();
+    long totalBytes = 0;
+    for (Path entry : entries) {
+      lastUsed.put(entry, Files.getLastModifiedTime(entry));
+      totalBytes += Files.size(entry);
+    }
+    entries.sort(Comparator.comparing(lastUsed::get));
+    for (Iterator<Path> oldest = entries.iterator(); totalBytes > maxBytes && oldest.hasNext(); ) {
+      Path entry = oldest.next();
+      totalBytes -= Files.size(entry);
+      Files.deleteIfExists(entry);
+    }
+  }
+
+  // Where generators keep the fingerprints of the files they wrote.
+  public Path fingerprintDirectory() {
+    return directory.resolve("fingerprints");
+  }
+
+  private Path entryPath(String key) {
+    return directory.resolve(key + ENTRY_SUFFIX);
+  }
+
+  // A hash of the compiler's own classes, so that a rebuilt compiler, even
+  // one with the same version number, never reuses output cached by another
+  // build.  Without a readable code source the version is unique to this
+  // process, and nothing cached by another process is reused.
+  public static synchronized String compilerVersion() {
+    if (compilerVersion == null) {
+      try {
+        compilerVersion = codeSourceHash(Path.of(SMC.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+      } catch (Exception e) {
+        compilerVersion = "process-" + UUID.randomUUID();
+      }
+    }
+    return compilerVersion;
+  }
+
+  static String codeSourceHash(Path codeSource) throws IOException, NoSuchAlgorithmException {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(codeSource)) {
+      files = walk.filter(Files::isRegularFile).sorted().toList();
+    }
+    for (Path file : files) {
+      digest.update(codeSource.relativize(file).toString().getBytes(UTF_8));
+      digest.update((byte) 0);
+      try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+        in.transferTo(OutputStream.nullOutputStream());
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  public static class Entry {
+    public final String diagnostics;
+    public final Map<String, byte[]> files = new LinkedHashMap<>();
+
+    Entry(String diagnostics) {
+      this.diagnostics = diagnostics;
+    }
+
+    public List<Path> restore(Path outputDirectory) throws IOException {
+      List<Path> restoredFiles = new ArrayList<>();
+      for (Map.Entry<String, byte[]> file : files.entrySet()) {
+        Path outputPath = outputDirectory.resolve(file.getKey());
+        CodeGenerator.writeIfChanged(outputPath, file.getValue());
+        restoredFiles.add(outputPath);
+      }
+      return restoredFiles;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+      byte[] diagnosticBytes = diagnostics.getBytes(UTF_8);
+      out.writeInt(diagnosticBytes.length);
+      out.write(diagnosticBytes);
+      out.writeInt(files.size());
+      for (Map.Entry<String, byte[]> file : files.entrySet()) {
+        out.writeUTF(file.getKey());
+        out.writeInt(file.getValue().length);
+        out.write(file.getValue());
+      }
+    }
+
+    static Entry readFrom(DataInputStream in) throws IOException {
+      byte[] diagnosticBytes = new byte[in.readInt()];
+      in.readFully(diagnosticBytes);
+      Entry entry = new Entry(new String(diagnosticBytes, UTF_8));
+      int fileCount = in.readInt();
+      for (int i = 0; i < fileCount; i++) {
+        String name = in.readUTF();
+        byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+        entry.files.put(name, content);
+      }
+      return entry;
+    }
+  }
+}
@@ -3,166 +3,232 @@ package smc;
 import com.cleancoder.args.Args;
 import com.cleancoder.args.ArgsException;
 import smc.generators.CodeGenerator;
-import smc.lexer.Lexer;
-import smc.optimizer.Optimizer;
+import smc.generators.CodeGeneratorProvider;
+import smc.generators.CodeGeneratorProvider.Input;
+import smc.generators.CodeGenerators;
+import smc.generators.JavaCodeGenerator;
+import smc.generators.javaCompiler.JarBatch;
+import smc.optimizer.RegionProduct;
 import smc.parser.FsmSyntax;
-import smc.parser.Parser;
-import smc.parser.SyntaxBuilder;
-import smc.semanticAnalyzer.SemanticAnalyzer;
 import smc.semanticAnalyzer.SemanticStateMachine;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.nio.file.Files;
+import java.io.PrintStream;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import static smc.parser.ParserEvent.EOF;
-
 public class SMC {
+  private static final String argSchema = "o*,l*,f&,w*,c*";
+
   public static void main(String[] args) throws Exception {
-    String argSchema = "o*,l*,f&";
+    compile(args, Paths.get(""), System.out, new MachineCache());
+  }
 
+  public static List<Path> compile(String[] args, Path workingDirectory, PrintStream out, MachineCache cache) throws IOException {
     try {
       Args argParser = new Args(argSchema, args);
-      new SmcCompiler(args, argParser).run();
+      SmcCompiler compiler = new SmcCompiler(args, argParser, workingDirectory, out, cache);
+      compiler.run();
+      return compiler.writtenFiles;
     } catch (ArgsException e) {
-      System.out.println("usage: " + argSchema + " file");
-      System.out.println(e.errorMessage());
-      System.exit(0);
+      out.println("usage: " + argSchema + " file...");
+      out.println(e.errorMessage());
+      return new ArrayList<>();
     }
   }
 
-  private static class SmcCompiler {
+  private static class SmcCompiler implements SourceWatcher.SourceCompiler {
+    private static final long WATCH_DEBOUNCE_MILLIS = 50;
+    private static final long OUTPUT_CACHE_MAX_BYTES = Long.getLong("smc.cache.maxBytes", OutputCache.DEFAULT_MAX_BYTES);
     private final String[] args;
     private final Args argParser;
+    private final Path workingDirectory;
+    private final PrintStream out;
+    private PrintStream diagnostics;
+    private final MachineCache cache;
+    private OutputCache outputCache = null;
+    private final List<Path> writtenFiles = new ArrayList<>();
+    private final JarBatch jarBatch = new JarBatch();
     Map<String, String> flags = new HashMap<>();
     private String outputDirectory = null;
     private String language = "Java";
 
-    public SmcCompiler(String[] args, Args argParser) {
+    public SmcCompiler(String[] args, Args argParser, Path workingDirectory, PrintStream out, MachineCache cache) {
       this.args = args;
       this.argParser = argParser;
+      this.workingDirectory = workingDirectory;
+      this.out = out;
+      this.cache = cache;
+      diagnostics = out;
     }
 
     public void run() throws IOException {
       extractCommandLineArguments();
 
-      FsmSyntax fsm = compile(getSourceCode());
-      int syntaxErrorCount = reportSyntaxErrors(fsm);
+      if (argParser.has('w'))
+        watch(workingDirectory.resolve(argParser.getString('w')));
+      else if (getSourcePaths().isEmpty())
+        out.println("usage: " + argSchema + " file...");
+      else {
+        for (Path sourcePath : getSourcePaths())
+          compile(sourcePath);
+        finish();
+      }
+    }
 
-      if (syntaxErrorCount == 0) if (flags.containsKey("isOptimized") && flags.get("isOptimized").equals("false")) {
-        generateCode(analyze(fsm));
-      } else {
-        generateCode(optimize(fsm));
+    private void watch(Path directory) throws IOException {
+      try (SourceWatcher watcher = new SourceWatcher(directory, out, cache, this, WATCH_DEBOUNCE_MILLIS)) {
+        watcher.watch();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
       }
     }
 
-    private void generateCode(SemanticStateMachine ast) throws IOException {
-      String generatorClassName = String.format("smc.generators.%sCodeGenerator", language);
-      CodeGenerator generator = createGenerator(generatorClassName, ast, outputDirectory, flags);
-      generator.generate();
+    // A jar is shared by every machine packaged into it, so it cannot be
+    // restored as one machine's output; machines going into a jar bypass the
+    // output cache.
+    public void compile(Path sourcePath) throws IOException {
+      if (outputCache == null || flags.containsKey("jar"))
+        generate(sourcePath);
+      else
+        compileThroughOutputCache(sourcePath);
+    }
+
+    // Machines going into jars are compiled and packaged together once every
+    // source of the run has been generated.
+    public void finish() throws IOException {
+      List<String> failures = new ArrayList<>();
+      writtenFiles.addAll(jarBatch.write(failures));
+      for (String failure : failures)
+        diagnostics.println(failure);
     }
 
-    private CodeGenerator createGenerator(String generatorClassName, SemanticStateMachine ast, String outputDirectory, Map<String, String> flags) {
+    private void compileThroughOutputCache(Path sourcePath) throws IOException {
+      String key = OutputCache.key(sourcePath, language, flags);
+      OutputCache.Entry entry = outputCache.get(key);
+      if (entry != null) {
+        out.print(entry.diagnostics);
+        writtenFiles.addAll(entry.restore(Paths.get(outputDirectory)));
+        return;
+      }
+
+      ByteArrayOutputStream capturedDiagnostics = new ByteArrayOutputStream();
+      diagnostics = new PrintStream(capturedDiagnostics, true);
+      int previouslyWritten = writtenFiles.size();
       try {
-        Class<?> generatorClass = Class.forName(generatorClassName);
-        Constructor<?> constructor = generatorClass.getConstructor(SemanticStateMachine.class, String.class, Map.class);
-        return (CodeGenerator) constructor.newInstance(ast, outputDirectory, flags);
-      } catch (ClassNotFoundException e) {
-        System.out.printf("The class %s was not found.\n", generatorClassName);
-        System.exit(0);
-      } catch (NoSuchMethodException e) {
-        System.out.printf("Appropriate constructor for %s not found", generatorClassName);
-        System.exit(0);
-      } catch (InvocationTargetException | InstantiationException | IllegalAccessException e) {
-        e.printStackTrace();
-        System.exit(0);
+        generate(sourcePath);
+      } finally {
+        diagnostics = out;
+      }
+      out.print(capturedDiagnostics.toString());
+      List<Path> generatedFiles = writtenFiles.subList(previouslyWritten, writtenFiles.size());
+      if (!generatedFiles.isEmpty())
+        outputCache.put(key, capturedDiagnostics.toString(), Paths.get(outputDirectory), generatedFiles);
+    }
+
+    private void generate(Path sourcePath) throws IOException {
+      MachineCache.Machine machine = cache.get(sourcePath);
+      int syntaxErrorCount = reportSyntaxErrors(machine.syntax());
+
+      if (syntaxErrorCount == 0 && analyze(machine) == 0) {
+        CodeGenerator generator = createGenerator(machine);
+        if (generator != null) {
+          if (outputCache != null)
+            generator.setFingerprintDirectory(outputCache.fingerprintDirectory());
+          if (generator instanceof JavaCodeGenerator javaGenerator)
+            javaGenerator.setJarBatch(jarBatch);
+          try {
+            generator.generate();
+          } catch (CodeGenerator.GenerationException e) {
+            diagnostics.println(e.getMessage());
+          }
+          for (String warning : generator.getWarnings())
+            diagnostics.println(warning);
+          writtenFiles.addAll(generator.getWrittenFiles());
+        }
       }
+    }
+
+    private CodeGenerator createGenerator(MachineCache.Machine machine) {
+      CodeGeneratorProvider provider = CodeGenerators.find(language);
+      boolean isOptimized = !(flags.containsKey("isOptimized") && flags.get("isOptimized").equals("false"));
+      Input input = isOptimized ? Input.OPTIMIZED : Input.SEMANTIC;
+      if (provider == null)
+        diagnostics.printf("No code generator for %s was found.%n", language);
+      else if (!provider.inputs().contains(input))
+        diagnostics.printf("The %s code generator cannot produce %s code.%n", language, isOptimized ? "optimized" : "non-optimized");
+      else if (isOptimized) {
+        reportRegions(machine.optimizedStateMachine());
+        return provider.create(machine.optimizedStateMachine(), outputDirectory, flags);
+      } else if (!machine.semanticStateMachine().regions.isEmpty())
+        diagnostics.println("Machines with regions can only produce optimized code.");
+      else
+        return provider.create(machine.semanticStateMachine(), outputDirectory, flags);
       return null;
     }
 
-    private SemanticStateMachine analyze(FsmSyntax fsm) {
-      SemanticStateMachine sm = new SemanticAnalyzer().analyze(fsm);
+    private void reportRegions(OptimizedStateMachine sm) {
+      if (sm.regions.isEmpty())
+        return;
+      List<String> regionNames = new ArrayList<>();
+      for (OptimizedStateMachine region : sm.regions)
+        regionNames.add(String.format("%s(%d)", region.header.fsm, region.states.size()));
+      String regions = String.join(" x ", regionNames);
+      long possibleStates = RegionProduct.possibleStates(sm);
+      if (sm.productOmitted)
+        diagnostics.printf("Regions %s: product not built, more than %d of %d states reachable.%n", regions, RegionProduct.MAX_STATES, possibleStates);
+      else
+        diagnostics.printf("Regions %s: product has %d reachable of %d states.%n", regions, sm.states.size(), possibleStates);
+    }
+
+    private int analyze(MachineCache.Machine machine) {
+      SemanticStateMachine sm = machine.semanticStateMachine();
       reportSemanticErrors(sm);
       reportSemanticWarnings(sm);
-      return sm;
+      return sm.errors.size();
     }
 
     private void reportSemanticErrors(SemanticStateMachine sm) {
-      System.out.printf("Compiled with %d semantic error%s.%n", sm.errors.size(), (sm.errors.size() == 1 ? "" : "s"));
+      diagnostics.printf("Compiled with %d semantic error%s.%n", sm.errors.size(), (sm.errors.size() == 1 ? "" : "s"));
 
       for (SemanticStateMachine.AnalysisError error : sm.errors)
-        System.out.println(error.toString());
+        diagnostics.println(error.toString());
     }
 
     private void reportSemanticWarnings(SemanticStateMachine sm) {
-      System.out.printf("Compiled with %d semantic warning%s.%n", sm.warnings.size(), (sm.warnings.size() == 1 ? "" : "s"));
+      diagnostics.printf("Compiled with %d semantic warning%s.%n", sm.warnings.size(), (sm.warnings.size() == 1 ? "" : "s"));
 
       for (SemanticStateMachine.AnalysisWarning warning : sm.warnings)
-        System.out.println(warning.toString());
+        diagnostics.println(warning.toString());
     }
 
-    private void extractCommandLineArguments() {
-      if (argParser.has('o')) outputDirectory = argParser.getString('o');
+    private void extractCommandLineArguments() throws IOException {
+      outputDirectory = workingDirectory.resolve(argParser.has('o') ? argParser.getString('o') : "").toString();
       if (argParser.has('l')) language = argParser.getString('l');
       if (argParser.has('f')) flags = argParser.getMap('f');
+      if (argParser.has('c')) outputCache = new OutputCache(workingDirectory.resolve(argParser.getString('c')), OUTPUT_CACHE_MAX_BYTES);
     }
 
-    private FsmSyntax compile(String smContent) {
-      SyntaxBuilder syntaxBuilder = new SyntaxBuilder();
-      Parser parser = new Parser(syntaxBuilder);
-      Lexer lexer = new Lexer(parser);
-      lexer.lex(smContent);
-      parser.handleEvent(EOF, -1, -1);
-
-      return syntaxBuilder.getFsm();
-    }
-
-    private String getSourceCode() throws IOException {
-      String sourceFileName = args[argParser.nextArgument()];
-      return new String(Files.readAllBytes(Paths.get(sourceFileName)));
+    private List<Path> getSourcePaths() {
+      List<Path> sourcePaths = new ArrayList<>();
+      for (int i = argParser.nextArgument(); i < args.length; i++)
+        sourcePaths.add(workingDirectory.resolve(args[i]));
+      return sourcePaths;
     }
 
     private int reportSyntaxErrors(FsmSyntax fsm) {
       int syntaxErrorCount = fsm.errors.size();
-      System.out.printf("Compiled with %d syntax error%s.%n", syntaxErrorCount, (syntaxErrorCount == 1 ? "" : "s"));
+      diagnostics.printf("Compiled with %d syntax error%s.%n", syntaxErrorCount, (syntaxErrorCount == 1 ? "" : "s"));
 
       for (FsmSyntax.SyntaxError error : fsm.errors)
-        System.out.println(error.toString());
+        diagnostics.println(error.toString());
       return syntaxErrorCount;
     }
-
-    private OptimizedStateMachine optimize(FsmSyntax fsm) {
-      return new Optimizer().optimize(analyze(fsm));
-    }
-
-    private void generateCode(OptimizedStateMachine optimizedStateMachine) throws IOException {
-      String generatorClassName = String.format("smc.generators.%sCodeGenerator", language);
-      CodeGenerator generator = createGenerator(generatorClassName, optimizedStateMachine, outputDirectory, flags);
-      generator.generate();
-    }
-
-    private CodeGenerator createGenerator(String generatorClassName, OptimizedStateMachine optimizedStateMachine, String outputDirectory, Map<String, String> flags) {
-      try {
-        Class<?> generatorClass = Class.forName(generatorClassName);
-        Constructor<?> constructor = generatorClass.getConstructor(OptimizedStateMachine.class, String.class, Map.class);
-        return (CodeGenerator) constructor.newInstance(optimizedStateMachine, outputDirectory, flags);
-      } catch (ClassNotFoundException e) {
-        System.out.printf("The class %s was not found.\n", generatorClassName);
-        System.exit(0);
-      } catch (NoSuchMethodException e) {
-        System.out.printf("Appropriate constructor for %s not found", generatorClassName);
-        System.exit(0);
-      } catch (InvocationTargetException | InstantiationException | IllegalAccessException e) {
-        e.printStackTrace();
-        System.exit(0);
-      }
-      return null;
-    }
-
   }
 
 }
@@ -0,0 +1,118 @@
+package smc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Watches a directory for changes to .sm files and recompiles each changed
+// file.  A change to an included module recompiles every file; those that do
+// not include it are still cached.  Editors tend to write a file in several
+// bursts, so events are collected until the directory has been quiet for the
+// debounce interval.  A file that cannot be compiled is reported, and the
+// watcher carries on with the others.  The compiler is told when each batch
+// of changed files is done.
+
+public class SourceWatcher implements Closeable {
+  public interface SourceCompiler {
+    void compile(Path source) throws IOException;
+
+    default void finish() throws IOException {
+    }
+  }
+
+  private final Path directory;
+  private final PrintStream out;
+  private final MachineCache cache;
+  private final SourceCompiler compiler;
+  private final long debounceMillis;
+  private final WatchService watchService;
+
+  public SourceWatcher(Path directory, PrintStream out, MachineCache cache, SourceCompiler compiler, long debounceMillis) throws IOException {
+    this.directory = directory;
+    this.out = out;
+    this.cache = cache;
+    this.compiler = compiler;
+    this.debounceMillis = debounceMillis;
+    watchService = directory.getFileSystem().newWatchService();
+    directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+  }
+
+  public void watch() throws IOException, InterruptedException {
+    compileAll();
+    try {
+      while (true) {
+        Set<Path> changedSources = new LinkedHashSet<>();
+        collectChangedSources(watchService.take(), changedSources);
+        WatchKey key;
+        while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null)
+          collectChangedSources(key, changedSources);
+        recompile(changedSources);
+      }
+    } catch (ClosedWatchServiceException e) {
+      // close() was called; stop watching.
+    }
+  }
+
+  private void compileAll() throws IOException {
+    recompile(allSources());
+  }
+
+  private Set<Path> allSources() throws IOException {
+    Set<Path> sources = new LinkedHashSet<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      files.filter(SourceWatcher::isSource).sorted().forEach(sources::add);
+    }
+    return sources;
+  }
+
+  private void collectChangedSources(WatchKey key, Set<Path> changedSources) throws IOException {
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.context() instanceof Path changed && isSource(changed))
+        changedSources.add(directory.resolve(changed));
+      else if (event.context() instanceof Path changed && isModule(changed))
+        changedSources.addAll(allSources());
+    }
+    key.reset();
+  }
+
+  private void recompile(Set<Path> sources) throws IOException {
+    for (Path source : sources) {
+      if (!Files.exists(source)) {
+        cache.evict(source);
+        continue;
+      }
+      long start = System.nanoTime();
+      out.printf("Compiling %s%n", source.getFileName());
+      try {
+        compiler.compile(source);
+        out.printf("Compiled %s in %d ms.%n", source.getFileName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      } catch (IOException | RuntimeException e) {
+        out.printf("Could not compile %s: %s%n", source.getFileName(), e);
+      }
+    }
+    try {
+      compiler.finish();
+    } catch (IOException | RuntimeException e) {
+      out.printf("Could not finish compiling: %s%n", e);
+    }
+  }
+
+  private static boolean isSource(Path path) {
+    return path.getFileName().toString().endsWith(".sm");
+  }
+
+  private static boolean isModule(Path path) {
+    return path.getFileName().toString().endsWith(ModuleLinker.MODULE_EXTENSION);
+  }
+
+  public void close() throws IOException {
+    watchService.close();
+  }
+}
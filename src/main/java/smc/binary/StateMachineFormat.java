@@ -0,0 +1,31 @@
+package smc.binary;
+
+// The binary form of a DenseStateMachine.  All fixed width values are big
+// endian.
+//
+//   offset  0  magic "SMCB"
+//           4  u16 format version, u16 reserved
+//           8  u32 total length in bytes
+//          12  u32 CRC32 of bytes [16, length)
+//          16  u32 offset of the cell table
+//          20  string pool:      varint count, then (varint length, UTF-8 bytes)*
+//              header:           varint fsm name, varint actions class + 1 (0 if none),
+//                                varint initial state
+//              name lists:       states, events, actions, each a varint count
+//                                followed by varint string pool indices
+//              action sequences: varint count, then (varint length, varint action*)*
+//   table offset (4 aligned)     i32 next state [state * events + event], -1 if unhandled
+//                                i32 action sequence [state * events + event]
+//
+// The cell table is fixed width so that a reader can use it in place,
+// without copying, from a mapped file.
+
+class StateMachineFormat {
+  static final int MAGIC = 0x534D4342;
+  static final int VERSION = 1;
+  static final int LENGTH_OFFSET = 8;
+  static final int CHECKSUM_OFFSET = 12;
+  static final int TABLE_OFFSET_OFFSET = 16;
+  static final int CHECKSUMMED_OFFSET = 16;
+  static final int POOLS_OFFSET = 20;
+}
@@ -0,0 +1,118 @@
+package smc.binary;
+
+import smc.DenseStateMachine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static smc.binary.StateMachineFormat.*;
+
+// Reads the binary form written by StateMachineWriter.  Names and action
+// sequences are decoded, but the cell table is used in place: the returned
+// machine's cells are a view of the given buffer.
+
+public class StateMachineReader {
+  private final ByteBuffer buffer;
+  private String[] strings;
+
+  private StateMachineReader(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  public static DenseStateMachine read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path)) {
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  public static DenseStateMachine read(ByteBuffer buffer) throws FormatException {
+    return new StateMachineReader(buffer.slice()).decode();
+  }
+
+  private DenseStateMachine decode() throws FormatException {
+    checkHeader();
+    buffer.position(POOLS_OFFSET);
+    readStringPool();
+    String fsm = strings[readVarint()];
+    int actionsClassIndex = readVarint();
+    String actionsClass = actionsClassIndex == 0 ? null : strings[actionsClassIndex - 1];
+    int initialState = readVarint();
+    List<String> states = readNames();
+    List<String> events = readNames();
+    List<String> actions = readNames();
+    List<int[]> actionSequences = readActionSequences();
+
+    int cellBytes = 4 * states.size() * events.size();
+    int tableOffset = buffer.getInt(TABLE_OFFSET_OFFSET);
+    if (tableOffset < buffer.position() || tableOffset + 2 * cellBytes != buffer.limit())
+      throw new FormatException("Cell table does not match the state and event counts");
+    return new DenseStateMachine(fsm, actionsClass, states, events, actions, initialState, actionSequences,
+      buffer.slice(tableOffset, cellBytes).asIntBuffer(),
+      buffer.slice(tableOffset + cellBytes, cellBytes).asIntBuffer());
+  }
+
+  private void checkHeader() throws FormatException {
+    if (buffer.limit() < POOLS_OFFSET || buffer.getInt(0) != MAGIC)
+      throw new FormatException("Not a binary state machine");
+    if (buffer.getShort(4) != VERSION)
+      throw new FormatException("Unsupported format version " + buffer.getShort(4));
+    int length = buffer.getInt(LENGTH_OFFSET);
+    if (length != buffer.limit())
+      throw new FormatException(String.format("Expected %d bytes but found %d", length, buffer.limit()));
+    CRC32 crc = new CRC32();
+    crc.update(buffer.slice(CHECKSUMMED_OFFSET, length - CHECKSUMMED_OFFSET));
+    if ((int) crc.getValue() != buffer.getInt(CHECKSUM_OFFSET))
+      throw new FormatException("Checksum mismatch");
+  }
+
+  private void readStringPool() {
+    strings = new String[readVarint()];
+    for (int i = 0; i < strings.length; i++) {
+      byte[] bytes = new byte[readVarint()];
+      buffer.get(bytes);
+      strings[i] = new String(bytes, UTF_8);
+    }
+  }
+
+  private List<String> readNames() {
+    int count = readVarint();
+    List<String> names = new ArrayList<>(count);
+    for (int i = 0; i < count; i++)
+      names.add(strings[readVarint()]);
+    return List.copyOf(names);
+  }
+
+  private List<int[]> readActionSequences() {
+    int count = readVarint();
+    List<int[]> actionSequences = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int[] sequence = new int[readVarint()];
+      for (int j = 0; j < sequence.length; j++)
+        sequence[j] = readVarint();
+      actionSequences.add(sequence);
+    }
+    return actionSequences;
+  }
+
+  private int readVarint() {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+  }
+
+  public static class FormatException extends IOException {
+    public FormatException(String message) {
+      super(message);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package smc.binary;
+
+import smc.DenseStateMachine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static smc.binary.StateMachineFormat.*;
+
+public class StateMachineWriter {
+  private final ByteArrayOutputStream pools = new ByteArrayOutputStream();
+  private final Map<String, Integer> stringIndices = new LinkedHashMap<>();
+
+  public static byte[] write(DenseStateMachine sm) {
+    return new StateMachineWriter().encode(sm);
+  }
+
+  public static void write(DenseStateMachine sm, Path path) throws IOException {
+    Files.write(path, write(sm));
+  }
+
+  private byte[] encode(DenseStateMachine sm) {
+    internStrings(sm);
+    writeStringPool();
+    writeVarint(stringIndices.get(sm.fsm));
+    writeVarint(sm.actionsClass == null ? 0 : stringIndices.get(sm.actionsClass) + 1);
+    writeVarint(sm.initialState);
+    writeNames(sm.states);
+    writeNames(sm.events);
+    writeNames(sm.actions);
+    writeActionSequences(sm.actionSequences);
+
+    int tableOffset = align(POOLS_OFFSET + pools.size());
+    int length = tableOffset + 2 * 4 * sm.cellCount();
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    buffer.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0);
+    buffer.putInt(length).putInt(0).putInt(tableOffset);
+    buffer.put(pools.toByteArray());
+    buffer.position(tableOffset);
+    for (int state = 0; state < sm.states.size(); state++)
+      for (int event = 0; event < sm.events.size(); event++)
+        buffer.putInt(sm.nextState(state, event));
+    for (int state = 0; state < sm.states.size(); state++)
+      for (int event = 0; event < sm.events.size(); event++)
+        buffer.putInt(sm.actionSequence(state, event));
+
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), CHECKSUMMED_OFFSET, length - CHECKSUMMED_OFFSET);
+    buffer.putInt(CHECKSUM_OFFSET, (int) crc.getValue());
+    return buffer.array();
+  }
+
+  private void internStrings(DenseStateMachine sm) {
+    intern(sm.fsm);
+    if (sm.actionsClass != null)
+      intern(sm.actionsClass);
+    sm.states.forEach(this::intern);
+    sm.events.forEach(this::intern);
+    sm.actions.forEach(this::intern);
+  }
+
+  private void intern(String s) {
+    stringIndices.putIfAbsent(s, stringIndices.size());
+  }
+
+  private void writeStringPool() {
+    writeVarint(stringIndices.size());
+    for (String s : stringIndices.keySet()) {
+      byte[] bytes = s.getBytes(UTF_8);
+      writeVarint(bytes.length);
+      pools.writeBytes(bytes);
+    }
+  }
+
+  private void writeNames(List<String> names) {
+    writeVarint(names.size());
+    for (String name : names)
+      writeVarint(stringIndices.get(name));
+  }
+
+  private void writeActionSequences(List<int[]> actionSequences) {
+    writeVarint(actionSequences.size());
+    for (int[] sequence : actionSequences) {
+      writeVarint(sequence.length);
+      for (int action : sequence)
+        writeVarint(action);
+    }
+  }
+
+  private void writeVarint(int value) {
+    while ((value & ~0x7F) != 0) {
+      pools.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    pools.write(value);
+  }
+
+  private static int align(int offset) {
+    return (offset + 3) & ~3;
+  }
+}
@@ -0,0 +1,202 @@
+package smc.classfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Just enough of the JVM class file format to write the classes StateLang
+// generates: a constant pool, fields, and methods with a Code attribute.
+// Classes are written as version 49 (Java 5) so that the verifier infers
+// frame types itself and no StackMapTable has to be computed.
+
+public class ClassFile {
+  public static final int ACC_PUBLIC = 0x0001;
+  public static final int ACC_PRIVATE = 0x0002;
+  public static final int ACC_PROTECTED = 0x0004;
+  public static final int ACC_STATIC = 0x0008;
+  public static final int ACC_FINAL = 0x0010;
+  public static final int ACC_SUPER = 0x0020;
+  public static final int ACC_ABSTRACT = 0x0400;
+
+  private static final int MAGIC = 0xCAFEBABE;
+  private static final int MAJOR_VERSION = 49;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_FIELDREF = 9;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+  private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+  private final DataOutputStream pool = new DataOutputStream(poolBytes);
+  private final Map<String, Integer> constants = new HashMap<>();
+  private int constantCount = 1;
+
+  private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+  private final ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+  private final DataOutputStream fieldOut = new DataOutputStream(fieldBytes);
+  private final DataOutputStream methodOut = new DataOutputStream(methodBytes);
+  private int fieldCount = 0;
+  private int methodCount = 0;
+
+  private final int access;
+  private final int thisClass;
+  private final int superClass;
+  private final int[] interfaces;
+
+  public ClassFile(int access, String name, String superName, String... interfaceNames) {
+    this.access = access;
+    thisClass = classRef(name);
+    superClass = classRef(superName);
+    interfaces = new int[interfaceNames.length];
+    for (int i = 0; i < interfaceNames.length; i++)
+      interfaces[i] = classRef(interfaceNames[i]);
+  }
+
+  public int utf8(String value) {
+    return constant("U" + value, out -> {
+      out.writeByte(CONSTANT_UTF8);
+      out.writeUTF(value);
+    });
+  }
+
+  public int integer(int value) {
+    return constant("I" + value, out -> {
+      out.writeByte(CONSTANT_INTEGER);
+      out.writeInt(value);
+    });
+  }
+
+  public int string(String value) {
+    int index = utf8(value);
+    return constant("S" + value, out -> {
+      out.writeByte(CONSTANT_STRING);
+      out.writeShort(index);
+    });
+  }
+
+  public int classRef(String internalName) {
+    int index = utf8(internalName);
+    return constant("C" + internalName, out -> {
+      out.writeByte(CONSTANT_CLASS);
+      out.writeShort(index);
+    });
+  }
+
+  public int fieldRef(String owner, String name, String descriptor) {
+    return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+  }
+
+  public int methodRef(String owner, String name, String descriptor) {
+    return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+  }
+
+  private int memberRef(int tag, String owner, String name, String descriptor) {
+    int ownerIndex = classRef(owner);
+    int nameAndType = nameAndType(name, descriptor);
+    return constant(tag + owner + "." + name + descriptor, out -> {
+      out.writeByte(tag);
+      out.writeShort(ownerIndex);
+      out.writeShort(nameAndType);
+    });
+  }
+
+  private int nameAndType(String name, String descriptor) {
+    int nameIndex = utf8(name);
+    int descriptorIndex = utf8(descriptor);
+    return constant("N" + name + ":" + descriptor, out -> {
+      out.writeByte(CONSTANT_NAME_AND_TYPE);
+      out.writeShort(nameIndex);
+      out.writeShort(descriptorIndex);
+    });
+  }
+
+  private int constant(String key, ConstantWriter writer) {
+    Integer index = constants.get(key);
+    if (index != null)
+      return index;
+    try {
+      writer.write(pool);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    constants.put(key, constantCount);
+    return constantCount++;
+  }
+
+  public void addField(int access, String name, String descriptor) {
+    try {
+      fieldOut.writeShort(access);
+      fieldOut.writeShort(utf8(name));
+      fieldOut.writeShort(utf8(descriptor));
+      fieldOut.writeShort(0);
+      fieldCount++;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Abstract methods are added with a null code.
+  public void addMethod(int access, String name, String descriptor, Code code) {
+    try {
+      methodOut.writeShort(access);
+      methodOut.writeShort(utf8(name));
+      methodOut.writeShort(utf8(descriptor));
+      if (code == null)
+        methodOut.writeShort(0);
+      else {
+        byte[] bytecode = code.assemble();
+        if (bytecode.length > Code.MAX_CODE_LENGTH)
+          throw new IllegalStateException(String.format("Method %s is too large for a class file (%d bytes).", name, bytecode.length));
+        methodOut.writeShort(1);
+        methodOut.writeShort(utf8("Code"));
+        methodOut.writeInt(12 + bytecode.length);
+        methodOut.writeShort(code.maxStack);
+        methodOut.writeShort(code.maxLocals);
+        methodOut.writeInt(bytecode.length);
+        methodOut.write(bytecode);
+        methodOut.writeShort(0);
+        methodOut.writeShort(0);
+      }
+      methodCount++;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public byte[] toByteArray() {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeShort(0);
+      out.writeShort(MAJOR_VERSION);
+      out.writeShort(constantCount);
+      poolBytes.writeTo(out);
+      out.writeShort(access);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(interfaces.length);
+      for (int anInterface : interfaces)
+        out.writeShort(anInterface);
+      out.writeShort(fieldCount);
+      fieldBytes.writeTo(out);
+      out.writeShort(methodCount);
+      methodBytes.writeTo(out);
+      out.writeShort(0);
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private interface ConstantWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+}
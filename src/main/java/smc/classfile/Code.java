@@ -0,0 +1,147 @@
+package smc.classfile;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// The body of a method.  Only the handful of instructions the generators need
+// are provided.  Switch targets are labels, resolved when the method is added
+// to its ClassFile.
+
+public class Code {
+  public static final int MAX_CODE_LENGTH = 65535;
+
+  public static final int ACONST_NULL = 0x01;
+  public static final int ILOAD_0 = 0x1a;
+  public static final int ILOAD_1 = 0x1b;
+  public static final int ALOAD_0 = 0x2a;
+  public static final int ARETURN = 0xb0;
+  public static final int RETURN = 0xb1;
+  public static final int GETFIELD = 0xb4;
+  public static final int PUTFIELD = 0xb5;
+  public static final int INVOKEVIRTUAL = 0xb6;
+  public static final int INVOKESPECIAL = 0xb7;
+  public static final int INVOKESTATIC = 0xb8;
+
+  private static final int ICONST_0 = 0x03;
+  private static final int BIPUSH = 0x10;
+  private static final int SIPUSH = 0x11;
+  private static final int LDC = 0x12;
+  private static final int LDC_W = 0x13;
+  private static final int TABLESWITCH = 0xaa;
+
+  final int maxStack;
+  final int maxLocals;
+  private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+  private final List<Jump> jumps = new ArrayList<>();
+
+  public Code(int maxStack, int maxLocals) {
+    this.maxStack = maxStack;
+    this.maxLocals = maxLocals;
+  }
+
+  public Code op(int opcode) {
+    code.write(opcode);
+    return this;
+  }
+
+  // GETFIELD, PUTFIELD and the INVOKEs, which all take a constant pool index.
+  public Code op(int opcode, int constantIndex) {
+    code.write(opcode);
+    writeShort(constantIndex);
+    return this;
+  }
+
+  public Code pushInt(ClassFile classFile, int value) {
+    if (value >= -1 && value <= 5)
+      code.write(ICONST_0 + value);
+    else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+      code.write(BIPUSH);
+      code.write(value);
+    } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+      code.write(SIPUSH);
+      writeShort(value);
+    } else
+      pushConstant(classFile.integer(value));
+    return this;
+  }
+
+  public Code pushString(ClassFile classFile, String value) {
+    return pushConstant(classFile.string(value));
+  }
+
+  private Code pushConstant(int index) {
+    if (index <= 0xff) {
+      code.write(LDC);
+      code.write(index);
+    } else {
+      code.write(LDC_W);
+      writeShort(index);
+    }
+    return this;
+  }
+
+  // targets[i] is the label jumped to for the value low + i.
+  public Code tableSwitch(int low, Label defaultLabel, Label... targets) {
+    int opcodePosition = code.size();
+    code.write(TABLESWITCH);
+    while (code.size() % 4 != 0)
+      code.write(0);
+    jump(opcodePosition, defaultLabel);
+    writeInt(low);
+    writeInt(low + targets.length - 1);
+    for (Label target : targets)
+      jump(opcodePosition, target);
+    return this;
+  }
+
+  public Code mark(Label label) {
+    label.position = code.size();
+    return this;
+  }
+
+  private void jump(int opcodePosition, Label target) {
+    jumps.add(new Jump(opcodePosition, code.size(), target));
+    writeInt(0);
+  }
+
+  byte[] assemble() {
+    byte[] bytes = code.toByteArray();
+    for (Jump jump : jumps) {
+      if (jump.target.position < 0)
+        throw new IllegalStateException("Jump to a label that was never marked.");
+      int offset = jump.target.position - jump.opcodePosition;
+      bytes[jump.patchPosition] = (byte) (offset >>> 24);
+      bytes[jump.patchPosition + 1] = (byte) (offset >>> 16);
+      bytes[jump.patchPosition + 2] = (byte) (offset >>> 8);
+      bytes[jump.patchPosition + 3] = (byte) offset;
+    }
+    return bytes;
+  }
+
+  private void writeShort(int value) {
+    code.write(value >>> 8);
+    code.write(value);
+  }
+
+  private void writeInt(int value) {
+    writeShort(value >>> 16);
+    writeShort(value);
+  }
+
+  public static class Label {
+    private int position = -1;
+  }
+
+  private static class Jump {
+    final int opcodePosition;
+    final int patchPosition;
+    final Label target;
+
+    Jump(int opcodePosition, int patchPosition, Label target) {
+      this.opcodePosition = opcodePosition;
+      this.patchPosition = patchPosition;
+      this.target = target;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package smc.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// A compile request is the client's working directory followed by the same
+// arguments that would have been given to SMC on the command line.
+
+public class CompileRequest {
+  public final String workingDirectory;
+  public final String[] args;
+
+  public CompileRequest(String workingDirectory, String[] args) {
+    this.workingDirectory = workingDirectory;
+    this.args = args;
+  }
+
+  public void writeTo(DataOutputStream out) throws IOException {
+    out.writeUTF(workingDirectory);
+    out.writeInt(args.length);
+    for (String arg : args)
+      out.writeUTF(arg);
+    out.flush();
+  }
+
+  public static CompileRequest readFrom(DataInputStream in) throws IOException {
+    String workingDirectory = in.readUTF();
+    String[] args = new String[in.readInt()];
+    for (int i = 0; i < args.length; i++)
+      args[i] = in.readUTF();
+    return new CompileRequest(workingDirectory, args);
+  }
+}
@@ -0,0 +1,42 @@
+package smc.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// The diagnostics are sent as a length prefixed byte array because they can
+// exceed the 64K limit of writeUTF.
+
+public class CompileResponse {
+  public final String diagnostics;
+  public final List<String> writtenFiles;
+
+  public CompileResponse(String diagnostics, List<String> writtenFiles) {
+    this.diagnostics = diagnostics;
+    this.writtenFiles = writtenFiles;
+  }
+
+  public void writeTo(DataOutputStream out) throws IOException {
+    byte[] diagnosticBytes = diagnostics.getBytes(UTF_8);
+    out.writeInt(diagnosticBytes.length);
+    out.write(diagnosticBytes);
+    out.writeInt(writtenFiles.size());
+    for (String writtenFile : writtenFiles)
+      out.writeUTF(writtenFile);
+    out.flush();
+  }
+
+  public static CompileResponse readFrom(DataInputStream in) throws IOException {
+    byte[] diagnosticBytes = new byte[in.readInt()];
+    in.readFully(diagnosticBytes);
+    int writtenFileCount = in.readInt();
+    List<String> writtenFiles = new ArrayList<>();
+    for (int i = 0; i < writtenFileCount; i++)
+      writtenFiles.add(in.readUTF());
+    return new CompileResponse(new String(diagnosticBytes, UTF_8), writtenFiles);
+  }
+}
@@ -0,0 +1,36 @@
+package smc.daemon;
+
+import smc.SMC;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Paths;
+
+// A drop in replacement for SMC.main.  It hands its arguments to a running
+// SmcDaemon, and falls back to compiling in process if no daemon is listening.
+// The port can be set with -Dsmc.daemon.port=<port>.
+
+public class SmcClient {
+  public static void main(String[] args) throws Exception {
+    int port = Integer.getInteger("smc.daemon.port", SmcDaemon.DEFAULT_PORT);
+    CompileResponse response;
+    try {
+      response = send(port, new CompileRequest(Paths.get("").toAbsolutePath().toString(), args));
+    } catch (ConnectException e) {
+      SMC.main(args);
+      return;
+    }
+    System.out.print(response.diagnostics);
+  }
+
+  public static CompileResponse send(int port, CompileRequest request) throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+         DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+      request.writeTo(out);
+      return CompileResponse.readFrom(in);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package smc.daemon;
+
+import smc.MachineCache;
+import smc.SMC;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// A long running compiler that accepts compile requests on a loopback port.
+// The JVM stays warm and parsed machines are kept in a MachineCache, so only
+// the first request for a given .sm file pays for lexing, parsing and analysis.
+
+public class SmcDaemon implements Closeable {
+  public static final int DEFAULT_PORT = 7811;
+  private final ServerSocket serverSocket;
+  private final MachineCache cache = new MachineCache();
+  private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "smc-daemon-worker");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  public SmcDaemon(int port) throws IOException {
+    serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    try (SmcDaemon daemon = new SmcDaemon(port)) {
+      System.out.printf("SMC daemon listening on port %d.%n", daemon.getPort());
+      daemon.serve();
+    }
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  public MachineCache getCache() {
+    return cache;
+  }
+
+  public void serve() throws IOException {
+    while (!serverSocket.isClosed()) {
+      Socket socket;
+      try {
+        socket = serverSocket.accept();
+      } catch (IOException e) {
+        if (serverSocket.isClosed())
+          return;
+        throw e;
+      }
+      workers.execute(() -> handle(socket));
+    }
+  }
+
+  private void handle(Socket socket) {
+    try (socket;
+         DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+      compile(CompileRequest.readFrom(in)).writeTo(out);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  CompileResponse compile(CompileRequest request) {
+    ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+    PrintStream out = new PrintStream(diagnostics, true, UTF_8);
+    List<String> writtenFiles = new ArrayList<>();
+    try {
+      for (Path writtenFile : SMC.compile(request.args, Paths.get(request.workingDirectory), out, cache))
+        writtenFiles.add(writtenFile.toString());
+    } catch (Exception e) {
+      e.printStackTrace(out);
+    }
+    return new CompileResponse(diagnostics.toString(UTF_8), writtenFiles);
+  }
+
+  public void close() throws IOException {
+    serverSocket.close();
+    workers.shutdown();
+  }
+}
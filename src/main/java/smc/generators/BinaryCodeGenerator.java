@@ -0,0 +1,46 @@
+package smc.generators;
+
+import smc.DenseStateMachine;
+import smc.OptimizedStateMachine;
+import smc.binary.StateMachineWriter;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+public class BinaryCodeGenerator extends CodeGenerator {
+  private byte[] output;
+
+  public BinaryCodeGenerator(OptimizedStateMachine optimizedStateMachine,
+                             String outputDirectory,
+                             Map<String, String> flags) {
+    super(optimizedStateMachine, outputDirectory, flags);
+  }
+
+  @Override
+  protected void generate(boolean isOptimized) {
+    if (isOptimized)
+      output = StateMachineWriter.write(DenseStateMachine.of(optimizedStateMachine));
+    else
+      throw new RuntimeException("Cannot produce non-optimized code for this language!");
+  }
+
+  public void writeFiles() throws IOException {
+    writeFile(optimizedStateMachine.header.fsm + ".smb", output);
+  }
+
+  public static class Provider implements CodeGeneratorProvider {
+    public String language() {
+      return "Binary";
+    }
+
+    public Set<Input> inputs() {
+      return EnumSet.of(Input.OPTIMIZED);
+    }
+
+    public CodeGenerator create(OptimizedStateMachine optimizedStateMachine, String outputDirectory, Map<String, String> flags) {
+      return new BinaryCodeGenerator(optimizedStateMachine, outputDirectory, flags);
+    }
+  }
+}
@@ -6,8 +6,9 @@ import smc.generators.nestedSwitchCaseGenerator.NSCNodeVisitor;
 import smc.implementers.CNestedSwitchCaseImplementer;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 public class CCodeGenerator extends CodeGenerator {
   private final CNestedSwitchCaseImplementer implementer;
@@ -31,11 +32,25 @@ public class CCodeGenerator extends CodeGenerator {
   public void writeFiles() throws IOException {
     if (implementer.getErrors().size() > 0) {
       for (CNestedSwitchCaseImplementer.Error error : implementer.getErrors())
-        System.out.println("Implementation error: " + error.name());
+        warnings.add("Implementation error: " + error.name());
     } else {
       String fileName = optimizedStateMachine.header.fsm.toLowerCase();
-      Files.write(getOutputPath(fileName + ".h"), implementer.getFsmHeader().getBytes());
-      Files.write(getOutputPath(fileName + ".c"), implementer.getFsmImplementation().getBytes());
+      writeFile(fileName + ".h", implementer.getFsmHeader());
+      writeFile(fileName + ".c", implementer.getFsmImplementation());
+    }
+  }
+
+  public static class Provider implements CodeGeneratorProvider {
+    public String language() {
+      return "C";
+    }
+
+    public Set<Input> inputs() {
+      return EnumSet.of(Input.OPTIMIZED);
+    }
+
+    public CodeGenerator create(OptimizedStateMachine optimizedStateMachine, String outputDirectory, Map<String, String> flags) {
+      return new CCodeGenerator(optimizedStateMachine, outputDirectory, flags);
     }
   }
 }
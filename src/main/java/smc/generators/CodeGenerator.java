@@ -1,18 +1,24 @@
 package smc.generators;
 
+import smc.MachineCache;
 import smc.OptimizedStateMachine;
+import smc.OutputCache;
 import smc.semanticAnalyzer.SemanticStateMachine;
 
 import java.io.IOException;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Map;
+import java.util.*;
 
 public abstract class CodeGenerator {
   protected final String outputDirectory;
   protected final Map<String, String> flags;
   protected OptimizedStateMachine optimizedStateMachine;
   protected SemanticStateMachine semanticStateMachine;
+  protected final List<String> warnings = new ArrayList<>();
+  private final List<Path> writtenFiles = new ArrayList<>();
+  private Path fingerprintDirectory = null;
 
   public CodeGenerator(OptimizedStateMachine optimizedStateMachine, String outputDirectory, Map<String, String> flags) {
     this.optimizedStateMachine = optimizedStateMachine;
@@ -34,6 +40,8 @@ public abstract class CodeGenerator {
   }
 
   public void generate() throws IOException {
+    if (optimizedStateMachine != null && optimizedStateMachine.productOmitted && !generatesRegionDispatcher())
+      throw new GenerationException(productTooLargeMessage());
     if (flags.containsKey("isOptimized")) generate(Boolean.parseBoolean(flags.get("isOptimized")));
     else generate(true);
     writeFiles();
@@ -41,6 +49,90 @@ public abstract class CodeGenerator {
 
   protected abstract void generate(boolean isOptimized);
 
+  // Generators that can keep one state variable per region, rather than
+  // switching on the states of the product machine, say so here.
+  protected boolean generatesRegionDispatcher() {
+    return false;
+  }
+
+  protected String productTooLargeMessage() {
+    return String.format(
+      "The product of the regions of %s is too large; generate Java with -f regions:dispatch instead.", optimizedStateMachine.header.fsm);
+  }
+
   protected abstract void writeFiles() throws IOException;
 
+  // Files are only rewritten when their content would change, so that build
+  // tools downstream do not see a new timestamp.  With a fingerprint
+  // directory, files generated from an optimized machine are also left alone
+  // when the machine is semantically the same as the one they were generated
+  // from, even if reordering the source would have produced different bytes.
+  // The fingerprints are kept in that directory, named by a hash of the
+  // output path, and never next to the generated files.
+  public void setFingerprintDirectory(Path fingerprintDirectory) {
+    this.fingerprintDirectory = fingerprintDirectory;
+  }
+
+  protected void writeFile(String outputFileName, String content) throws IOException {
+    writeFile(outputFileName, content.getBytes());
+  }
+
+  protected void writeFile(String outputFileName, byte[] bytes) throws IOException {
+    Path outputPath = getOutputPath(outputFileName);
+    String fingerprint = machineFingerprint();
+    Path fingerprintPath = fingerprint == null ? null : fingerprintPath(outputPath);
+    if (!Files.exists(outputPath) || !hasFingerprint(fingerprintPath, fingerprint))
+      writeIfChanged(outputPath, bytes);
+    if (fingerprint != null && !hasFingerprint(fingerprintPath, fingerprint)) {
+      Files.createDirectories(fingerprintDirectory);
+      Files.writeString(fingerprintPath, fingerprint);
+    }
+    writtenFiles.add(outputPath);
+  }
+
+  protected void recordWrittenFile(Path outputPath) {
+    writtenFiles.add(outputPath);
+  }
+
+  // Also used when the output cache restores files.
+  public static void writeIfChanged(Path outputPath, byte[] bytes) throws IOException {
+    Files.createDirectories(outputPath.toAbsolutePath().getParent());
+    if (!Files.exists(outputPath) || !Arrays.equals(Files.readAllBytes(outputPath), bytes))
+      Files.write(outputPath, bytes);
+  }
+
+  private Path fingerprintPath(Path outputPath) {
+    String outputName = outputPath.toAbsolutePath().normalize().toString();
+    return fingerprintDirectory.resolve(MachineCache.hash(outputName.getBytes()) + ".fingerprint");
+  }
+
+  private boolean hasFingerprint(Path fingerprintPath, String fingerprint) throws IOException {
+    return fingerprint != null && Files.exists(fingerprintPath) && Files.readString(fingerprintPath).equals(fingerprint);
+  }
+
+  private String machineFingerprint() {
+    if (optimizedStateMachine == null || fingerprintDirectory == null)
+      return null;
+    String identity = String.format("%s\n%s\n%s\n%s",
+      getClass().getName(), new TreeMap<>(flags), OutputCache.compilerVersion(), optimizedStateMachine.canonicalString());
+    return MachineCache.hash(identity.getBytes());
+  }
+
+  public List<Path> getWrittenFiles() {
+    return writtenFiles;
+  }
+
+  // Problems with the generated code that do not stop it from being written.
+  public List<String> getWarnings() {
+    return warnings;
+  }
+
+  // A generator could not produce its output.  The message is reported to the
+  // user in place of the usual diagnostics.
+  public static class GenerationException extends IOException {
+    public GenerationException(String message) {
+      super(message);
+    }
+  }
+
 }
@@ -0,0 +1,27 @@
+package smc.generators;
+
+import smc.OptimizedStateMachine;
+import smc.semanticAnalyzer.SemanticStateMachine;
+
+import java.util.Map;
+import java.util.Set;
+
+// A code generator backend.  Providers are discovered with ServiceLoader;
+// list the provider's class name in
+// META-INF/services/smc.generators.CodeGeneratorProvider to add a language.
+
+public interface CodeGeneratorProvider {
+  enum Input {OPTIMIZED, SEMANTIC}
+
+  String language();
+
+  Set<Input> inputs();
+
+  default CodeGenerator create(OptimizedStateMachine optimizedStateMachine, String outputDirectory, Map<String, String> flags) {
+    throw new UnsupportedOperationException(language() + " does not accept an optimized state machine");
+  }
+
+  default CodeGenerator create(SemanticStateMachine semanticStateMachine, String outputDirectory, Map<String, String> flags) {
+    throw new UnsupportedOperationException(language() + " does not accept a semantic state machine");
+  }
+}
@@ -0,0 +1,32 @@
+package smc.generators;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+
+// The registry of code generator backends.  Providers are loaded once, on
+// first use; a generator is only created when its language is asked for.
+
+public class CodeGenerators {
+  private static volatile Map<String, CodeGeneratorProvider> providers;
+
+  public static CodeGeneratorProvider find(String language) {
+    return providers().get(language);
+  }
+
+  public static Map<String, CodeGeneratorProvider> providers() {
+    if (providers == null)
+      loadProviders();
+    return providers;
+  }
+
+  private static synchronized void loadProviders() {
+    if (providers != null)
+      return;
+    Map<String, CodeGeneratorProvider> loadedProviders = new TreeMap<>();
+    for (CodeGeneratorProvider provider : ServiceLoader.load(CodeGeneratorProvider.class, CodeGenerators.class.getClassLoader()))
+      loadedProviders.putIfAbsent(provider.language(), provider);
+    providers = Collections.unmodifiableMap(loadedProviders);
+  }
+}
@@ -6,8 +6,9 @@ import smc.generators.nestedSwitchCaseGenerator.NSCNodeVisitor;
 import smc.implementers.CppNestedSwitchCaseImplementer;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 public class CppCodeGenerator extends CodeGenerator {
   private final CppNestedSwitchCaseImplementer implementer;
@@ -30,6 +31,20 @@ public class CppCodeGenerator extends CodeGenerator {
 
   public void writeFiles() throws IOException {
     String outputFileName = optimizedStateMachine.header.fsm + ".h";
-    Files.write(getOutputPath(outputFileName), implementer.getOutput().getBytes());
+    writeFile(outputFileName, implementer.getOutput());
+  }
+
+  public static class Provider implements CodeGeneratorProvider {
+    public String language() {
+      return "Cpp";
+    }
+
+    public Set<Input> inputs() {
+      return EnumSet.of(Input.OPTIMIZED);
+    }
+
+    public CodeGenerator create(OptimizedStateMachine optimizedStateMachine, String outputDirectory, Map<String, String> flags) {
+      return new CppCodeGenerator(optimizedStateMachine, outputDirectory, flags);
+    }
   }
 }
@@ -0,0 +1,62 @@
+package smc.generators;
+
+import smc.OptimizedStateMachine;
+import smc.generators.nestedSwitchCaseGenerator.NSCGenerator;
+import smc.generators.nestedSwitchCaseGenerator.NSCNode;
+import smc.implementers.JavaClassNestedSwitchCaseImplementer;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+public class JavaClassCodeGenerator extends CodeGenerator {
+  private final JavaClassNestedSwitchCaseImplementer implementer;
+  private NSCNode nscNode;
+
+  public JavaClassCodeGenerator(OptimizedStateMachine optimizedStateMachine,
+                                String outputDirectory,
+                                Map<String, String> flags) {
+    super(optimizedStateMachine, outputDirectory, flags);
+    implementer = new JavaClassNestedSwitchCaseImplementer(flags);
+  }
+
+  @Override
+  protected void generate(boolean isOptimized) {
+    if (isOptimized)
+      nscNode = new NSCGenerator().generate(optimizedStateMachine);
+    else
+      throw new RuntimeException("Cannot produce non-optimized code for this language!");
+  }
+
+  // The class file goes where a class loader will look for it: in the
+  // directory for its package under the output directory.  A state with so
+  // many transitions that its method will not fit in a class file is
+  // reported rather than thrown.
+  public void writeFiles() throws IOException {
+    try {
+      nscNode.accept(implementer);
+    } catch (IllegalStateException e) {
+      throw new GenerationException(String.format(
+        "%s cannot be generated as a class file: %s", optimizedStateMachine.header.fsm, e.getMessage()));
+    }
+    String outputFileName = optimizedStateMachine.header.fsm + ".class";
+    if (flags.containsKey("package"))
+      outputFileName = flags.get("package").replace('.', '/') + "/" + outputFileName;
+    writeFile(outputFileName, implementer.getOutput());
+  }
+
+  public static class Provider implements CodeGeneratorProvider {
+    public String language() {
+      return "JavaClass";
+    }
+
+    public Set<Input> inputs() {
+      return EnumSet.of(Input.OPTIMIZED);
+    }
+
+    public CodeGenerator create(OptimizedStateMachine optimizedStateMachine, String outputDirectory, Map<String, String> flags) {
+      return new JavaClassCodeGenerator(optimizedStateMachine, outputDirectory, flags);
+    }
+  }
+}
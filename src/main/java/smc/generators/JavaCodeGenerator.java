@@ -3,14 +3,16 @@ package smc.generators;
 import smc.OptimizedStateMachine;
 import smc.generators.nestedSwitchCaseGenerator.NSCGenerator;
 import smc.generators.nestedSwitchCaseGenerator.NSCNodeVisitor;
+import smc.generators.javaCompiler.JarBatch;
 import smc.implementers.JavaNestedSwitchCaseImplementer;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.util.Map;
+import java.nio.file.Path;
+import java.util.*;
 
 public class JavaCodeGenerator extends CodeGenerator {
   private final JavaNestedSwitchCaseImplementer implementer;
+  private JarBatch jarBatch = null;
 
   public JavaCodeGenerator(OptimizedStateMachine optimizedStateMachine,
                            String outputDirectory,
@@ -23,13 +25,109 @@ public class JavaCodeGenerator extends CodeGenerator {
   protected void generate(boolean isOptimized) {
     if (isOptimized) {
       NSCGenerator nscGenerator = new NSCGenerator();
-      nscGenerator.generate(optimizedStateMachine).accept(implementer);
+      if (generatesRegionDispatcher())
+        nscGenerator.generateRegionDispatcher(optimizedStateMachine).accept(implementer);
+      else
+        nscGenerator.generate(optimizedStateMachine).accept(implementer);
+      if (regionDispatchIgnored())
+        warnings.add(String.format("-f regions:dispatch is ignored with %s; %s is generated as its product machine.",
+          String.join(", ", flagsPreventingRegionDispatch()), optimizedStateMachine.header.fsm));
+      warnings.addAll(implementer.getWarnings());
     } else
       throw new RuntimeException("Cannot produce non-optimized code for this language!");
   }
 
+  @Override
+  protected boolean generatesRegionDispatcher() {
+    return regionDispatchRequested() && flagsPreventingRegionDispatch().isEmpty();
+  }
+
+  private boolean regionDispatchRequested() {
+    return !optimizedStateMachine.regions.isEmpty() && "dispatch".equals(flags.get("regions"));
+  }
+
+  private boolean regionDispatchIgnored() {
+    return regionDispatchRequested() && !flagsPreventingRegionDispatch().isEmpty();
+  }
+
+  // The dispatcher keeps each region's state in an enum and has none of the
+  // int dispatch, threading, bulk event or metrics code.
+  private List<String> flagsPreventingRegionDispatch() {
+    List<String> preventing = new ArrayList<>();
+    if ("int".equals(flags.get("javaDispatch")))
+      preventing.add("javaDispatch:int");
+    if ("cas".equals(flags.get("threading")) || "mailbox".equals(flags.get("threading")))
+      preventing.add("threading:" + flags.get("threading"));
+    if ("true".equals(flags.get("bulkEvents")))
+      preventing.add("bulkEvents:true");
+    if (flags.containsKey("metrics"))
+      preventing.add("metrics:" + flags.get("metrics"));
+    return preventing;
+  }
+
+  @Override
+  protected String productTooLargeMessage() {
+    if (!regionDispatchIgnored())
+      return super.productTooLargeMessage();
+    return String.format("The product of the regions of %s is too large, and -f regions:dispatch cannot be combined with %s.",
+      optimizedStateMachine.header.fsm, String.join(", ", flagsPreventingRegionDispatch()));
+  }
+
   public void writeFiles() throws IOException {
     String outputFileName = optimizedStateMachine.header.fsm + ".java";
-    Files.write(getOutputPath(outputFileName), implementer.getOutput().getBytes());
+    if (flags.containsKey("jar"))
+      writeJar(outputFileName, implementer.getOutput());
+    else
+      writeFile(outputFileName, implementer.getOutput());
+  }
+
+  // With the jar flag the source is compiled in memory, and the classes, and
+  // the source too if jarSources is set, go straight into the jar.  Nothing
+  // else is written.  Nested classes the machine no longer has, and its source
+  // once jarSources is dropped, are removed from the jar.  Given a batch, the
+  // machine is only added to it, and is compiled and written with the rest of
+  // the batch.
+  public void setJarBatch(JarBatch jarBatch) {
+    this.jarBatch = jarBatch;
+  }
+
+  private void writeJar(String sourceFileName, String source) throws IOException {
+    String packagePath = flags.containsKey("package") ? flags.get("package").replace('.', '/') + "/" : "";
+    String className = (packagePath + optimizedStateMachine.header.fsm).replace('/', '.');
+    String sourceEntry = Boolean.parseBoolean(flags.get("jarSources")) ? packagePath + sourceFileName : null;
+    JarBatch batch = jarBatch == null ? new JarBatch() : jarBatch;
+    batch.add(getOutputPath(flags.get("jar")), classpath(), className, source, sourceEntry);
+    if (jarBatch != null)
+      return;
+
+    List<String> failures = new ArrayList<>();
+    for (Path jar : batch.write(failures))
+      recordWrittenFile(jar);
+    if (!failures.isEmpty())
+      throw new GenerationException(String.join(System.lineSeparator(), failures));
+  }
+
+  // Classpath entries are separated by semicolons, since colons separate flag
+  // names from their values.
+  private List<Path> classpath() {
+    List<Path> classpath = new ArrayList<>();
+    if (flags.containsKey("classpath"))
+      for (String entry : flags.get("classpath").split(";"))
+        classpath.add(getOutputPath(entry));
+    return classpath;
+  }
+
+  public static class Provider implements CodeGeneratorProvider {
+    public String language() {
+      return "Java";
+    }
+
+    public Set<Input> inputs() {
+      return EnumSet.of(Input.OPTIMIZED);
+    }
+
+    public CodeGenerator create(OptimizedStateMachine optimizedStateMachine, String outputDirectory, Map<String, String> flags) {
+      return new JavaCodeGenerator(optimizedStateMachine, outputDirectory, flags);
+    }
   }
 }
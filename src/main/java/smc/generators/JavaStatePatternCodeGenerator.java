@@ -0,0 +1,47 @@
+package smc.generators;
+
+import smc.OptimizedStateMachine;
+import smc.generators.statePatternGenerator.SPGenerator;
+import smc.implementers.JavaStatePatternImplementer;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+public class JavaStatePatternCodeGenerator extends CodeGenerator {
+  private final JavaStatePatternImplementer implementer;
+
+  public JavaStatePatternCodeGenerator(OptimizedStateMachine optimizedStateMachine,
+                                       String outputDirectory,
+                                       Map<String, String> flags) {
+    super(optimizedStateMachine, outputDirectory, flags);
+    implementer = new JavaStatePatternImplementer(flags);
+  }
+
+  @Override
+  protected void generate(boolean isOptimized) {
+    if (isOptimized)
+      new SPGenerator().generate(optimizedStateMachine).accept(implementer);
+    else
+      throw new RuntimeException("Cannot produce non-optimized code for this language!");
+  }
+
+  public void writeFiles() throws IOException {
+    writeFile(optimizedStateMachine.header.fsm + ".java", implementer.getOutput());
+  }
+
+  public static class Provider implements CodeGeneratorProvider {
+    public String language() {
+      return "JavaStatePattern";
+    }
+
+    public Set<Input> inputs() {
+      return EnumSet.of(Input.OPTIMIZED);
+    }
+
+    public CodeGenerator create(OptimizedStateMachine optimizedStateMachine, String outputDirectory, Map<String, String> flags) {
+      return new JavaStatePatternCodeGenerator(optimizedStateMachine, outputDirectory, flags);
+    }
+  }
+}
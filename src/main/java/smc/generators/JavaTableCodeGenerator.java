@@ -0,0 +1,53 @@
+package smc.generators;
+
+import smc.DenseStateMachine;
+import smc.OptimizedStateMachine;
+import smc.implementers.JavaTableImplementer;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+public class JavaTableCodeGenerator extends CodeGenerator {
+  private final JavaTableImplementer implementer;
+  private DenseStateMachine denseStateMachine;
+
+  public JavaTableCodeGenerator(OptimizedStateMachine optimizedStateMachine,
+                                String outputDirectory,
+                                Map<String, String> flags) {
+    super(optimizedStateMachine, outputDirectory, flags);
+    implementer = new JavaTableImplementer(flags);
+  }
+
+  @Override
+  protected void generate(boolean isOptimized) {
+    if (isOptimized)
+      denseStateMachine = DenseStateMachine.of(optimizedStateMachine);
+    else
+      throw new RuntimeException("Cannot produce non-optimized code for this language!");
+  }
+
+  public void writeFiles() throws IOException {
+    if (!JavaTableImplementer.fits(denseStateMachine))
+      throw new GenerationException(String.format(
+        "%s has too many states or action sequences for JavaTable; at most %d of each fit in its tables.",
+        denseStateMachine.fsm, JavaTableImplementer.MAX_TABLE_VALUE));
+    implementer.implement(denseStateMachine);
+    writeFile(optimizedStateMachine.header.fsm + ".java", implementer.getOutput());
+  }
+
+  public static class Provider implements CodeGeneratorProvider {
+    public String language() {
+      return "JavaTable";
+    }
+
+    public Set<Input> inputs() {
+      return EnumSet.of(Input.OPTIMIZED);
+    }
+
+    public CodeGenerator create(OptimizedStateMachine optimizedStateMachine, String outputDirectory, Map<String, String> flags) {
+      return new JavaTableCodeGenerator(optimizedStateMachine, outputDirectory, flags);
+    }
+  }
+}
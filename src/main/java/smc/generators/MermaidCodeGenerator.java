@@ -7,8 +7,9 @@ import smc.implementers.MermaidDiagramImplementer;
 import smc.semanticAnalyzer.SemanticStateMachine;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 public class MermaidCodeGenerator extends CodeGenerator {
   private final MermaidDiagramImplementer implementer;
@@ -44,7 +45,24 @@ public class MermaidCodeGenerator extends CodeGenerator {
   @Override
   protected void writeFiles() throws IOException {
     String outputFileName = fsmName + ".mmd";
-    Files.write(getOutputPath(outputFileName), implementer.getOutput().getBytes());
+    writeFile(outputFileName, implementer.getOutput());
   }
 
+  public static class Provider implements CodeGeneratorProvider {
+    public String language() {
+      return "Mermaid";
+    }
+
+    public Set<Input> inputs() {
+      return EnumSet.of(Input.OPTIMIZED, Input.SEMANTIC);
+    }
+
+    public CodeGenerator create(OptimizedStateMachine optimizedStateMachine, String outputDirectory, Map<String, String> flags) {
+      return new MermaidCodeGenerator(optimizedStateMachine, outputDirectory, flags);
+    }
+
+    public CodeGenerator create(SemanticStateMachine semanticStateMachine, String outputDirectory, Map<String, String> flags) {
+      return new MermaidCodeGenerator(semanticStateMachine, outputDirectory, flags);
+    }
+  }
 }
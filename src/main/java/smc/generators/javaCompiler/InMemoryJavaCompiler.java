@@ -0,0 +1,109 @@
+package smc.generators.javaCompiler;
+
+import smc.generators.CodeGenerator;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+// Compiles generated Java source with the platform's javac, in this process
+// and without touching the file system.  The source is handed to javac as a
+// string, and every class file javac produces is captured in memory.
+
+public class InMemoryJavaCompiler {
+  private final List<Path> classpath;
+
+  public InMemoryJavaCompiler(List<Path> classpath) {
+    this.classpath = classpath;
+  }
+
+  // Returns the class files keyed by binary class name, e.g. "p.Fsm$State".
+  public Map<String, byte[]> compile(String className, String source) throws IOException {
+    return compile(Map.of(className, source));
+  }
+
+  // Compiles several sources, keyed by class name, in one javac task.
+  public Map<String, byte[]> compile(Map<String, String> sources) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null)
+      throw new CodeGenerator.GenerationException("No Java compiler is available; run StateLang on a JDK.");
+
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    Map<String, ByteArrayOutputStream> classFiles = new TreeMap<>();
+    try (JavaFileManager fileManager = new ClassFileCapturingFileManager(compiler.getStandardFileManager(diagnostics, null, null), classFiles)) {
+      List<String> options = List.of("-proc:none", "-classpath", classpathString());
+      List<JavaFileObject> sourceFiles = new ArrayList<>();
+      for (Map.Entry<String, String> source : sources.entrySet())
+        sourceFiles.add(new SourceFile(source.getKey(), source.getValue()));
+      if (!compiler.getTask(null, fileManager, diagnostics, options, null, sourceFiles).call())
+        throw new CodeGenerator.GenerationException(String.format("Generated code for %s did not compile:%n%s",
+          String.join(", ", sources.keySet()), describe(diagnostics)));
+    }
+
+    Map<String, byte[]> compiled = new TreeMap<>();
+    for (Map.Entry<String, ByteArrayOutputStream> classFile : classFiles.entrySet())
+      compiled.put(classFile.getKey(), classFile.getValue().toByteArray());
+    return compiled;
+  }
+
+  private String classpathString() {
+    List<String> entries = new ArrayList<>();
+    for (Path entry : classpath)
+      entries.add(entry.toString());
+    entries.add(System.getProperty("java.class.path"));
+    return String.join(File.pathSeparator, entries);
+  }
+
+  private static String describe(DiagnosticCollector<JavaFileObject> diagnostics) {
+    return diagnostics.getDiagnostics().stream()
+      .map(d -> String.format("%d: %s", d.getLineNumber(), d.getMessage(Locale.ROOT)))
+      .collect(Collectors.joining(System.lineSeparator()));
+  }
+
+  private static class SourceFile extends SimpleJavaFileObject {
+    private final String source;
+
+    SourceFile(String className, String source) {
+      super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+      this.source = source;
+    }
+
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return source;
+    }
+  }
+
+  private static class CapturedClassFile extends SimpleJavaFileObject {
+    private final ByteArrayOutputStream bytes;
+
+    CapturedClassFile(String className, ByteArrayOutputStream bytes) {
+      super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+      this.bytes = bytes;
+    }
+
+    public OutputStream openOutputStream() {
+      return bytes;
+    }
+  }
+
+  private static class ClassFileCapturingFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    private final Map<String, ByteArrayOutputStream> classFiles;
+
+    ClassFileCapturingFileManager(StandardJavaFileManager fileManager, Map<String, ByteArrayOutputStream> classFiles) {
+      super(fileManager);
+      this.classFiles = classFiles;
+    }
+
+    public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      classFiles.put(className, bytes);
+      return new CapturedClassFile(className, bytes);
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package smc.generators.javaCompiler;
+
+import smc.generators.CodeGenerator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+// Collects the machines that one run of the compiler puts into jars, so
+// that the machines going into a jar are compiled by one javac task and the
+// jar is opened and written once.  Machines that do not compile together
+// are compiled one at a time, so that one broken machine does not keep the
+// others out of the jar.
+
+public class JarBatch {
+  private final Map<Path, Map<String, Machine>> jars = new LinkedHashMap<>();
+
+  // sourceEntry names the source's entry in the jar, or is null to leave
+  // the source out.
+  public synchronized void add(Path jar, List<Path> classpath, String className, String source, String sourceEntry) {
+    Path key = jar.toAbsolutePath().normalize();
+    jars.computeIfAbsent(key, k -> new LinkedHashMap<>())
+      .put(className, new Machine(classpath, className, source, sourceEntry));
+  }
+
+  // Returns the jars written; machines that did not compile are described
+  // in failures and left as they were in their jar.
+  public synchronized List<Path> write(List<String> failures) throws IOException {
+    List<Path> written = new ArrayList<>();
+    for (Map.Entry<Path, Map<String, Machine>> jar : jars.entrySet()) {
+      List<Machine> compiled = new ArrayList<>();
+      Map<String, byte[]> entries = new TreeMap<>();
+      for (Map.Entry<String, byte[]> classFile : compile(jar.getValue().values(), compiled, failures).entrySet())
+        entries.put(classFile.getKey().replace('.', '/') + ".class", classFile.getValue());
+      if (compiled.isEmpty())
+        continue;
+      for (Machine machine : compiled)
+        if (machine.sourceEntry != null)
+          entries.put(machine.sourceEntry, machine.source.getBytes());
+      JarPackager.write(jar.getKey(), entries, name -> compiled.stream().anyMatch(machine -> machine.owns(name)));
+      written.add(jar.getKey());
+    }
+    jars.clear();
+    return written;
+  }
+
+  private Map<String, byte[]> compile(Collection<Machine> machines, List<Machine> compiled, List<String> failures) throws IOException {
+    Set<Path> classpath = new LinkedHashSet<>();
+    Map<String, String> sources = new LinkedHashMap<>();
+    for (Machine machine : machines) {
+      classpath.addAll(machine.classpath);
+      sources.put(machine.className, machine.source);
+    }
+    InMemoryJavaCompiler compiler = new InMemoryJavaCompiler(new ArrayList<>(classpath));
+    try {
+      Map<String, byte[]> classes = compiler.compile(sources);
+      compiled.addAll(machines);
+      return classes;
+    } catch (CodeGenerator.GenerationException e) {
+      if (machines.size() == 1) {
+        failures.add(e.getMessage());
+        return Map.of();
+      }
+    }
+
+    Map<String, byte[]> classes = new TreeMap<>();
+    for (Machine machine : machines) {
+      try {
+        classes.putAll(compiler.compile(machine.className, machine.source));
+        compiled.add(machine);
+      } catch (CodeGenerator.GenerationException e) {
+        failures.add(e.getMessage());
+      }
+    }
+    return classes;
+  }
+
+  private static class Machine {
+    final List<Path> classpath;
+    final String className;
+    final String source;
+    final String sourceEntry;
+
+    Machine(List<Path> classpath, String className, String source, String sourceEntry) {
+      this.classpath = classpath;
+      this.className = className;
+      this.source = source;
+      this.sourceEntry = sourceEntry;
+    }
+
+    // The machine's class, its nested classes and its source.
+    boolean owns(String entry) {
+      String classPath = className.replace('.', '/');
+      return entry.equals(classPath + ".class") || entry.equals(classPath + ".java") || entry.startsWith(classPath + "$");
+    }
+  }
+}
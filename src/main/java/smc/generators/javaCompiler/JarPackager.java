@@ -0,0 +1,64 @@
+package smc.generators.javaCompiler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+// Adds entries to a jar through the zip file system, creating the jar if it
+// does not exist.  Entries whose bytes have not changed are left alone, so an
+// unchanged jar is not rewritten.  Several machines may be packaged into the
+// same jar at once, so writers to one jar take turns.  Entries a writer owns
+// that it no longer writes, such as the nested classes of a machine that
+// lost them, are removed.
+
+public class JarPackager {
+  private static final Map<Path, Object> locks = new ConcurrentHashMap<>();
+
+  public static void write(Path jar, Map<String, byte[]> entries) throws IOException {
+    write(jar, entries, name -> false);
+  }
+
+  public static void write(Path jar, Map<String, byte[]> entries, Predicate<String> owned) throws IOException {
+    Path key = jar.toAbsolutePath().normalize();
+    synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+      if (key.getParent() != null)
+        Files.createDirectories(key.getParent());
+      try (FileSystem zip = FileSystems.newFileSystem(URI.create("jar:" + key.toUri()), Map.of("create", "true"))) {
+        removeStaleEntries(zip, entries, owned);
+        for (Map.Entry<String, byte[]> entry : entries.entrySet())
+          writeEntry(zip.getPath(entry.getKey()), entry.getValue());
+      }
+    }
+  }
+
+  private static void removeStaleEntries(FileSystem zip, Map<String, byte[]> entries, Predicate<String> owned) throws IOException {
+    List<Path> stale;
+    try (Stream<Path> files = Files.walk(zip.getPath("/"))) {
+      stale = files.filter(Files::isRegularFile)
+        .filter(file -> {
+          String name = file.toString().substring(1);
+          return owned.test(name) && !entries.containsKey(name);
+        })
+        .toList();
+    }
+    for (Path file : stale)
+      Files.delete(file);
+  }
+
+  private static void writeEntry(Path entry, byte[] bytes) throws IOException {
+    if (Files.exists(entry) && Arrays.equals(Files.readAllBytes(entry), bytes))
+      return;
+    if (entry.getParent() != null)
+      Files.createDirectories(entry.getParent());
+    Files.write(entry, bytes);
+  }
+}
@@ -3,6 +3,8 @@ package smc.generators.nestedSwitchCaseGenerator;
 import smc.OptimizedStateMachine;
 
 public class NSCGenerator {
+  private final String stateEnumName;
+  private final String stateVariableName;
   private NSCNode.EnumNode stateEnumNode;
   private NSCNode.EnumNode eventEnumNode;
   private NSCNode.EventDelegatorsNode eventDelegatorsNode;
@@ -10,17 +12,43 @@ public class NSCGenerator {
   private NSCNode.HandleEventNode handleEventNode;
   private NSCNode.SwitchCaseNode stateSwitch;
 
+  public NSCGenerator() {
+    this("State", "state");
+  }
+
+  private NSCGenerator(String stateEnumName, String stateVariableName) {
+    this.stateEnumName = stateEnumName;
+    this.stateVariableName = stateVariableName;
+  }
+
   public NSCNode generate(OptimizedStateMachine sm) {
     eventDelegatorsNode = new NSCNode.EventDelegatorsNode(sm.events);
-    statePropertyNode = new NSCNode.StatePropertyNode(sm.header.initial);
-    stateEnumNode = new NSCNode.EnumNode("State", sm.states);
+    statePropertyNode = new NSCNode.StatePropertyNode(sm.header.initial, stateEnumName, stateVariableName);
+    stateEnumNode = new NSCNode.EnumNode(stateEnumName, sm.states);
     eventEnumNode = new NSCNode.EnumNode("Event", sm.events);
-    stateSwitch = new NSCNode.SwitchCaseNode("state");
+    stateSwitch = new NSCNode.SwitchCaseNode(stateVariableName);
     addStateCases(sm);
     handleEventNode = new NSCNode.HandleEventNode(stateSwitch);
     return makeFsmNode(sm);
   }
 
+  // A dispatcher keeps the state of each region in a variable of its own,
+  // instead of switching on the states of the product machine.  Each region
+  // is generated as a machine of its own, with state names taken from the
+  // region's name.
+  public NSCNode generateRegionDispatcher(OptimizedStateMachine sm) {
+    eventDelegatorsNode = new NSCNode.EventDelegatorsNode(sm.events);
+    eventEnumNode = new NSCNode.EnumNode("Event", sm.events);
+    NSCNode.FSMClassNode fsm = makeFsmNode(sm);
+    for (OptimizedStateMachine region : sm.regions) {
+      String name = region.header.fsm;
+      String enumName = Character.toUpperCase(name.charAt(0)) + name.substring(1) + "State";
+      String variableName = Character.toLowerCase(name.charAt(0)) + name.substring(1) + "State";
+      fsm.regions.add((NSCNode.FSMClassNode) new NSCGenerator(enumName, variableName).generate(region));
+    }
+    return fsm;
+  }
+
   private NSCNode.FSMClassNode makeFsmNode(OptimizedStateMachine sm) {
     NSCNode.FSMClassNode fsm = new NSCNode.FSMClassNode();
     fsm.className = sm.header.fsm;
@@ -40,7 +68,7 @@ public class NSCGenerator {
   }
 
   private void addStateCase(NSCNode.SwitchCaseNode stateSwitch, OptimizedStateMachine.Transition t) {
-    NSCNode.CaseNode stateCaseNode = new NSCNode.CaseNode("State", t.currentState);
+    NSCNode.CaseNode stateCaseNode = new NSCNode.CaseNode(stateEnumName, t.currentState);
     addEventCases(stateCaseNode, t);
     stateSwitch.caseNodes.add(stateCaseNode);
   }
@@ -69,8 +97,8 @@ public class NSCGenerator {
   }
 
   private void addSetStateNode(String stateName, NSCNode.CompositeNode actions) {
-    NSCNode.EnumeratorNode enumeratorNode = new NSCNode.EnumeratorNode("State", stateName);
-    NSCNode.FunctionCallNode setStateNode = new NSCNode.FunctionCallNode("setState", enumeratorNode);
+    NSCNode.EnumeratorNode enumeratorNode = new NSCNode.EnumeratorNode(stateEnumName, stateName);
+    NSCNode.FunctionCallNode setStateNode = new NSCNode.FunctionCallNode(statePropertyNode.setterName(), enumeratorNode);
     actions.add(setStateNode);
   }
 }
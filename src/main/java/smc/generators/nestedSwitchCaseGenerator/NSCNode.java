@@ -87,11 +87,23 @@ public interface NSCNode {
 
   class StatePropertyNode implements NSCNode {
     public String initialState;
+    public String enumName = "State";
+    public String variableName = "state";
 
     public StatePropertyNode(String initialState) {
       this.initialState = initialState;
     }
 
+    public StatePropertyNode(String initialState, String enumName, String variableName) {
+      this(initialState);
+      this.enumName = enumName;
+      this.variableName = variableName;
+    }
+
+    public String setterName() {
+      return "set" + Character.toUpperCase(variableName.charAt(0)) + variableName.substring(1);
+    }
+
     public void accept(NSCNodeVisitor visitor) {
       visitor.visit(this);
     }
@@ -118,6 +130,7 @@ public interface NSCNode {
     public String className;
     public String actionsName;
     public List<String> actions;
+    public List<FSMClassNode> regions = new ArrayList<>();
 
     public void accept(NSCNodeVisitor visitor) {
       visitor.visit(this);
@@ -0,0 +1,36 @@
+package smc.generators.statePatternGenerator;
+
+import smc.OptimizedStateMachine;
+
+// Generates the tree of a state pattern machine: a class for each state,
+// holding one method for each event the state handles, behind an interface
+// whose default methods report every other event as unhandled.  State
+// classes are named after their states, with the suffix State.
+
+public class SPGenerator {
+  public static final String STATE_INTERFACE = "State";
+
+  public SPNode generate(OptimizedStateMachine sm) {
+    SPNode.FSMClassNode fsm = new SPNode.FSMClassNode();
+    fsm.className = sm.header.fsm;
+    fsm.actionsName = sm.header.actions;
+    fsm.initialState = stateClassName(sm.header.initial);
+    fsm.actions = sm.actions;
+    fsm.delegators = new SPNode.EventDelegatorsNode(sm.events);
+    fsm.stateInterface = new SPNode.StateInterfaceNode(STATE_INTERFACE, sm.events);
+    for (OptimizedStateMachine.Transition t : sm.transitions)
+      fsm.stateClasses.add(makeStateClass(t));
+    return fsm;
+  }
+
+  private SPNode.StateClassNode makeStateClass(OptimizedStateMachine.Transition t) {
+    SPNode.StateClassNode stateClass = new SPNode.StateClassNode(stateClassName(t.currentState), t.currentState);
+    for (OptimizedStateMachine.SubTransition st : t.subTransitions)
+      stateClass.eventMethods.add(new SPNode.EventMethodNode(st.event, stateClassName(st.nextState), st.actions));
+    return stateClass;
+  }
+
+  public static String stateClassName(String state) {
+    return state + STATE_INTERFACE;
+  }
+}
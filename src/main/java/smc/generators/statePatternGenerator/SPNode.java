@@ -0,0 +1,84 @@
+package smc.generators.statePatternGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public interface SPNode {
+  void accept(SPNodeVisitor visitor);
+
+  class FSMClassNode implements SPNode {
+    public String className;
+    public String actionsName;
+    public String initialState;
+    public List<String> actions;
+    public EventDelegatorsNode delegators;
+    public StateInterfaceNode stateInterface;
+    public List<StateClassNode> stateClasses = new ArrayList<>();
+
+    public void accept(SPNodeVisitor visitor) {
+      visitor.visit(this);
+    }
+  }
+
+  class EventDelegatorsNode implements SPNode {
+    public List<String> events;
+
+    public EventDelegatorsNode(List<String> events) {
+      this.events = events;
+    }
+
+    public void accept(SPNodeVisitor visitor) {
+      visitor.visit(this);
+    }
+  }
+
+  class StateInterfaceNode implements SPNode {
+    public String className;
+    public List<String> events;
+
+    public StateInterfaceNode(String className, List<String> events) {
+      this.className = className;
+      this.events = events;
+    }
+
+    public void accept(SPNodeVisitor visitor) {
+      visitor.visit(this);
+    }
+  }
+
+  class StateClassNode implements SPNode {
+    public String className;
+    public String stateName;
+    public List<EventMethodNode> eventMethods = new ArrayList<>();
+
+    public StateClassNode(String className, String stateName) {
+      this.className = className;
+      this.stateName = stateName;
+    }
+
+    public void accept(SPNodeVisitor visitor) {
+      visitor.visit(this);
+    }
+
+    public void generateEventMethods(SPNodeVisitor visitor) {
+      for (EventMethodNode eventMethod : eventMethods)
+        eventMethod.accept(visitor);
+    }
+  }
+
+  class EventMethodNode implements SPNode {
+    public String event;
+    public String nextStateClass;
+    public List<String> actions;
+
+    public EventMethodNode(String event, String nextStateClass, List<String> actions) {
+      this.event = event;
+      this.nextStateClass = nextStateClass;
+      this.actions = actions;
+    }
+
+    public void accept(SPNodeVisitor visitor) {
+      visitor.visit(this);
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package smc.generators.statePatternGenerator;
+
+public interface SPNodeVisitor {
+  void visit(SPNode.FSMClassNode fsmClassNode);
+  void visit(SPNode.EventDelegatorsNode eventDelegatorsNode);
+  void visit(SPNode.StateInterfaceNode stateInterfaceNode);
+  void visit(SPNode.StateClassNode stateClassNode);
+  void visit(SPNode.EventMethodNode eventMethodNode);
+}
@@ -0,0 +1,68 @@
+package smc.implementers;
+
+import smc.generators.nestedSwitchCaseGenerator.NSCNode;
+import smc.generators.nestedSwitchCaseGenerator.NSCNodeVisitor;
+
+// Estimates the bytecode javac produces for a method generated by
+// JavaNestedSwitchCaseImplementer.  A switch on an enum loads the ordinal
+// through a switch map and jumps through a table; each case ends with a
+// jump or a return, and each call loads its receiver and arguments.  The
+// estimate errs on the large side.
+
+class JavaBytecodeEstimator implements NSCNodeVisitor {
+  private static final int METHOD_END = 2;
+  private static final int ENUM_SWITCH = 11 + 16;
+  private static final int SWITCH_ENTRY = 4;
+  private static final int CASE_END = 3;
+  private static final int CALL = 4;
+  private static final int ENUMERATOR = 3;
+  private static final int UNHANDLED_TRANSITION = 18;
+
+  private int bytes = 0;
+
+  static int estimate(NSCNode node) {
+    JavaBytecodeEstimator estimator = new JavaBytecodeEstimator();
+    node.accept(estimator);
+    return estimator.bytes + METHOD_END;
+  }
+
+  public void visit(NSCNode.SwitchCaseNode switchCaseNode) {
+    bytes += ENUM_SWITCH + SWITCH_ENTRY * switchCaseNode.caseNodes.size();
+    switchCaseNode.generateCases(this);
+  }
+
+  public void visit(NSCNode.CaseNode caseNode) {
+    caseNode.caseActionNode.accept(this);
+    bytes += CASE_END;
+  }
+
+  public void visit(NSCNode.FunctionCallNode functionCallNode) {
+    bytes += CALL;
+    if (functionCallNode.argument != null)
+      functionCallNode.argument.accept(this);
+  }
+
+  public void visit(NSCNode.EnumNode enumNode) {
+  }
+
+  public void visit(NSCNode.StatePropertyNode statePropertyNode) {
+  }
+
+  public void visit(NSCNode.EventDelegatorsNode eventDelegatorsNode) {
+  }
+
+  public void visit(NSCNode.FSMClassNode fsmClassNode) {
+  }
+
+  public void visit(NSCNode.HandleEventNode handleEventNode) {
+    handleEventNode.switchCase.accept(this);
+  }
+
+  public void visit(NSCNode.EnumeratorNode enumeratorNode) {
+    bytes += ENUMERATOR;
+  }
+
+  public void visit(NSCNode.DefaultCaseNode defaultCaseNode) {
+    bytes += UNHANDLED_TRANSITION + CASE_END;
+  }
+}
@@ -0,0 +1,211 @@
+package smc.implementers;
+
+import smc.classfile.ClassFile;
+import smc.classfile.Code;
+import smc.generators.nestedSwitchCaseGenerator.NSCNode;
+import smc.generators.nestedSwitchCaseGenerator.NSCNodeVisitor;
+
+import java.util.*;
+
+import static smc.classfile.ClassFile.*;
+import static smc.classfile.Code.*;
+
+// Writes the same abstract class as JavaNestedSwitchCaseImplementer, but as
+// bytecode.  The State and Event enums become ordinals, so each switch is a
+// tableswitch on an int, and the event names needed by unhandledTransition
+// come from a generated eventName(int) lookup.  A machine too large for
+// HotSpot to compile its handleEvent gets one handleEventIn method per
+// state, as JavaNestedSwitchCaseImplementer does.
+
+public class JavaClassNestedSwitchCaseImplementer implements NSCNodeVisitor {
+  private static final String OBJECT = "java/lang/Object";
+  private static final String UNHANDLED_TRANSITION = "(Ljava/lang/String;Ljava/lang/String;)V";
+  private static final String EVENT_NAME = "(I)Ljava/lang/String;";
+
+  private String javaPackage = null;
+  private String className;
+  private ClassFile classFile;
+  private Code code;
+  private final Map<String, List<String>> enums = new HashMap<>();
+  private final Deque<SwitchLabels> switches = new ArrayDeque<>();
+  private final List<NSCNode.CaseNode> stateHandlers = new ArrayList<>();
+  private boolean split = false;
+  private byte[] output;
+
+  public JavaClassNestedSwitchCaseImplementer(Map<String, String> flags) {
+    if (flags.containsKey("package"))
+      javaPackage = flags.get("package");
+  }
+
+  public void visit(NSCNode.SwitchCaseNode switchCaseNode) {
+    List<String> enumerators = enums.get(enumName(switchCaseNode.variableName));
+    SwitchLabels labels = new SwitchLabels();
+    Code.Label[] targets = new Code.Label[enumerators.size()];
+    Arrays.fill(targets, labels.defaultLabel);
+    boolean hasDefault = false;
+    for (NSCNode caseNode : switchCaseNode.caseNodes) {
+      if (caseNode instanceof NSCNode.CaseNode) {
+        String caseName = ((NSCNode.CaseNode) caseNode).caseName;
+        Code.Label label = new Code.Label();
+        labels.cases.put(caseName, label);
+        targets[enumerators.indexOf(caseName)] = label;
+      } else if (caseNode instanceof NSCNode.DefaultCaseNode)
+        hasDefault = true;
+    }
+
+    if (targets.length > 0) {
+      loadSwitchVariable(switchCaseNode.variableName);
+      code.tableSwitch(0, labels.defaultLabel, targets);
+    }
+    switches.push(labels);
+    switchCaseNode.generateCases(this);
+    switches.pop();
+    if (!hasDefault)
+      code.mark(labels.defaultLabel).op(RETURN);
+  }
+
+  private void loadSwitchVariable(String variableName) {
+    if (variableName.equals("state"))
+      code.op(ALOAD_0).op(GETFIELD, classFile.fieldRef(className, "state", "I"));
+    else
+      code.op(ILOAD_1);
+  }
+
+  private String enumName(String variableName) {
+    return variableName.substring(0, 1).toUpperCase() + variableName.substring(1);
+  }
+
+  public void visit(NSCNode.CaseNode caseNode) {
+    code.mark(switches.peek().cases.get(caseNode.caseName));
+    if (split && switches.size() == 1) {
+      stateHandlers.add(caseNode);
+      code.op(ALOAD_0).op(ILOAD_1)
+        .op(INVOKESPECIAL, classFile.methodRef(className, handlerName(caseNode), "(I)V"));
+    } else
+      caseNode.caseActionNode.accept(this);
+    code.op(RETURN);
+  }
+
+  private String handlerName(NSCNode.CaseNode stateCase) {
+    return "handleEventIn" + stateCase.caseName;
+  }
+
+  public void visit(NSCNode.FunctionCallNode functionCallNode) {
+    code.op(ALOAD_0);
+    if (functionCallNode.argument == null)
+      code.op(INVOKEVIRTUAL, classFile.methodRef(className, functionCallNode.functionName, "()V"));
+    else {
+      functionCallNode.argument.accept(this);
+      code.op(INVOKESPECIAL, classFile.methodRef(className, functionCallNode.functionName, "(I)V"));
+    }
+  }
+
+  public void visit(NSCNode.EnumNode enumNode) {
+    enums.put(enumNode.name, enumNode.enumerators);
+  }
+
+  public void visit(NSCNode.StatePropertyNode statePropertyNode) {
+    int state = classFile.fieldRef(className, "state", "I");
+    classFile.addField(ACC_PRIVATE, "state", "I");
+
+    Code constructor = new Code(2, 1)
+      .op(ALOAD_0)
+      .op(INVOKESPECIAL, classFile.methodRef(OBJECT, "<init>", "()V"))
+      .op(ALOAD_0);
+    constructor.pushInt(classFile, enums.get("State").indexOf(statePropertyNode.initialState));
+    constructor.op(PUTFIELD, state).op(RETURN);
+    classFile.addMethod(ACC_PUBLIC, "<init>", "()V", constructor);
+
+    Code setState = new Code(2, 2).op(ALOAD_0).op(ILOAD_1).op(PUTFIELD, state).op(RETURN);
+    classFile.addMethod(ACC_PRIVATE, "setState", "(I)V", setState);
+  }
+
+  public void visit(NSCNode.EventDelegatorsNode eventDelegatorsNode) {
+    int handleEvent = classFile.methodRef(className, "handleEvent", "(I)V");
+    for (String event : eventDelegatorsNode.events) {
+      Code delegator = new Code(2, 1).op(ALOAD_0);
+      delegator.pushInt(classFile, enums.get("Event").indexOf(event));
+      delegator.op(INVOKESPECIAL, handleEvent).op(RETURN);
+      classFile.addMethod(ACC_PUBLIC, event, "()V", delegator);
+    }
+  }
+
+  public void visit(NSCNode.FSMClassNode fsmClassNode) {
+    className = internalName(fsmClassNode.className);
+    String actionsName = fsmClassNode.actionsName;
+    if (actionsName == null)
+      classFile = new ClassFile(ACC_PUBLIC | ACC_SUPER | ACC_ABSTRACT, className, OBJECT);
+    else
+      classFile = new ClassFile(ACC_PUBLIC | ACC_SUPER | ACC_ABSTRACT, className, OBJECT, internalName(actionsName));
+
+    classFile.addMethod(ACC_PUBLIC | ACC_ABSTRACT, "unhandledTransition", UNHANDLED_TRANSITION, null);
+    fsmClassNode.stateEnum.accept(this);
+    fsmClassNode.eventEnum.accept(this);
+    fsmClassNode.stateProperty.accept(this);
+    fsmClassNode.delegators.accept(this);
+    fsmClassNode.handleEvent.accept(this);
+    addEventNameMethod();
+    if (actionsName == null) {
+      for (String action : fsmClassNode.actions)
+        classFile.addMethod(ACC_PROTECTED | ACC_ABSTRACT, action, "()V", null);
+    }
+    output = classFile.toByteArray();
+  }
+
+  private String internalName(String name) {
+    if (javaPackage == null || name.contains("."))
+      return name.replace('.', '/');
+    return javaPackage.replace('.', '/') + "/" + name;
+  }
+
+  private void addEventNameMethod() {
+    List<String> events = enums.get("Event");
+    Code eventName = new Code(1, 1);
+    Code.Label unknown = new Code.Label();
+    Code.Label[] targets = new Code.Label[events.size()];
+    for (int i = 0; i < targets.length; i++)
+      targets[i] = new Code.Label();
+    if (targets.length > 0)
+      eventName.op(ILOAD_0).tableSwitch(0, unknown, targets);
+    for (int i = 0; i < targets.length; i++)
+      eventName.mark(targets[i]).pushString(classFile, events.get(i)).op(ARETURN);
+    eventName.mark(unknown).op(ACONST_NULL).op(ARETURN);
+    classFile.addMethod(ACC_PRIVATE | ACC_STATIC, "eventName", EVENT_NAME, eventName);
+  }
+
+  public void visit(NSCNode.HandleEventNode handleEventNode) {
+    split = JavaBytecodeEstimator.estimate(handleEventNode) > JavaNestedSwitchCaseImplementer.HUGE_METHOD_LIMIT;
+    code = new Code(3, 2);
+    handleEventNode.switchCase.accept(this);
+    classFile.addMethod(ACC_PRIVATE, "handleEvent", "(I)V", code);
+    split = false;
+    for (NSCNode.CaseNode stateCase : stateHandlers) {
+      code = new Code(3, 2);
+      stateCase.caseActionNode.accept(this);
+      classFile.addMethod(ACC_PRIVATE, handlerName(stateCase), "(I)V", code);
+    }
+  }
+
+  public void visit(NSCNode.EnumeratorNode enumeratorNode) {
+    code.pushInt(classFile, enums.get(enumeratorNode.enumeration).indexOf(enumeratorNode.enumerator));
+  }
+
+  public void visit(NSCNode.DefaultCaseNode defaultCaseNode) {
+    code.mark(switches.peek().defaultLabel)
+      .op(ALOAD_0)
+      .pushString(classFile, defaultCaseNode.state)
+      .op(ILOAD_1)
+      .op(INVOKESTATIC, classFile.methodRef(className, "eventName", EVENT_NAME))
+      .op(INVOKEVIRTUAL, classFile.methodRef(className, "unhandledTransition", UNHANDLED_TRANSITION))
+      .op(RETURN);
+  }
+
+  public byte[] getOutput() {
+    return output;
+  }
+
+  private static class SwitchLabels {
+    final Map<String, Code.Label> cases = new HashMap<>();
+    final Code.Label defaultLabel = new Code.Label();
+  }
+}
@@ -3,16 +3,111 @@ package smc.implementers;
 import smc.Utilities;
 import smc.generators.nestedSwitchCaseGenerator.NSCNode;
 import smc.generators.nestedSwitchCaseGenerator.NSCNodeVisitor;
+import smc.runtime.EventMailbox;
+import smc.runtime.EventQueue;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 
+// A handleEvent method too large for HotSpot to compile is split into one
+// method per state, dispatched from a switch on the state.  With more states
+// than one dispatcher can take, the dispatcher switches on the state's
+// ordinal to a dispatcher per group of states.  Methods that are still too
+// large are reported as warnings.
+//
+// With the javaDispatch:int flag, states and events are public int constants
+// instead of private enums, events can be sent by number to handleEvent(int),
+// and the current state can be read as an int.  handleEvent then switches
+// once, on state * NUMBER_OF_EVENTS + event.
+//
+// With threading:cas, several threads may send events at once.  The state
+// is a volatile int, and a transition first moves it from the state it was
+// decided in to the next state with a compare-and-set, then runs the actions.
+// A thread that loses the race decides again in the state the winner left,
+// where the event may turn out to be unhandled.  States are ints, as with
+// javaDispatch:int.
+//
+// With threading:mailbox, events are sent to an smc.runtime.EventMailbox and
+// dispatched by whichever sending thread holds its drain flag, one at a time
+// and in order.  mailboxCapacity sets the size of the mailbox.  The state is
+// volatile, since getState may be called from any thread.
+//
+// With reentrancy:queue, events sent by actions while the machine is
+// handling an event go into an smc.runtime.EventQueue, and handleEvent
+// dispatches them once the current transition is complete, instead of
+// handling them recursively in the middle of it.  eventQueueCapacity and
+// eventQueueOverflow set the size of the queue and what happens when it is
+// full.  The queue is for machines used by one thread, and is not added
+// under threading:cas or threading:mailbox.
+//
+// With bulkEvents:true, handleEvents takes a batch of event numbers from an
+// int array or a ByteBuffer and dispatches them in one loop, with the state
+// in a local variable that is written back when the batch is done.  Where
+// the state must be kept in the field, because the machine is split,
+// threaded or queued, the loop sends each event to handleEvent instead.
+//
+// With metrics:counters, every transition, unhandled event and state entry
+// is counted in an smc.runtime.TransitionCounters shared by all instances of
+// the class and published through JMX.  With metrics:latency, the time the
+// actions of each transition take is recorded in an smc.runtime.
+// TransitionLatencies histogram per transition.  metrics:counters+latency
+// does both.  Machines with regions are measured as their product machine.
+
 public class JavaNestedSwitchCaseImplementer implements NSCNodeVisitor {
+  public static final int HUGE_METHOD_LIMIT = 8000;
+  public static final int MAX_METHOD_BYTES = 65535;
+  static final int STATES_PER_DISPATCHER = 256;
+
   private String output = "";
   private String javaPackage = null;
+  private String region = null;
+  private boolean intDispatch = false;
+  private boolean cas = false;
+  private boolean mailbox = false;
+  private int mailboxCapacity = EventMailbox.DEFAULT_CAPACITY;
+  private boolean queued = false;
+  private int eventQueueCapacity = EventQueue.DEFAULT_CAPACITY;
+  private EventQueue.Overflow eventQueueOverflow = EventQueue.Overflow.THROW;
+  private boolean bulk = false;
+  private boolean localState = false;
+  private boolean actionsCalled = false;
+  private int eventCount;
+  private boolean counters = false;
+  private boolean latency = false;
+  private List<String> events;
+  private String currentState;
+  private String currentEvent;
+  private final BitSet handledCells = new BitSet();
+  private String className;
+  private List<String> states;
+  private final List<String> warnings = new ArrayList<>();
 
   public JavaNestedSwitchCaseImplementer(Map<String, String> flags) {
     if (flags.containsKey("package"))
       javaPackage = flags.get("package");
+    cas = "cas".equals(flags.get("threading"));
+    mailbox = "mailbox".equals(flags.get("threading"));
+    if (flags.containsKey("mailboxCapacity"))
+      mailboxCapacity = Integer.parseInt(flags.get("mailboxCapacity"));
+    queued = "queue".equals(flags.get("reentrancy")) && !flags.containsKey("threading");
+    if (flags.containsKey("eventQueueCapacity"))
+      eventQueueCapacity = Integer.parseInt(flags.get("eventQueueCapacity"));
+    if (flags.containsKey("eventQueueOverflow"))
+      eventQueueOverflow = EventQueue.Overflow.valueOf(flags.get("eventQueueOverflow").toUpperCase());
+    bulk = "true".equals(flags.get("bulkEvents"));
+    if (flags.containsKey("metrics")) {
+      List<String> metrics = List.of(flags.get("metrics").split("\\+"));
+      counters = metrics.contains("counters");
+      latency = metrics.contains("latency");
+    }
+    intDispatch = usesIntStates(flags);
+  }
+
+  public static boolean usesIntStates(Map<String, String> flags) {
+    return "int".equals(flags.get("javaDispatch")) || "cas".equals(flags.get("threading")) || "mailbox".equals(flags.get("threading")) ||
+      "true".equals(flags.get("bulkEvents"));
   }
 
   public void visit(NSCNode.SwitchCaseNode switchCaseNode) {
@@ -22,30 +117,145 @@ public class JavaNestedSwitchCaseImplementer implements NSCNodeVisitor {
   }
 
   public void visit(NSCNode.CaseNode caseNode) {
-    output += String.format("case %s:\n", caseNode.caseName);
+    if (caseNode.switchName.equals("Event"))
+      currentEvent = caseNode.caseName;
+    else
+      currentState = caseNode.caseName;
+    output += String.format("case %s:\n", caseLabel(caseNode));
+    boolean transition = caseNode.switchName.equals("Event");
+    if (transition)
+      beginTransition();
     caseNode.caseActionNode.accept(this);
-    output += "break;\n";
+    if (transition)
+      endTransition();
+    output += region != null && caseNode.switchName.equals("Event") ? "return true;\n" : "break;\n";
+  }
+
+  private String caseLabel(NSCNode.CaseNode caseNode) {
+    return intDispatch ? constantName(caseNode.switchName, caseNode.caseName) : caseNode.caseName;
+  }
+
+  private static String constantName(String enumName, String enumerator) {
+    return enumName.toUpperCase() + "_" + enumerator;
   }
 
   public void visit(NSCNode.FunctionCallNode functionCallNode) {
-    output += String.format("%s(", functionCallNode.functionName);
-    if (functionCallNode.argument != null)
+    boolean setsState = functionCallNode.argument instanceof NSCNode.EnumeratorNode;
+    if (localState && setsState) {
+      output += "this.state = state = ";
+      functionCallNode.argument.accept(this);
+      output += ";\n";
+    } else if (cas && setsState) {
+      output += "if (!compareAndSetState(current, ";
       functionCallNode.argument.accept(this);
-    output += ");\n";
+      output += ")) return false;\n";
+    } else {
+      actionsCalled = true;
+      output += String.format("%s(", functionCallNode.functionName);
+      if (functionCallNode.argument != null)
+        functionCallNode.argument.accept(this);
+      output += ");\n";
+    }
+    if (counting() && setsState)
+      output += String.format("counters.transition(%d, %d);\n", currentCell(), states.indexOf(((NSCNode.EnumeratorNode) functionCallNode.argument).enumerator));
+    if (timing() && setsState)
+      output += "long start = System.nanoTime();\n";
+  }
+
+  private boolean counting() {
+    return counters && region == null;
+  }
+
+  private boolean timing() {
+    return latency && region == null;
+  }
+
+  private int currentCell() {
+    return states.indexOf(currentState) * events.size() + events.indexOf(currentEvent);
+  }
+
+  // The actions of a transition are timed in a block of their own, so that
+  // each case can declare its start time.
+  private void beginTransition() {
+    actionsCalled = false;
+    if (counting() || timing())
+      handledCells.set(currentCell());
+    if (timing())
+      output += "{\n";
+  }
+
+  private void endTransition() {
+    if (localState && actionsCalled)
+      output += reloadState();
+    if (timing())
+      output += String.format("latencies.record(%d, System.nanoTime() - start);\n}\n", currentCell());
   }
 
   public void visit(NSCNode.EnumNode enumNode) {
-    output += String.format("private enum %s {%s}\n", enumNode.name, Utilities.commaList(enumNode.enumerators));
+    if (intDispatch)
+      addIntConstants(enumNode);
+    else {
+      output += String.format("private enum %s {%s}\n", enumNode.name, Utilities.commaList(enumNode.enumerators));
+      if (queued && enumNode.name.equals("Event"))
+        output += "private static final Event[] EVENTS = Event.values();\n";
+    }
+  }
+
+  // The count and the names are not prefixed like the constants, so that a
+  // state or event called COUNT or NAMES does not clash with them.
+  private void addIntConstants(NSCNode.EnumNode enumNode) {
+    String plural = enumNode.name.toUpperCase() + "S";
+    for (int i = 0; i < enumNode.enumerators.size(); i++)
+      output += String.format("public static final int %s = %d;\n", constantName(enumNode.name, enumNode.enumerators.get(i)), i);
+    output += String.format("public static final int NUMBER_OF_%s = %d;\n", plural, enumNode.enumerators.size());
+    if (enumNode.name.equals("Event"))
+      eventCount = enumNode.enumerators.size();
+    output += String.format("private static final String[] NAMES_OF_%s = {%s};\n", plural, quotedList(enumNode.enumerators));
+  }
+
+  private static String quotedList(List<String> names) {
+    List<String> quoted = new ArrayList<>();
+    for (String name : names)
+      quoted.add("\"" + name + "\"");
+    return String.join(", ", quoted);
   }
 
   public void visit(NSCNode.StatePropertyNode statePropertyNode) {
-    output += String.format("private State state = State.%s;\n", statePropertyNode.initialState);
-    output += "private void setState(State s) {state = s;}\n";
+    String enumName = statePropertyNode.enumName;
+    String variableName = statePropertyNode.variableName;
+    if (cas) {
+      addCasStateProperty(statePropertyNode);
+      return;
+    }
+    if (intDispatch) {
+      output += String.format("private %sint %s = %s;\n", mailbox ? "volatile " : "", variableName, constantName(enumName, statePropertyNode.initialState));
+      output += String.format("public int getState() {return %s;}\n", variableName);
+      output += String.format("private void %s(int s) {%s = s;}\n", statePropertyNode.setterName(), variableName);
+      if (mailbox)
+        output += String.format("private final smc.runtime.EventMailbox mailbox = new smc.runtime.EventMailbox(%d, this::dispatchEvent);\n", mailboxCapacity);
+      return;
+    }
+    output += String.format("private %s %s = %s.%s;\n", enumName, variableName, enumName, statePropertyNode.initialState);
+    output += String.format("private void %s(%s s) {%s = s;}\n", statePropertyNode.setterName(), enumName, variableName);
+  }
+
+  private void addCasStateProperty(NSCNode.StatePropertyNode statePropertyNode) {
+    output += String.format("private volatile int state = %s;\n", constantName(statePropertyNode.enumName, statePropertyNode.initialState));
+    output += "private static final java.lang.invoke.VarHandle stateHandle;\n";
+    output += "static {\n";
+    output += "try {\n";
+    output += String.format("stateHandle = java.lang.invoke.MethodHandles.lookup().findVarHandle(%s.class, \"state\", int.class);\n", className);
+    output += "} catch (ReflectiveOperationException e) {\n";
+    output += "throw new ExceptionInInitializerError(e);\n";
+    output += "}\n";
+    output += "}\n";
+    output += "public int getState() {return state;}\n";
+    output += "private boolean compareAndSetState(int current, int s) {return stateHandle.compareAndSet(this, current, s);}\n";
   }
 
   public void visit(NSCNode.EventDelegatorsNode eventDelegatorsNode) {
     for (String event : eventDelegatorsNode.events)
-      output += String.format("public void %s() {handleEvent(Event.%s);}\n", event, event);
+      output += String.format("public void %s() {handleEvent(%s);}\n", event, intDispatch ? constantName("Event", event) : "Event." + event);
   }
 
   public void visit(NSCNode.FSMClassNode fsmClassNode) {
@@ -59,11 +269,22 @@ public class JavaNestedSwitchCaseImplementer implements NSCNodeVisitor {
       output += String.format("public abstract class %s implements %s {\n", fsmClassNode.className, actionsName);
 
     output += "public abstract void unhandledTransition(String state, String event);\n";
-    fsmClassNode.stateEnum.accept(this);
-    fsmClassNode.eventEnum.accept(this);
-    fsmClassNode.stateProperty.accept(this);
-    fsmClassNode.delegators.accept(this);
-    fsmClassNode.handleEvent.accept(this);
+    className = fsmClassNode.className;
+    if (fsmClassNode.regions.isEmpty()) {
+      states = fsmClassNode.stateEnum.enumerators;
+      events = fsmClassNode.eventEnum.enumerators;
+      fsmClassNode.stateEnum.accept(this);
+      fsmClassNode.eventEnum.accept(this);
+      fsmClassNode.stateProperty.accept(this);
+      addEventQueue();
+      fsmClassNode.delegators.accept(this);
+      fsmClassNode.handleEvent.accept(this);
+      if (counters)
+        addMetric("counters", "TransitionCounters");
+      if (latency)
+        addMetric("latencies", "TransitionLatencies");
+    } else
+      addRegionDispatcher(fsmClassNode);
     if (actionsName == null) {
       for (String action : fsmClassNode.actions)
         output += String.format("protected abstract void %s();\n", action);
@@ -71,21 +292,305 @@ public class JavaNestedSwitchCaseImplementer implements NSCNodeVisitor {
     output += "}\n";
   }
 
+  private void addMetric(String field, String metricClass) {
+    StringBuilder bitmap = new StringBuilder();
+    for (int word = 0; word * 16 < handledCells.length(); word++) {
+      char bits = 0;
+      for (int bit = 0; bit < 16; bit++)
+        if (handledCells.get(word * 16 + bit))
+          bits |= 1 << bit;
+      bitmap.append(bits);
+    }
+    output += String.format("private static final smc.runtime.%s %s = smc.runtime.%s.register(%s.class,\n", metricClass, field, metricClass, className);
+    output += String.format("new String[]{%s},\n", quotedList(states));
+    output += String.format("new String[]{%s},\n", quotedList(events));
+    output += JavaTableImplementer.literals(bitmap.toString()) + ");\n";
+  }
+
+  // Every region handles the event in turn, and the event is unhandled only
+  // when none of them handled it.  The state reported then is the name of the
+  // product state.
+  private void addRegionDispatcher(NSCNode.FSMClassNode fsmClassNode) {
+    fsmClassNode.eventEnum.accept(this);
+    List<String> stateNames = new ArrayList<>();
+    for (NSCNode.FSMClassNode regionNode : fsmClassNode.regions) {
+      regionNode.stateEnum.accept(this);
+      regionNode.stateProperty.accept(this);
+      stateNames.add(regionNode.stateProperty.variableName + ".name()");
+    }
+    addEventQueue();
+    fsmClassNode.delegators.accept(this);
+
+    output += queuedHandleEvent();
+    output += String.format("private void %s(Event event) {\n", queued ? "dispatchEvent" : "handleEvent");
+    output += "boolean handled = false;\n";
+    for (NSCNode.FSMClassNode regionNode : fsmClassNode.regions)
+      output += String.format("handled |= handle%sEvent(event);\n", regionNode.className);
+    output += String.format("if (!handled) unhandledTransition(%s, event.name());\n", String.join(" + \"_\" + ", stateNames));
+    output += "}\n";
+    for (NSCNode.FSMClassNode regionNode : fsmClassNode.regions) {
+      region = regionNode.className;
+      states = regionNode.stateEnum.enumerators;
+      regionNode.handleEvent.accept(this);
+      region = null;
+    }
+  }
+
+  private void addEventQueue() {
+    if (!queued)
+      return;
+    output += String.format("private final smc.runtime.EventQueue eventQueue = new smc.runtime.EventQueue(%d, smc.runtime.EventQueue.Overflow.%s);\n", eventQueueCapacity, eventQueueOverflow);
+    output += "private boolean dispatching = false;\n";
+  }
+
+  // Events sent while an event is being dispatched wait in the queue for the
+  // transition to complete.  If an action throws, the events it queued are
+  // discarded with it.
+  private String queuedHandleEvent() {
+    if (!queued)
+      return "";
+    String event = intDispatch ? "event" : "event.ordinal()";
+    String next = intDispatch ? "next" : "EVENTS[next]";
+    return (intDispatch ? "" : "private void handleEvent(Event event) {\n") +
+      "if (dispatching) {\n" +
+      String.format("eventQueue.offer(%s);\n", event) +
+      "return;\n" +
+      "}\n" +
+      "dispatching = true;\n" +
+      "try {\n" +
+      "dispatchEvent(event);\n" +
+      "for (int next = eventQueue.poll(); next != smc.runtime.EventQueue.EMPTY; next = eventQueue.poll())\n" +
+      String.format("dispatchEvent(%s);\n", next) +
+      "} finally {\n" +
+      "dispatching = false;\n" +
+      "eventQueue.clear();\n" +
+      "}\n" +
+      "}\n";
+  }
+
   public void visit(NSCNode.HandleEventNode handleEventNode) {
-    output += "private void handleEvent(Event event) {\n";
-    handleEventNode.switchCase.accept(this);
+    boolean split = JavaBytecodeEstimator.estimate(handleEventNode) > HUGE_METHOD_LIMIT;
+    if (split)
+      addSplitHandleEvent(handleEventNode.switchCase);
+    else {
+      output += handleEventHeader();
+      if (intDispatch)
+        addCombinedSwitch(handleEventNode.switchCase);
+      else
+        handleEventNode.switchCase.accept(this);
+      output += methodEnd();
+    }
+    if (bulk)
+      addHandleEvents(handleEventNode.switchCase, split || cas || mailbox || queued);
+  }
+
+  // A ByteBuffer holds one unsigned byte per event, or an unsigned short in
+  // the buffer's byte order when there are more than 256 events.
+  // A ByteBuffer's position is moved past the events that were handled, in a
+  // finally block, so an event that throws is left at the position.
+  // The state is read from a local, but the field is set before any action
+  // runs and read back after it, since an action may send events itself.
+  private void addHandleEvents(NSCNode.SwitchCaseNode stateSwitch, boolean eventAtATime) {
+    boolean shortEvents = eventCount > 256;
+    output += "public void handleEvents(int[] events, int offset, int length) {\n";
+    output += "java.util.Objects.checkFromIndexSize(offset, length, events.length);\n";
+    output += "dispatchEvents(events, null, offset, length);\n";
+    output += "}\n";
+    output += "public void handleEvents(java.nio.ByteBuffer events) {\n";
+    output += String.format("dispatchEvents(null, events, events.position(), events.remaining()%s);\n", shortEvents ? " / 2" : "");
+    output += "}\n";
+    output += "private void dispatchEvents(int[] array, java.nio.ByteBuffer buffer, int offset, int length) {\n";
+    String event = shortEvents ?
+      "array != null ? array[offset + i] : buffer.getShort(offset + 2 * i) & 0xFFFF" :
+      "array != null ? array[offset + i] : buffer.get(offset + i) & 0xFF";
+    String consumed = String.format("if (buffer != null) buffer.position(offset + %s);\n", shortEvents ? "2 * i" : "i");
+    output += "int i = 0;\n";
+    if (eventAtATime) {
+      output += "try {\n";
+      output += "for (; i < length; i++)\n";
+      output += String.format("handleEvent(%s);\n", event);
+      output += "} finally {\n";
+      output += consumed;
+      output += "}\n";
+      output += "}\n";
+      return;
+    }
+    output += "int state = this.state;\n";
+    output += "try {\n";
+    output += "for (; i < length; i++) {\n";
+    output += String.format("int event = %s;\n", event);
+    output += "if (event < 0 || event >= NUMBER_OF_EVENTS) throw new IllegalArgumentException(\"No event \" + event);\n";
+    localState = true;
+    addCombinedSwitch(stateSwitch);
+    localState = false;
+    output += "}\n";
+    output += "} finally {\n";
+    output += consumed;
+    output += "}\n";
+    output += "}\n";
+  }
+
+  // An event number outside the machine's events would select a cell of
+  // another state.
+  private String handleEventHeader() {
+    if (region != null)
+      return methodHeader("handle" + region + "Event");
+    if (!intDispatch)
+      return queuedHandleEvent() + methodHeader(queued ? "dispatchEvent" : "handleEvent");
+    String header = "public void handleEvent(int event) {\n" +
+      "if (event < 0 || event >= NUMBER_OF_EVENTS) throw new IllegalArgumentException(\"No event \" + event);\n";
+    if (queued)
+      return header +
+        queuedHandleEvent() +
+        methodHeader("dispatchEvent");
+    if (mailbox)
+      return header +
+        "mailbox.send(event);\n" +
+        "}\n" +
+        methodHeader("dispatchEvent");
+    if (!cas)
+      return header;
+    return header +
+      "while (!handleEvent(state, event));\n" +
+      "}\n" +
+      methodHeader("handleEvent");
+  }
+
+  private String stateVariable() {
+    return cas ? "current" : "state";
+  }
+
+  private void addCombinedSwitch(NSCNode.SwitchCaseNode stateSwitch) {
+    output += String.format("switch(%s * NUMBER_OF_EVENTS + event) {\n", stateVariable());
+    for (NSCNode stateNode : stateSwitch.caseNodes) {
+      NSCNode.CaseNode stateCase = (NSCNode.CaseNode) stateNode;
+      currentState = stateCase.caseName;
+      for (NSCNode eventNode : ((NSCNode.SwitchCaseNode) stateCase.caseActionNode).caseNodes)
+        if (eventNode instanceof NSCNode.CaseNode) {
+          NSCNode.CaseNode eventCase = (NSCNode.CaseNode) eventNode;
+          currentEvent = eventCase.caseName;
+          output += String.format("case %s * NUMBER_OF_EVENTS + %s:\n", caseLabel(stateCase), caseLabel(eventCase));
+          beginTransition();
+          eventCase.caseActionNode.accept(this);
+          endTransition();
+          output += "break;\n";
+        }
+    }
+    output += unhandledCase();
+    output += "}\n";
+  }
+
+  private void addSplitHandleEvent(NSCNode.SwitchCaseNode stateSwitch) {
+    List<List<NSCNode.CaseNode>> groups = new ArrayList<>();
+    for (NSCNode node : stateSwitch.caseNodes) {
+      NSCNode.CaseNode stateCase = (NSCNode.CaseNode) node;
+      int group = states.indexOf(stateCase.caseName) / STATES_PER_DISPATCHER;
+      while (groups.size() <= group)
+        groups.add(new ArrayList<>());
+      groups.get(group).add(stateCase);
+    }
+
+    String variableName = intDispatch ? stateVariable() : stateSwitch.variableName;
+    output += handleEventHeader();
+    if (groups.size() <= 1)
+      addStateDispatch(variableName, groups.isEmpty() ? List.of() : groups.get(0));
+    else {
+      String ordinal = intDispatch ? variableName : variableName + ".ordinal()";
+      output += String.format("switch(%s / %d) {\n", ordinal, STATES_PER_DISPATCHER);
+      for (int group = 0; group < groups.size(); group++)
+        output += String.format("case %d: %s\n", group, callHandler("StateGroup" + group));
+      output += "}\n";
+    }
+    output += methodEnd();
+
+    if (groups.size() > 1)
+      for (int group = 0; group < groups.size(); group++) {
+        output += methodHeader(handlerName("StateGroup" + group));
+        addStateDispatch(variableName, groups.get(group));
+        output += methodEnd();
+      }
+    for (List<NSCNode.CaseNode> group : groups)
+      for (NSCNode.CaseNode stateCase : group) {
+        currentState = stateCase.caseName;
+        String handlerName = handlerName(stateCase.caseName);
+        output += methodHeader(handlerName);
+        stateCase.caseActionNode.accept(this);
+        output += methodEnd();
+        checkMethodSize(handlerName, JavaBytecodeEstimator.estimate(stateCase.caseActionNode));
+      }
+  }
+
+  private void addStateDispatch(String variableName, List<NSCNode.CaseNode> stateCases) {
+    output += String.format("switch(%s) {\n", variableName);
+    for (NSCNode.CaseNode stateCase : stateCases)
+      output += String.format("case %s: %s\n", caseLabel(stateCase), callHandler(stateCase.caseName));
     output += "}\n";
   }
 
+  private String handlerName(String suffix) {
+    return region == null ? "handleEventIn" + suffix : "handle" + region + "EventIn" + suffix;
+  }
+
+  private String callHandler(String suffix) {
+    String arguments = cas ? "(current, event)" : "(event)";
+    if (region == null && !cas)
+      return String.format("%s%s; break;", handlerName(suffix), arguments);
+    return String.format("return %s%s;", handlerName(suffix), arguments);
+  }
+
+  // Region handlers return whether they handled the event, and handlers under
+  // threading:cas return false when they lost the race for the state.
+  private String methodHeader(String name) {
+    if (cas)
+      return String.format("private boolean %s(int current, int event) {\n", name);
+    return String.format("private %s %s(%s event) {\n", region == null ? "void" : "boolean", name, intDispatch ? "int" : "Event");
+  }
+
+  private String methodEnd() {
+    if (cas)
+      return "return true;\n}\n";
+    return region == null ? "}\n" : "return false;\n}\n";
+  }
+
+  private void checkMethodSize(String methodName, int bytes) {
+    if (bytes > MAX_METHOD_BYTES)
+      warnings.add(String.format("%s.%s is about %d bytes of bytecode, too large for javac.", className, methodName, bytes));
+    else if (bytes > HUGE_METHOD_LIMIT)
+      warnings.add(String.format("%s.%s is about %d bytes of bytecode; HotSpot will not compile methods over %d bytes.", className, methodName, bytes, HUGE_METHOD_LIMIT));
+  }
+
   public void visit(NSCNode.EnumeratorNode enumeratorNode) {
-    output += String.format("%s.%s", enumeratorNode.enumeration, enumeratorNode.enumerator);
+    if (intDispatch)
+      output += constantName(enumeratorNode.enumeration, enumeratorNode.enumerator);
+    else
+      output += String.format("%s.%s", enumeratorNode.enumeration, enumeratorNode.enumerator);
   }
 
   public void visit(NSCNode.DefaultCaseNode defaultCaseNode) {
-    output += "default: unhandledTransition(state.name(), event.name()); break;\n";
+    if (region == null)
+      output += unhandledCase();
+  }
+
+  private String unhandledCase() {
+    String count = "";
+    if (counting())
+      count = intDispatch ?
+        String.format("counters.unhandled(%s, event); ", stateVariable()) :
+        "counters.unhandled(state.ordinal(), event.ordinal()); ";
+    if (intDispatch)
+      return String.format("default: %sunhandledTransition(NAMES_OF_STATES[%s], NAMES_OF_EVENTS[event]); %sbreak;\n", count, stateVariable(), localState ? reloadState() : "");
+    return String.format("default: %sunhandledTransition(state.name(), event.name()); break;\n", count);
+  }
+
+  private String reloadState() {
+    return "state = this.state;\n";
   }
 
   public String getOutput() {
     return output;
   }
+
+  public List<String> getWarnings() {
+    return warnings;
+  }
 }
@@ -0,0 +1,82 @@
+package smc.implementers;
+
+import smc.generators.statePatternGenerator.SPNode;
+import smc.generators.statePatternGenerator.SPNodeVisitor;
+
+import java.util.Map;
+
+// Writes the state pattern as an abstract class with a private nested class
+// per state.  Each state class is a singleton held in a static field of its
+// own, so the JVM loads a state's class the first time the machine enters
+// that state, and states that are never entered cost nothing.  Events are
+// dispatched with one interface call on the current state.
+
+public class JavaStatePatternImplementer implements SPNodeVisitor {
+  private String output = "";
+  private String javaPackage = null;
+  private String fsmClassName;
+  private String stateInterfaceName;
+
+  public JavaStatePatternImplementer(Map<String, String> flags) {
+    if (flags.containsKey("package"))
+      javaPackage = flags.get("package");
+  }
+
+  public void visit(SPNode.FSMClassNode fsmClassNode) {
+    fsmClassName = fsmClassNode.className;
+    stateInterfaceName = fsmClassNode.stateInterface.className;
+    if (javaPackage != null)
+      output += "package " + javaPackage + ";\n";
+
+    String actionsName = fsmClassNode.actionsName;
+    if (actionsName == null)
+      output += String.format("public abstract class %s {\n", fsmClassName);
+    else
+      output += String.format("public abstract class %s implements %s {\n", fsmClassName, actionsName);
+
+    output += "public abstract void unhandledTransition(String state, String event);\n";
+    output += String.format("private %s state = %s.INSTANCE;\n", stateInterfaceName, fsmClassNode.initialState);
+    fsmClassNode.delegators.accept(this);
+    fsmClassNode.stateInterface.accept(this);
+    for (SPNode.StateClassNode stateClass : fsmClassNode.stateClasses)
+      stateClass.accept(this);
+    if (actionsName == null) {
+      for (String action : fsmClassNode.actions)
+        output += String.format("protected abstract void %s();\n", action);
+    }
+    output += "}\n";
+  }
+
+  public void visit(SPNode.EventDelegatorsNode eventDelegatorsNode) {
+    for (String event : eventDelegatorsNode.events)
+      output += String.format("public void %s() {state.%s(this);}\n", event, event);
+  }
+
+  public void visit(SPNode.StateInterfaceNode stateInterfaceNode) {
+    output += String.format("private interface %s {\n", stateInterfaceNode.className);
+    output += "String name();\n";
+    for (String event : stateInterfaceNode.events)
+      output += String.format("default void %s(%s fsm) {fsm.unhandledTransition(name(), \"%s\");}\n", event, fsmClassName, event);
+    output += "}\n";
+  }
+
+  public void visit(SPNode.StateClassNode stateClassNode) {
+    output += String.format("private static final class %s implements %s {\n", stateClassNode.className, stateInterfaceName);
+    output += String.format("static final %s INSTANCE = new %s();\n", stateInterfaceName, stateClassNode.className);
+    output += String.format("public String name() {return \"%s\";}\n", stateClassNode.stateName);
+    stateClassNode.generateEventMethods(this);
+    output += "}\n";
+  }
+
+  public void visit(SPNode.EventMethodNode eventMethodNode) {
+    output += String.format("public void %s(%s fsm) {\n", eventMethodNode.event, fsmClassName);
+    output += String.format("fsm.state = %s.INSTANCE;\n", eventMethodNode.nextStateClass);
+    for (String action : eventMethodNode.actions)
+      output += String.format("fsm.%s();\n", action);
+    output += "}\n";
+  }
+
+  public String getOutput() {
+    return output;
+  }
+}
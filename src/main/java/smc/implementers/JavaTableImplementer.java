@@ -0,0 +1,163 @@
+package smc.implementers;
+
+import smc.DenseStateMachine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Writes an abstract class with the same public event methods and abstract
+// actions as JavaNestedSwitchCaseImplementer, but driven by tables.  An event
+// costs two array loads, the next state and the action sequence of the cell
+// state*EVENTS+event, and one switch on the action sequence, however large
+// the machine.
+//
+// The tables are decoded from string constants when the class is loaded,
+// one char per entry, because an array initializer costs several bytes of
+// static initializer per element and a large machine would not fit in one
+// method.  Each constant is kept well below the class file limit of 64KB.
+// The action sequence switch is split into groups for the same reason.
+
+public class JavaTableImplementer {
+  public static final int MAX_TABLE_VALUE = Character.MAX_VALUE - 1;
+  static final int CHUNK_LENGTH = 16 * 1024;
+  static final int SEQUENCE_GROUP = 1024;
+
+  private final StringBuilder output = new StringBuilder();
+  private String javaPackage = null;
+
+  public JavaTableImplementer(Map<String, String> flags) {
+    if (flags.containsKey("package"))
+      javaPackage = flags.get("package");
+  }
+
+  public static boolean fits(DenseStateMachine sm) {
+    return sm.states.size() <= MAX_TABLE_VALUE && sm.actionSequences.size() <= MAX_TABLE_VALUE;
+  }
+
+  public void implement(DenseStateMachine sm) {
+    if (javaPackage != null)
+      output.append("package ").append(javaPackage).append(";\n");
+    if (sm.actionsClass == null)
+      output.append(String.format("public abstract class %s {\n", sm.fsm));
+    else
+      output.append(String.format("public abstract class %s implements %s {\n", sm.fsm, sm.actionsClass));
+
+    output.append("public abstract void unhandledTransition(String state, String event);\n");
+    addTables(sm);
+    output.append(String.format("private int state = %d;\n", sm.initialState));
+    for (int event = 0; event < sm.events.size(); event++)
+      output.append(String.format("public void %s() {handleEvent(%d);}\n", sm.events.get(event), event));
+    addHandleEvent();
+    addActionSequences(sm);
+    addDecoders();
+    if (sm.actionsClass == null)
+      for (String action : sm.actions)
+        output.append(String.format("protected abstract void %s();\n", action));
+    output.append("}\n");
+  }
+
+  private void addTables(DenseStateMachine sm) {
+    int cells = sm.cellCount();
+    StringBuilder nextStates = new StringBuilder(cells);
+    StringBuilder actionSequences = new StringBuilder(cells);
+    for (int state = 0; state < sm.states.size(); state++)
+      for (int event = 0; event < sm.events.size(); event++) {
+        nextStates.append((char) (sm.nextState(state, event) + 1));
+        actionSequences.append((char) (sm.actionSequence(state, event) + 1));
+      }
+
+    output.append(String.format("private static final int EVENTS = %d;\n", sm.events.size()));
+    output.append(String.format("private static final String[] STATE_NAMES = names(%s);\n", literals(String.join(" ", sm.states))));
+    output.append(String.format("private static final String[] EVENT_NAMES = names(%s);\n", literals(String.join(" ", sm.events))));
+    output.append(String.format("private static final int[] NEXT_STATE = table(%s);\n", literals(nextStates.toString())));
+    output.append(String.format("private static final int[] ACTION_SEQUENCE = table(%s);\n", literals(actionSequences.toString())));
+  }
+
+  private void addHandleEvent() {
+    output.append("""
+      private void handleEvent(int event) {
+      int cell = state * EVENTS + event;
+      int nextState = NEXT_STATE[cell];
+      if (nextState < 0) {
+      unhandledTransition(STATE_NAMES[state], EVENT_NAMES[event]);
+      return;
+      }
+      state = nextState;
+      runActionSequence(ACTION_SEQUENCE[cell]);
+      }
+      """);
+  }
+
+  // Sequence 0 is empty, and falls through every switch.
+  private void addActionSequences(DenseStateMachine sm) {
+    int sequences = sm.actionSequences.size();
+    if (sequences <= SEQUENCE_GROUP) {
+      addActionSequenceSwitch(sm, "runActionSequence", 0, sequences);
+      return;
+    }
+    output.append("private void runActionSequence(int sequence) {\n");
+    output.append(String.format("switch(sequence / %d) {\n", SEQUENCE_GROUP));
+    for (int group = 0; group * SEQUENCE_GROUP < sequences; group++)
+      output.append(String.format("case %d: runActionSequences%d(sequence); break;\n", group, group));
+    output.append("}\n}\n");
+    for (int group = 0; group * SEQUENCE_GROUP < sequences; group++) {
+      int first = group * SEQUENCE_GROUP;
+      addActionSequenceSwitch(sm, "runActionSequences" + group, first, Math.min(first + SEQUENCE_GROUP, sequences));
+    }
+  }
+
+  private void addActionSequenceSwitch(DenseStateMachine sm, String methodName, int first, int end) {
+    output.append(String.format("private void %s(int sequence) {\n", methodName));
+    output.append("switch(sequence) {\n");
+    for (int sequence = Math.max(first, 1); sequence < end; sequence++) {
+      output.append(String.format("case %d:\n", sequence));
+      for (int action : sm.actionSequences.get(sequence))
+        output.append(String.format("%s();\n", sm.actions.get(action)));
+      output.append("break;\n");
+    }
+    output.append("}\n}\n");
+  }
+
+  private void addDecoders() {
+    output.append("""
+      private static String[] names(String... chunks) {
+      return String.join("", chunks).split(" ");
+      }
+      private static int[] table(String... chunks) {
+      String entries = String.join("", chunks);
+      int[] table = new int[entries.length()];
+      for (int i = 0; i < table.length; i++)
+      table[i] = entries.charAt(i) - 1;
+      return table;
+      }
+      """);
+  }
+
+  static String literals(String value) {
+    List<String> literals = new ArrayList<>();
+    for (int start = 0; start < value.length(); start += CHUNK_LENGTH)
+      literals.add(literal(value.substring(start, Math.min(start + CHUNK_LENGTH, value.length()))));
+    return literals.isEmpty() ? "\"\"" : String.join(",\n", literals);
+  }
+
+  // Unicode escapes are translated before the source is tokenized, so they
+  // cannot stand for quotes, backslashes or line ends; octal escapes can.
+  private static String literal(String value) {
+    StringBuilder literal = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= ' ' && c < 0x7f && c != '"' && c != '\\')
+        literal.append(c);
+      else if (c < 0x80)
+        literal.append(String.format("\\%03o", (int) c));
+      else
+        literal.append(String.format("\\u%04x", (int) c));
+    }
+    return literal.append('"').toString();
+  }
+
+  public String getOutput() {
+    return output.toString();
+  }
+}
@@ -13,7 +13,12 @@ public class Lexer {
   }
 
   public void lex(String s) {
-    lineNumber = 1;
+    lex(s, 1);
+  }
+
+  // For lexing a piece of a larger source; line numbers start at firstLine.
+  public void lex(String s, int firstLine) {
+    lineNumber = firstLine;
     String[] lines = s.split("\n");
     for (String line : lines) {
       lexLine(line);
@@ -0,0 +1,112 @@
+package smc.lsp;
+
+import smc.parser.FsmSyntax;
+import smc.parser.SourceBlocks;
+import smc.semanticAnalyzer.SemanticAnalyzer;
+import smc.semanticAnalyzer.SemanticStateMachine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// An open .sm document.  After each edit the text is split into blocks again,
+// but only blocks whose text changed are lexed and parsed; the others are
+// reused, moved to their new lines.  The merged syntax is then analyzed as a
+// whole, which costs little next to lexing and parsing.
+
+class Document {
+  private String text;
+  private Map<String, FsmSyntax> fragments = new HashMap<>();
+  private FsmSyntax syntax;
+  private SemanticStateMachine semanticStateMachine;
+  private int parsedBlockCount;
+
+  Document(String text) {
+    this.text = text;
+    analyze();
+  }
+
+  // Edits are applied without analyzing the result; several edits may
+  // arrive in one change notification.
+  void setText(String text) {
+    this.text = text;
+  }
+
+  // Applies an edit given as an LSP range.
+  void replace(int startLine, int startCharacter, int endLine, int endCharacter, String newText) {
+    text = text.substring(0, offset(startLine, startCharacter)) + newText + text.substring(offset(endLine, endCharacter));
+  }
+
+  private int offset(int line, int character) {
+    int offset = 0;
+    for (int i = 0; i < line; i++) {
+      int newline = text.indexOf('\n', offset);
+      if (newline < 0)
+        return text.length();
+      offset = newline + 1;
+    }
+    return Math.min(offset + character, text.length());
+  }
+
+  void analyze() {
+    Map<String, FsmSyntax> reusableFragments = fragments;
+    fragments = new HashMap<>();
+    parsedBlockCount = 0;
+    List<FsmSyntax> blockSyntaxes = new ArrayList<>();
+    for (SourceBlocks.Block block : SourceBlocks.split(text)) {
+      String key = (block.first ? "F" : "-") + (block.last ? "L" : "-") + block.text;
+      FsmSyntax fragment = reusableFragments.get(key);
+      if (fragment == null) {
+        fragment = SourceBlocks.parse(block.atLine(1));
+        parsedBlockCount++;
+      }
+      fragments.put(key, fragment);
+      blockSyntaxes.add(SourceBlocks.shift(fragment, block.firstLine - 1));
+    }
+    syntax = SourceBlocks.merge(blockSyntaxes);
+    semanticStateMachine = syntax.errors.isEmpty() ? new SemanticAnalyzer().analyze(syntax) : null;
+  }
+
+  String getText() {
+    return text;
+  }
+
+  FsmSyntax getSyntax() {
+    return syntax;
+  }
+
+  // Null while there are syntax errors, since the analyzer needs a complete
+  // parse.
+  SemanticStateMachine getSemanticStateMachine() {
+    return semanticStateMachine;
+  }
+
+  int getParsedBlockCount() {
+    return parsedBlockCount;
+  }
+
+  FsmSyntax.StateSpec findDefinition(String stateName) {
+    for (FsmSyntax.Transition transition : syntax.logic)
+      if (transition.state.name.equals(stateName))
+        return transition.state;
+    return null;
+  }
+
+  String wordAt(int line, int character) {
+    int lineStart = offset(line, 0);
+    int lineEnd = text.indexOf('\n', lineStart);
+    String lineText = text.substring(lineStart, lineEnd < 0 ? text.length() : lineEnd);
+    int start = Math.min(character, lineText.length());
+    int end = start;
+    while (start > 0 && isWordCharacter(lineText.charAt(start - 1)))
+      start--;
+    while (end < lineText.length() && isWordCharacter(lineText.charAt(end)))
+      end++;
+    return lineText.substring(start, end);
+  }
+
+  private static boolean isWordCharacter(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+}
@@ -0,0 +1,206 @@
+package smc.lsp;
+
+import java.util.*;
+
+// The small subset of JSON the language server needs.  Objects are read as
+// LinkedHashMaps, arrays as Lists, numbers as Longs or Doubles, and the rest
+// as Strings, Booleans and null.  Writing accepts the same types, plus any
+// other Number.
+
+public class Json {
+  private final String text;
+  private int position;
+
+  private Json(String text) {
+    this.text = text;
+  }
+
+  public static Object parse(String text) {
+    Json json = new Json(text);
+    Object value = json.readValue();
+    json.skipWhiteSpace();
+    if (json.position != text.length())
+      throw json.error("Unexpected text after value");
+    return value;
+  }
+
+  private Object readValue() {
+    skipWhiteSpace();
+    if (position >= text.length())
+      throw error("Unexpected end of input");
+    char c = text.charAt(position);
+    switch (c) {
+      case '{': return readObject();
+      case '[': return readArray();
+      case '"': return readString();
+      case 't': return readLiteral("true", Boolean.TRUE);
+      case 'f': return readLiteral("false", Boolean.FALSE);
+      case 'n': return readLiteral("null", null);
+      default: return readNumber();
+    }
+  }
+
+  private Map<String, Object> readObject() {
+    Map<String, Object> object = new LinkedHashMap<>();
+    position++;
+    skipWhiteSpace();
+    if (peek() == '}') {
+      position++;
+      return object;
+    }
+    do {
+      skipWhiteSpace();
+      String name = readString();
+      skipWhiteSpace();
+      expect(':');
+      object.put(name, readValue());
+      skipWhiteSpace();
+    } while (accept(','));
+    expect('}');
+    return object;
+  }
+
+  private List<Object> readArray() {
+    List<Object> array = new ArrayList<>();
+    position++;
+    skipWhiteSpace();
+    if (peek() == ']') {
+      position++;
+      return array;
+    }
+    do {
+      array.add(readValue());
+      skipWhiteSpace();
+    } while (accept(','));
+    expect(']');
+    return array;
+  }
+
+  private String readString() {
+    expect('"');
+    StringBuilder string = new StringBuilder();
+    while (true) {
+      if (position >= text.length())
+        throw error("Unterminated string");
+      char c = text.charAt(position++);
+      if (c == '"')
+        return string.toString();
+      if (c != '\\')
+        string.append(c);
+      else {
+        char escaped = text.charAt(position++);
+        switch (escaped) {
+          case 'b' -> string.append('\b');
+          case 'f' -> string.append('\f');
+          case 'n' -> string.append('\n');
+          case 'r' -> string.append('\r');
+          case 't' -> string.append('\t');
+          case 'u' -> {
+            string.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+            position += 4;
+          }
+          default -> string.append(escaped);
+        }
+      }
+    }
+  }
+
+  private Object readLiteral(String literal, Object value) {
+    if (!text.startsWith(literal, position))
+      throw error("Unexpected character");
+    position += literal.length();
+    return value;
+  }
+
+  private Number readNumber() {
+    int start = position;
+    while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0)
+      position++;
+    String number = text.substring(start, position);
+    if (number.isEmpty())
+      throw error("Unexpected character");
+    if (number.contains(".") || number.contains("e") || number.contains("E"))
+      return Double.parseDouble(number);
+    return Long.parseLong(number);
+  }
+
+  private void skipWhiteSpace() {
+    while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+      position++;
+  }
+
+  private char peek() {
+    return position < text.length() ? text.charAt(position) : 0;
+  }
+
+  private boolean accept(char c) {
+    if (peek() != c)
+      return false;
+    position++;
+    return true;
+  }
+
+  private void expect(char c) {
+    if (!accept(c))
+      throw error("Expected '" + c + "'");
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(String.format("%s at position %d of JSON text.", message, position));
+  }
+
+  public static String write(Object value) {
+    StringBuilder json = new StringBuilder();
+    write(json, value);
+    return json.toString();
+  }
+
+  private static void write(StringBuilder json, Object value) {
+    if (value == null || value instanceof Boolean || value instanceof Number)
+      json.append(value);
+    else if (value instanceof String)
+      writeString(json, (String) value);
+    else if (value instanceof Map<?, ?> map) {
+      json.append('{');
+      boolean first = true;
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        json.append(first ? "" : ",");
+        writeString(json, entry.getKey().toString());
+        json.append(':');
+        write(json, entry.getValue());
+        first = false;
+      }
+      json.append('}');
+    } else if (value instanceof Collection<?> collection) {
+      json.append('[');
+      boolean first = true;
+      for (Object element : collection) {
+        json.append(first ? "" : ",");
+        write(json, element);
+        first = false;
+      }
+      json.append(']');
+    } else
+      throw new IllegalArgumentException("Cannot write " + value.getClass().getName() + " as JSON.");
+  }
+
+  private static void writeString(StringBuilder json, String string) {
+    json.append('"');
+    for (char c : string.toCharArray()) {
+      switch (c) {
+        case '"' -> json.append("\\\"");
+        case '\\' -> json.append("\\\\");
+        case '\n' -> json.append("\\n");
+        case '\r' -> json.append("\\r");
+        case '\t' -> json.append("\\t");
+        default -> {
+          if (c < 0x20)
+            json.append(String.format("\\u%04x", (int) c));
+          else
+            json.append(c);
+        }
+      }
+    }
+    json.append('"');
+  }
+}
@@ -0,0 +1,261 @@
+package smc.lsp;
+
+import smc.parser.FsmSyntax;
+import smc.semanticAnalyzer.SemanticStateMachine;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// A Language Server Protocol server for .sm files, speaking JSON-RPC over
+// stdin and stdout.  It publishes syntax errors and semantic errors and
+// warnings as the user types, and resolves state names to the place where
+// the state is defined.  A message that cannot be parsed or handled is
+// answered with an error if it is a request, and logged if it is a
+// notification; either way the server goes on to the next message.
+//
+// Usage: java -cp smc.jar smc.lsp.LanguageServer
+
+public class LanguageServer {
+  private static final int SYNC_INCREMENTAL = 2;
+  private static final int SEVERITY_ERROR = 1;
+  private static final int SEVERITY_WARNING = 2;
+  private static final int PARSE_ERROR = -32700;
+  private static final int METHOD_NOT_FOUND = -32601;
+  private static final int INVALID_PARAMS = -32602;
+  private static final int MESSAGE_TYPE_ERROR = 1;
+  private static final Pattern contentLengthHeader = Pattern.compile("(?i)content-length:\\s*(\\S*)");
+  private static final Pattern analysisExtra = Pattern.compile("^Semantic \\w+: \\w+\\((.*)\\)$");
+
+  private final InputStream in;
+  private final OutputStream out;
+  private final Map<String, Document> documents = new HashMap<>();
+  private boolean exited = false;
+
+  public LanguageServer(InputStream in, OutputStream out) {
+    this.in = new BufferedInputStream(in);
+    this.out = out;
+  }
+
+  public static void main(String[] args) throws IOException {
+    new LanguageServer(System.in, System.out).serve();
+  }
+
+  public void serve() throws IOException {
+    String message;
+    while (!exited && (message = readMessage()) != null)
+      handleSafely(message);
+  }
+
+  private void handleSafely(String message) throws IOException {
+    Map<String, Object> parsed;
+    try {
+      parsed = asMap(Json.parse(message));
+    } catch (IllegalArgumentException e) {
+      respondWithError(null, PARSE_ERROR, e.getMessage());
+      return;
+    }
+    try {
+      handle(parsed);
+    } catch (RuntimeException e) {
+      String error = String.format("Invalid params for %s: %s", parsed.get("method"), e);
+      if (parsed.get("id") != null)
+        respondWithError(parsed.get("id"), INVALID_PARAMS, error);
+      else
+        notify("window/logMessage", Map.of("type", MESSAGE_TYPE_ERROR, "message", error));
+    }
+  }
+
+  // Returns null at the end of the input.  Headers without a usable
+  // Content-Length are answered with a parse error and skipped.  The body
+  // that follows them, having no line end of its own, is read as part of the
+  // next header line, so the header is looked for anywhere in a line.
+  private String readMessage() throws IOException {
+    while (true) {
+      int contentLength = -1;
+      String header;
+      while ((header = readHeaderLine()) != null && !header.isEmpty()) {
+        Matcher matcher = contentLengthHeader.matcher(header);
+        if (matcher.find())
+          contentLength = matcher.group(1).matches("\\d{1,9}") ? Integer.parseInt(matcher.group(1)) : -1;
+      }
+      if (header == null)
+        return null;
+      if (contentLength >= 0)
+        return new String(in.readNBytes(contentLength), StandardCharsets.UTF_8);
+      respondWithError(null, PARSE_ERROR, "Missing or malformed Content-Length header");
+    }
+  }
+
+  private String readHeaderLine() throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c < 0)
+        return null;
+      if (c != '\r')
+        line.append((char) c);
+    }
+    return line.toString();
+  }
+
+  private void handle(Map<String, Object> message) throws IOException {
+    String method = (String) message.get("method");
+    Object id = message.get("id");
+    Map<String, Object> params = asMap(message.get("params"));
+    switch (method == null ? "" : method) {
+      case "initialize" -> respond(id, initializeResult());
+      case "shutdown" -> respond(id, null);
+      case "exit" -> exited = true;
+      case "textDocument/didOpen" -> didOpen(params);
+      case "textDocument/didChange" -> didChange(params);
+      case "textDocument/didClose" -> didClose(params);
+      case "textDocument/definition" -> respond(id, definition(params));
+      default -> {
+        if (id != null && method != null)
+          respondWithError(id, METHOD_NOT_FOUND, "Method not found: " + method);
+      }
+    }
+  }
+
+  private Map<String, Object> initializeResult() {
+    Map<String, Object> capabilities = new LinkedHashMap<>();
+    capabilities.put("textDocumentSync", SYNC_INCREMENTAL);
+    capabilities.put("definitionProvider", true);
+    return Map.of("capabilities", capabilities, "serverInfo", Map.of("name", "StateLang"));
+  }
+
+  private void didOpen(Map<String, Object> params) throws IOException {
+    Map<String, Object> textDocument = asMap(params.get("textDocument"));
+    String uri = (String) textDocument.get("uri");
+    documents.put(uri, new Document((String) textDocument.get("text")));
+    publishDiagnostics(uri);
+  }
+
+  private void didChange(Map<String, Object> params) throws IOException {
+    String uri = (String) asMap(params.get("textDocument")).get("uri");
+    Document document = documents.get(uri);
+    if (document == null)
+      return;
+    for (Object change : (List<?>) params.get("contentChanges")) {
+      Map<String, Object> contentChange = asMap(change);
+      String text = (String) contentChange.get("text");
+      Map<String, Object> range = asMap(contentChange.get("range"));
+      if (range.isEmpty())
+        document.setText(text);
+      else {
+        Map<String, Object> start = asMap(range.get("start"));
+        Map<String, Object> end = asMap(range.get("end"));
+        document.replace(number(start, "line"), number(start, "character"), number(end, "line"), number(end, "character"), text);
+      }
+    }
+    document.analyze();
+    publishDiagnostics(uri);
+  }
+
+  private void didClose(Map<String, Object> params) throws IOException {
+    String uri = (String) asMap(params.get("textDocument")).get("uri");
+    documents.remove(uri);
+    notify("textDocument/publishDiagnostics", Map.of("uri", uri, "diagnostics", List.of()));
+  }
+
+  private Object definition(Map<String, Object> params) {
+    String uri = (String) asMap(params.get("textDocument")).get("uri");
+    Document document = documents.get(uri);
+    if (document == null)
+      return null;
+    Map<String, Object> position = asMap(params.get("position"));
+    FsmSyntax.StateSpec state = document.findDefinition(document.wordAt(number(position, "line"), number(position, "character")));
+    if (state == null)
+      return null;
+    return Map.of("uri", uri, "range", range(state.lineNumber - 1, state.position, state.position + state.name.length()));
+  }
+
+  private void publishDiagnostics(String uri) throws IOException {
+    Document document = documents.get(uri);
+    List<Object> diagnostics = new ArrayList<>();
+    for (FsmSyntax.SyntaxError error : document.getSyntax().errors)
+      diagnostics.add(diagnostic(Math.max(error.lineNumber - 1, 0), Math.max(error.position, 0), SEVERITY_ERROR, error.toString()));
+
+    SemanticStateMachine sm = document.getSemanticStateMachine();
+    if (sm != null) {
+      for (SemanticStateMachine.AnalysisError error : sm.errors)
+        diagnostics.add(analysisDiagnostic(document, error.toString(), SEVERITY_ERROR));
+      for (SemanticStateMachine.AnalysisWarning warning : sm.warnings)
+        diagnostics.add(analysisDiagnostic(document, warning.toString(), SEVERITY_WARNING));
+    }
+    notify("textDocument/publishDiagnostics", Map.of("uri", uri, "diagnostics", diagnostics));
+  }
+
+  // Analysis errors and warnings have no positions, so they are reported at
+  // the definition of the first state they mention, or else at the top of the
+  // document.
+  private Map<String, Object> analysisDiagnostic(Document document, String message, int severity) {
+    Matcher matcher = analysisExtra.matcher(message);
+    if (matcher.matches()) {
+      for (String word : matcher.group(1).split("\\W+")) {
+        FsmSyntax.StateSpec state = document.findDefinition(word);
+        if (state != null)
+          return diagnostic(state.lineNumber - 1, state.position, severity, message);
+      }
+    }
+    return diagnostic(0, 0, severity, message);
+  }
+
+  private Map<String, Object> diagnostic(int line, int character, int severity, String message) {
+    Map<String, Object> diagnostic = new LinkedHashMap<>();
+    diagnostic.put("range", range(line, character, character + 1));
+    diagnostic.put("severity", severity);
+    diagnostic.put("source", "statelang");
+    diagnostic.put("message", message);
+    return diagnostic;
+  }
+
+  private Map<String, Object> range(int line, int startCharacter, int endCharacter) {
+    return Map.of(
+      "start", Map.of("line", line, "character", startCharacter),
+      "end", Map.of("line", line, "character", endCharacter));
+  }
+
+  private void respond(Object id, Object result) throws IOException {
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("jsonrpc", "2.0");
+    response.put("id", id);
+    response.put("result", result);
+    send(response);
+  }
+
+  private void respondWithError(Object id, int code, String message) throws IOException {
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("jsonrpc", "2.0");
+    response.put("id", id);
+    response.put("error", Map.of("code", code, "message", message));
+    send(response);
+  }
+
+  private void notify(String method, Object params) throws IOException {
+    Map<String, Object> notification = new LinkedHashMap<>();
+    notification.put("jsonrpc", "2.0");
+    notification.put("method", method);
+    notification.put("params", params);
+    send(notification);
+  }
+
+  private void send(Map<String, Object> message) throws IOException {
+    byte[] content = Json.write(message).getBytes(StandardCharsets.UTF_8);
+    out.write(String.format("Content-Length: %d\r\n\r\n", content.length).getBytes(StandardCharsets.US_ASCII));
+    out.write(content);
+    out.flush();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> asMap(Object value) {
+    return value instanceof Map ? (Map<String, Object>) value : Map.of();
+  }
+
+  private static int number(Map<String, Object> object, String name) {
+    return ((Number) object.get(name)).intValue();
+  }
+}
@@ -16,12 +16,28 @@ public class Optimizer {
   public OptimizedStateMachine optimize(SemanticStateMachine ast) {
     this.semanticStateMachine = ast;
     optimizedStateMachine = new OptimizedStateMachine();
+    if (!ast.regions.isEmpty())
+      return optimizeRegions(ast);
     addHeader(ast);
     addLists();
     addTransitions();
     return optimizedStateMachine;
   }
 
+  // Every region is optimized on its own, and the regions are then combined
+  // into one product machine, unless it would be too large.
+  private OptimizedStateMachine optimizeRegions(SemanticStateMachine ast) {
+    optimizedStateMachine.header = new Header();
+    optimizedStateMachine.header.fsm = ast.fsmName;
+    optimizedStateMachine.header.actions = ast.actionClass;
+    addEvents();
+    addActions();
+    for (SemanticStateMachine region : ast.regions)
+      optimizedStateMachine.regions.add(new Optimizer().optimize(region));
+    new RegionProduct(optimizedStateMachine).build();
+    return optimizedStateMachine;
+  }
+
   private void addTransitions() {
     for (SemanticState s : semanticStateMachine.states.values())
       if (!s.abstractState)
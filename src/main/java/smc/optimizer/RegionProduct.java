@@ -0,0 +1,121 @@
+package smc.optimizer;
+
+import smc.OptimizedStateMachine;
+
+import java.util.*;
+
+import static smc.OptimizedStateMachine.*;
+
+// Builds the product of the regions of a machine: one state for each
+// combination of region states that can be reached from the initial states,
+// found breadth first.  A product state is named by joining the names of its
+// region states with underscores, followed by a number when that name is
+// already taken, as a_b with c and a with b_c both join to a_b_c.
+//
+// An event moves every region that handles it in its current state, and the
+// actions of those regions run in region order.  The event is unhandled only
+// if no region handles it.
+
+public class RegionProduct {
+  public static final int MAX_STATES = Integer.getInteger("smc.maxProductStates", 4096);
+  private final OptimizedStateMachine sm;
+  private final List<Map<String, Map<String, SubTransition>>> regionTables = new ArrayList<>();
+  private final Map<List<String>, String> productStates = new LinkedHashMap<>();
+  private final Set<String> names = new HashSet<>();
+  private final Deque<List<String>> pending = new ArrayDeque<>();
+
+  RegionProduct(OptimizedStateMachine sm) {
+    this.sm = sm;
+    for (OptimizedStateMachine region : sm.regions)
+      regionTables.add(makeTable(region));
+  }
+
+  private static Map<String, Map<String, SubTransition>> makeTable(OptimizedStateMachine region) {
+    Map<String, Map<String, SubTransition>> table = new HashMap<>();
+    for (Transition t : region.transitions) {
+      Map<String, SubTransition> events = new HashMap<>();
+      for (SubTransition st : t.subTransitions)
+        events.put(st.event, st);
+      table.put(t.currentState, events);
+    }
+    return table;
+  }
+
+  // The number of states the product could have if every combination of
+  // region states were reachable.
+  public static long possibleStates(OptimizedStateMachine sm) {
+    long possible = 1;
+    for (OptimizedStateMachine region : sm.regions)
+      possible *= region.states.size();
+    return possible;
+  }
+
+  void build() {
+    List<String> initial = new ArrayList<>();
+    for (OptimizedStateMachine region : sm.regions)
+      initial.add(region.header.initial);
+    sm.header.initial = reach(initial);
+
+    while (!pending.isEmpty()) {
+      if (productStates.size() > MAX_STATES) {
+        omit();
+        return;
+      }
+      addTransition(pending.poll());
+    }
+    sm.states.addAll(productStates.values());
+  }
+
+  private void addTransition(List<String> regionStates) {
+    Transition transition = new Transition();
+    transition.currentState = productStates.get(regionStates);
+    for (String event : sm.events) {
+      SubTransition subTransition = productSubTransition(regionStates, event);
+      if (subTransition != null)
+        transition.subTransitions.add(subTransition);
+    }
+    sm.transitions.add(transition);
+  }
+
+  private SubTransition productSubTransition(List<String> regionStates, String event) {
+    SubTransition product = null;
+    List<String> nextStates = new ArrayList<>(regionStates);
+    for (int region = 0; region < regionTables.size(); region++) {
+      SubTransition st = regionTables.get(region).get(regionStates.get(region)).get(event);
+      if (st != null) {
+        if (product == null)
+          product = new SubTransition();
+        nextStates.set(region, st.nextState);
+        product.actions.addAll(st.actions);
+      }
+    }
+    if (product != null) {
+      product.event = event;
+      product.nextState = reach(nextStates);
+    }
+    return product;
+  }
+
+  private String reach(List<String> regionStates) {
+    String name = productStates.get(regionStates);
+    if (name == null) {
+      name = uniqueName(String.join("_", regionStates));
+      productStates.put(regionStates, name);
+      pending.add(regionStates);
+    }
+    return name;
+  }
+
+  private String uniqueName(String joined) {
+    String name = joined;
+    for (int suffix = 2; !names.add(name); suffix++)
+      name = joined + "_" + suffix;
+    return name;
+  }
+
+  private void omit() {
+    sm.header.initial = null;
+    sm.transitions.clear();
+    sm.productOmitted = true;
+  }
+}
@@ -23,5 +23,5 @@ public interface Builder {
   void transitionGroupError(ParserState state, ParserEvent event, int line, int pos);
   void endError(ParserState state, ParserEvent event, int line, int pos);
   void syntaxError(int line, int pos);
-  void setName(String name);
+  void setName(String name, int line, int pos);
 }
@@ -6,6 +6,8 @@ import java.util.Objects;
 
 public class FsmSyntax {
   public List<Header> headers = new ArrayList<>();
+  public List<Include> includes = new ArrayList<>();
+  public List<Region> regions = new ArrayList<>();
   public List<Transition> logic = new ArrayList<>();
   public List<SyntaxError> errors = new ArrayList<>();
   public boolean done = false;
@@ -39,7 +41,33 @@ public class FsmSyntax {
 
   }
 
+  public static class Include {
+    public String name;
+    public int lineNumber;
+    public int position;
+
+    public Include(String name, int lineNumber, int position) {
+      this.name = name;
+      this.lineNumber = lineNumber;
+      this.position = position;
+    }
+  }
+
+  public static class Region {
+    public String name;
+    public String initial;
+    public int lineNumber;
+    public int position;
+
+    public Region(String name, int lineNumber, int position) {
+      this.name = name;
+      this.lineNumber = lineNumber;
+      this.position = position;
+    }
+  }
+
   public static class Transition {
+    public String region;
     public StateSpec state;
     public List<SubTransition> subTransitions = new ArrayList<>();
   }
@@ -50,6 +78,8 @@ public class FsmSyntax {
     public List<String> entryActions = new ArrayList<>();
     public List<String> exitActions = new ArrayList<>();
     public boolean abstractState;
+    public int lineNumber;
+    public int position;
   }
 
   public static class SubTransition {
@@ -79,7 +109,7 @@ public class FsmSyntax {
       return String.format("Syntax Error Line: %d, Position: %d.  (%s) %s", lineNumber, position, type.name(), msg);
     }
 
-    public enum Type {HEADER, STATE, TRANSITION, TRANSITION_GROUP, END, SYNTAX}
+    public enum Type {HEADER, INCLUDE, STATE, TRANSITION, TRANSITION_GROUP, END, SYNTAX}
   }
 
   public String toString() {
@@ -94,6 +124,10 @@ public class FsmSyntax {
     String formattedHeaders = "";
     for (Header header : headers)
       formattedHeaders += formatHeader(header);
+    for (Include include : includes)
+      formattedHeaders += String.format("Include:%s\n", include.name);
+    for (Region region : regions)
+      formattedHeaders += String.format("Region:%s Initial:%s\n", region.name, region.initial);
     return formattedHeaders;
   }
 
@@ -118,10 +152,14 @@ public class FsmSyntax {
   private String formatTransition(Transition transition) {
     return
       String.format("  %s %s\n",
-        formatStateName(transition.state),
+        formatRegion(transition) + formatStateName(transition.state),
         formatSubTransitions(transition));
   }
 
+  private String formatRegion(Transition transition) {
+    return transition.region == null ? "" : transition.region + ".";
+  }
+
   private String formatStateName(StateSpec stateSpec) {
     StringBuilder stateName = new StringBuilder(String.format(stateSpec.abstractState ? "(%s)" : "%s", stateSpec.name));
     for (String superState : stateSpec.superStates)
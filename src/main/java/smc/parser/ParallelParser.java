@@ -0,0 +1,43 @@
+package smc.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Parses a large source on several threads.  The source is split into
+// SourceBlocks, consecutive blocks are gathered into chunks of about the same
+// length, each chunk is lexed and parsed with its own Lexer, Parser and
+// SyntaxBuilder, and the pieces are merged in source order.  Line numbers in
+// errors and state specs are those of the whole source.
+
+public class ParallelParser {
+  private static final int MINIMUM_CHUNK_LENGTH = 16 * 1024;
+  private static final int CHUNKS_PER_PROCESSOR = 4;
+
+  public static FsmSyntax parse(String source) {
+    int chunks = Runtime.getRuntime().availableProcessors() * CHUNKS_PER_PROCESSOR;
+    return parse(source, Math.max(MINIMUM_CHUNK_LENGTH, source.length() / chunks));
+  }
+
+  public static FsmSyntax parse(String source, int chunkLength) {
+    List<SourceBlocks.Block> chunks = chunks(SourceBlocks.split(source), chunkLength);
+    return SourceBlocks.merge(chunks.parallelStream().map(SourceBlocks::parse).toList());
+  }
+
+  static List<SourceBlocks.Block> chunks(List<SourceBlocks.Block> blocks, int chunkLength) {
+    List<SourceBlocks.Block> chunks = new ArrayList<>();
+    SourceBlocks.Block chunkStart = null;
+    StringBuilder chunkText = new StringBuilder();
+    for (SourceBlocks.Block block : blocks) {
+      if (chunkStart == null) {
+        chunkStart = block;
+        chunkText.setLength(0);
+      }
+      chunkText.append(block.text);
+      if (chunkText.length() >= chunkLength || block.last) {
+        chunks.add(new SourceBlocks.Block(chunkText.toString(), chunkStart.firstLine, chunkStart.first, block.last));
+        chunkStart = null;
+      }
+    }
+    return chunks;
+  }
+}
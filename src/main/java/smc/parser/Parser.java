@@ -1,8 +1,9 @@
 package smc.parser;
 
 /*
-<FSM> ::= <header>* <logic>
-<header> ::= "Actions:" <name> | "FSM:" <name> | "Initial:" <name>
+<FSM> ::= <header>* <logic> <region>*
+<header> ::= "Actions:" <name> | "FSM:" <name> | "Initial:" <name> | "Include:" <name> | "Region:" <name>
+<region> ::= <header>+ <logic>
 
 <logic> ::= "{" <transition>* "}"
 
@@ -72,7 +73,7 @@ public class Parser implements TokenCollector {
   }
 
   public void name(String name, int line, int pos) {
-    builder.setName(name);
+    builder.setName(name, line, pos);
     handleEvent(NAME, line, pos);
   }
 
@@ -141,6 +142,7 @@ public class Parser implements TokenCollector {
           new Transition(GROUP_ACTION_GROUP, CLOSED_BRACE, SUBTRANSITION_GROUP, Builder::transitionNullAction),
           new Transition(GROUP_ACTION_GROUP_NAME, NAME, GROUP_ACTION_GROUP_NAME, Builder::addAction),
           new Transition(GROUP_ACTION_GROUP_NAME, CLOSED_BRACE, SUBTRANSITION_GROUP, Builder::transitionWithActions),
+          new Transition(END, NAME, HEADER_COLON, Builder::newHeaderWithName),
           new Transition(END, EOF, END, null)
   };
 
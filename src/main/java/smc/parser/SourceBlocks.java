@@ -0,0 +1,175 @@
+package smc.parser;
+
+import smc.lexer.Lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static smc.parser.ParserEvent.EOF;
+
+// Splits a .sm source into blocks that can be lexed and parsed on their own,
+// and merges the parsed pieces back into one FsmSyntax.
+//
+// A block ends at the end of a line whose last token is a top-level '}' that
+// closes a transition: a subtransition group, or the action group of a single
+// transition.  Braces that close entry or exit action groups do not end a
+// transition, and neither does a '}' followed by more tokens on its line, so
+// every block but the first starts in the parser's STATE_SPEC state, at the
+// start of a line.  The first block holds the headers, and the last holds the
+// closing brace of the logic.
+
+public class SourceBlocks {
+  public static List<Block> split(String source) {
+    List<Block> blocks = new ArrayList<>();
+    int blockStart = 0;
+    int blockLine = 1;
+    int line = 1;
+    int depth = 0;
+    boolean modifierGroup = false;
+    char previousToken = 0;
+
+    for (int i = 0; i < source.length(); i++) {
+      char c = source.charAt(i);
+      if (c == '\n')
+        line++;
+      else if (isCommentAt(source, i))
+        i = endOfLine(source, i) - 1;
+      else if (!Character.isWhitespace(c)) {
+        if (c == '{') {
+          depth++;
+          if (depth == 2)
+            modifierGroup = previousToken == '<' || previousToken == '>';
+        } else if (c == '}') {
+          int end = endOfLine(source, i + 1);
+          if (depth == 2 && !modifierGroup && isBlank(source, i + 1, end) && end + 1 < source.length()) {
+            blocks.add(new Block(source.substring(blockStart, end + 1), blockLine, blocks.isEmpty(), false));
+            blockStart = end + 1;
+            blockLine = line + 1;
+          }
+          depth--;
+        }
+        previousToken = c;
+      }
+    }
+    blocks.add(new Block(source.substring(blockStart), blockLine, blocks.isEmpty(), true));
+    return blocks;
+  }
+
+  private static boolean isCommentAt(String source, int i) {
+    return source.startsWith("//", i);
+  }
+
+  private static int endOfLine(String source, int from) {
+    int end = source.indexOf('\n', from);
+    return end < 0 ? source.length() : end;
+  }
+
+  private static boolean isBlank(String source, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (isCommentAt(source, i))
+        return true;
+      if (!Character.isWhitespace(source.charAt(i)))
+        return false;
+    }
+    return true;
+  }
+
+  public static FsmSyntax parse(Block block) {
+    SyntaxBuilder builder = new SyntaxBuilder();
+    Parser parser = new Parser(builder);
+    if (!block.first)
+      parser.openBrace(block.firstLine, 0);
+    new Lexer(parser).lex(block.text, block.firstLine);
+    if (block.last)
+      parser.handleEvent(EOF, -1, -1);
+    return builder.getFsm();
+  }
+
+  // A fragment that starts inside a region does not see the Region header,
+  // so its first transitions are put in the region of the fragment before.
+  public static FsmSyntax merge(List<FsmSyntax> fragments) {
+    FsmSyntax fsm = new FsmSyntax();
+    String region = null;
+    for (FsmSyntax fragment : fragments) {
+      fsm.headers.addAll(fragment.headers);
+      fsm.includes.addAll(fragment.includes);
+      fsm.regions.addAll(fragment.regions);
+      for (FsmSyntax.Transition transition : fragment.logic) {
+        if (transition.region == null && region != null)
+          transition = inRegion(transition, region);
+        fsm.logic.add(transition);
+        region = transition.region;
+      }
+      if (!fragment.regions.isEmpty())
+        region = fragment.regions.get(fragment.regions.size() - 1).name;
+      fsm.errors.addAll(fragment.errors);
+      fsm.done = fragment.done;
+    }
+    return fsm;
+  }
+
+  // Moves a parsed fragment down by the given number of lines, without
+  // touching the original, so that fragments can be reused when the lines
+  // above them change.
+  public static FsmSyntax shift(FsmSyntax fragment, int lines) {
+    if (lines == 0)
+      return fragment;
+    FsmSyntax shifted = new FsmSyntax();
+    shifted.headers = fragment.headers;
+    shifted.includes = fragment.includes;
+    shifted.done = fragment.done;
+    for (FsmSyntax.Region region : fragment.regions) {
+      FsmSyntax.Region copy = new FsmSyntax.Region(region.name, region.lineNumber + lines, region.position);
+      copy.initial = region.initial;
+      shifted.regions.add(copy);
+    }
+    for (FsmSyntax.Transition transition : fragment.logic) {
+      FsmSyntax.Transition copy = new FsmSyntax.Transition();
+      copy.region = transition.region;
+      copy.state = shift(transition.state, lines);
+      copy.subTransitions = transition.subTransitions;
+      shifted.logic.add(copy);
+    }
+    for (FsmSyntax.SyntaxError error : fragment.errors)
+      shifted.errors.add(new FsmSyntax.SyntaxError(error.type, error.msg, error.lineNumber + lines, error.position));
+    return shifted;
+  }
+
+  private static FsmSyntax.Transition inRegion(FsmSyntax.Transition transition, String region) {
+    FsmSyntax.Transition copy = new FsmSyntax.Transition();
+    copy.region = region;
+    copy.state = transition.state;
+    copy.subTransitions = transition.subTransitions;
+    return copy;
+  }
+
+  private static FsmSyntax.StateSpec shift(FsmSyntax.StateSpec state, int lines) {
+    FsmSyntax.StateSpec copy = new FsmSyntax.StateSpec();
+    copy.name = state.name;
+    copy.superStates = state.superStates;
+    copy.entryActions = state.entryActions;
+    copy.exitActions = state.exitActions;
+    copy.abstractState = state.abstractState;
+    copy.lineNumber = state.lineNumber + lines;
+    copy.position = state.position;
+    return copy;
+  }
+
+  public static class Block {
+    public final String text;
+    public final int firstLine;
+    public final boolean first;
+    public final boolean last;
+
+    public Block(String text, int firstLine, boolean first, boolean last) {
+      this.text = text;
+      this.firstLine = firstLine;
+      this.first = first;
+      this.last = last;
+    }
+
+    public Block atLine(int line) {
+      return new Block(text, line, first, last);
+    }
+  }
+}
@@ -7,6 +7,8 @@ public class SyntaxBuilder implements Builder {
   private final FsmSyntax fsm;
   private Header header;
   private String parsedName;
+  private int parsedLine;
+  private int parsedPosition;
   private Transition transition;
   private SubTransition subtransition;
 
@@ -21,14 +23,28 @@ public class SyntaxBuilder implements Builder {
 
   public void addHeaderWithValue() {
     header.value = parsedName;
-    fsm.headers.add(header);
+    if (header.name.equals("Include"))
+      fsm.includes.add(new Include(parsedName, parsedLine, parsedPosition));
+    else if (header.name.equals("Region"))
+      fsm.regions.add(new Region(parsedName, parsedLine, parsedPosition));
+    else if (header.name.equals("Initial") && currentRegion() != null && currentRegion().initial == null)
+      currentRegion().initial = parsedName;
+    else
+      fsm.headers.add(header);
+  }
+
+  private Region currentRegion() {
+    return fsm.regions.isEmpty() ? null : fsm.regions.get(fsm.regions.size() - 1);
   }
 
   public void setStateName() {
     transition = new Transition();
+    transition.region = currentRegion() == null ? null : currentRegion().name;
     fsm.logic.add(transition);
     transition.state = new StateSpec();
     transition.state.name = parsedName;
+    transition.state.lineNumber = parsedLine;
+    transition.state.position = parsedPosition;
   }
 
   public void done() {
@@ -110,8 +126,10 @@ public class SyntaxBuilder implements Builder {
     fsm.errors.add(new SyntaxError(SYNTAX, "", line, pos));
   }
 
-  public void setName(String name) {
+  public void setName(String name, int line, int pos) {
     parsedName = name;
+    parsedLine = line;
+    parsedPosition = pos;
   }
 
   public FsmSyntax getFsm() {
@@ -0,0 +1,16 @@
+package smc.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Placed on the class that implements a state machine's actions.  The value
+// names the .sm file, relative to the annotated class's package on the source
+// path.  The generated abstract class is written into the same package.
+
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface StateMachine {
+  String value();
+}
@@ -0,0 +1,157 @@
+package smc.processor;
+
+import smc.MachineCache;
+import smc.OptimizedStateMachine;
+import smc.generators.nestedSwitchCaseGenerator.NSCGenerator;
+import smc.implementers.JavaNestedSwitchCaseImplementer;
+import smc.optimizer.Optimizer;
+import smc.parser.FsmSyntax;
+import smc.semanticAnalyzer.SemanticAnalyzer;
+import smc.semanticAnalyzer.SemanticStateMachine;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Generates the abstract state machine class for every class annotated with
+// @StateMachine, from inside javac.  A .sm file on the file system is
+// compiled through a MachineCache, so its Include headers are resolved next
+// to it, and later rounds and later compilations in a warm build daemon do
+// not parse it again until it or a module it includes changes.  A source
+// that javac holds elsewhere is cached by the hash of its content, and may
+// not include modules, since there is nowhere to look for them.
+
+@SupportedAnnotationTypes("smc.processor.StateMachine")
+@SupportedOptions(StateMachineProcessor.SOURCE_DIRECTORY_OPTION)
+public class StateMachineProcessor extends AbstractProcessor {
+  public static final String SOURCE_DIRECTORY_OPTION = "smc.sourceDirectory";
+  private static final MachineCache cache = new MachineCache();
+  private static final Map<String, OptimizedStateMachine> machines = new ConcurrentHashMap<>();
+  private final Set<String> generatedClasses = new HashSet<>();
+
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getElementsAnnotatedWith(StateMachine.class))
+      process(element, element.getAnnotation(StateMachine.class).value());
+    return true;
+  }
+
+  private void process(Element element, String smFileName) {
+    String packageName = getPackageName(element);
+    try {
+      OptimizedStateMachine sm = getMachine(element, smFileName, readSource(packageName, smFileName));
+      if (sm != null)
+        writeFsmClass(element, packageName, sm);
+    } catch (IOException e) {
+      error(element, String.format("Cannot read %s: %s", smFileName, e.getMessage()));
+    }
+  }
+
+  private String getPackageName(Element element) {
+    PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(element);
+    return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+  }
+
+  private Source readSource(String packageName, String smFileName) throws IOException {
+    try {
+      FileObject resource = processingEnv.getFiler().getResource(StandardLocation.SOURCE_PATH, packageName, smFileName);
+      URI uri = resource.toUri();
+      Path path = "file".equals(uri.getScheme()) ? Path.of(uri) : null;
+      return new Source(path, resource.getCharContent(true).toString());
+    } catch (IOException | IllegalArgumentException e) {
+      String sourceDirectory = processingEnv.getOptions().getOrDefault(SOURCE_DIRECTORY_OPTION, "");
+      Path path = Path.of(sourceDirectory).resolve(smFileName);
+      return new Source(path, Files.readString(path));
+    }
+  }
+
+  private OptimizedStateMachine getMachine(Element element, String smFileName, Source source) throws IOException {
+    if (source.path != null) {
+      MachineCache.Machine machine = cache.get(source.path);
+      if (!reportSyntaxErrors(element, machine.syntax()) || !reportAnalysis(element, machine.semanticStateMachine()))
+        return null;
+      return machine.optimizedStateMachine();
+    }
+
+    String hash = MachineCache.hash(source.text.getBytes());
+    OptimizedStateMachine sm = machines.get(hash);
+    if (sm == null) {
+      sm = compile(element, smFileName, source.text);
+      if (sm != null)
+        machines.put(hash, sm);
+    }
+    return sm;
+  }
+
+  private OptimizedStateMachine compile(Element element, String smFileName, String source) {
+    FsmSyntax fsm = MachineCache.parse(source);
+    if (!fsm.includes.isEmpty()) {
+      error(element, String.format("%s includes modules, but is not on the file system, so they cannot be found.", smFileName));
+      return null;
+    }
+    if (!reportSyntaxErrors(element, fsm))
+      return null;
+    SemanticStateMachine ast = new SemanticAnalyzer().analyze(fsm);
+    if (!reportAnalysis(element, ast))
+      return null;
+    return new Optimizer().optimize(ast);
+  }
+
+  private boolean reportSyntaxErrors(Element element, FsmSyntax fsm) {
+    for (FsmSyntax.SyntaxError syntaxError : fsm.errors)
+      error(element, syntaxError.toString());
+    return fsm.errors.isEmpty();
+  }
+
+  private boolean reportAnalysis(Element element, SemanticStateMachine ast) {
+    for (SemanticStateMachine.AnalysisWarning warning : ast.warnings)
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, warning.toString(), element);
+    for (SemanticStateMachine.AnalysisError analysisError : ast.errors)
+      error(element, analysisError.toString());
+    return ast.errors.isEmpty();
+  }
+
+  private void writeFsmClass(Element element, String packageName, OptimizedStateMachine sm) throws IOException {
+    String className = packageName.isEmpty() ? sm.header.fsm : packageName + "." + sm.header.fsm;
+    if (!generatedClasses.add(className))
+      return;
+
+    Map<String, String> flags = new HashMap<>();
+    if (!packageName.isEmpty())
+      flags.put("package", packageName);
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(flags);
+    new NSCGenerator().generate(sm).accept(implementer);
+    try (Writer writer = processingEnv.getFiler().createSourceFile(className, element).openWriter()) {
+      writer.write(implementer.getOutput());
+    }
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+
+  private static class Source {
+    final Path path;
+    final String text;
+
+    Source(Path path, String text) {
+      this.path = path;
+      this.text = text;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package smc.runtime;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+// A bounded, lock-free queue of event numbers that any number of threads may
+// send to, and that is drained by one thread at a time.  The thread that
+// sends an event tries to take the drain flag; the thread that holds it
+// dispatches queued events in order until the queue is empty, so each event
+// runs to completion before the next one starts, and no event is dispatched
+// by two threads at once.  Nothing is allocated per event.
+//
+// The queue is an array of slots, each with a sequence number that tells
+// producers when the slot is free and the consumer when it is full.  A
+// producer claims a slot by advancing the tail with a compare-and-set.  When
+// the queue is full, senders drain it themselves, or wait for the draining
+// thread to make room; the draining thread itself cannot wait, so an action
+// that sends to a full mailbox gets an IllegalStateException.
+
+public final class EventMailbox {
+  public static final int DEFAULT_CAPACITY = 1024;
+  private static final int EMPTY = -1;
+
+  private final int[] events;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private final IntConsumer dispatcher;
+  private volatile long head = 0;
+  private Thread drainingThread;
+
+  public EventMailbox(int capacity, IntConsumer dispatcher) {
+    if (capacity < 1 || capacity > 1 << 30)
+      throw new IllegalArgumentException("Mailbox capacity must be between 1 and 2^30: " + capacity);
+    int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+    events = new int[size];
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++)
+      sequences.set(i, i);
+    mask = size - 1;
+    this.dispatcher = dispatcher;
+  }
+
+  public int capacity() {
+    return events.length;
+  }
+
+  // Event numbers must not be negative.
+  public void send(int event) {
+    while (!offer(event)) {
+      if (drainingThread == Thread.currentThread())
+        throw new IllegalStateException("Mailbox full: an action sent more events than the mailbox holds.");
+      drain();
+      Thread.onSpinWait();
+    }
+    drain();
+  }
+
+  boolean offer(int event) {
+    while (true) {
+      long position = tail.get();
+      int slot = (int) position & mask;
+      long available = sequences.get(slot) - position;
+      if (available == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          events[slot] = event;
+          sequences.set(slot, position + 1);
+          return true;
+        }
+      } else if (available < 0)
+        return false;
+    }
+  }
+
+  private int poll() {
+    long position = head;
+    int slot = (int) position & mask;
+    if (sequences.get(slot) != position + 1)
+      return EMPTY;
+    int event = events[slot];
+    sequences.set(slot, position + events.length);
+    head = position + 1;
+    return event;
+  }
+
+  // An event sent while the flag is being released is picked up by the check
+  // for an empty queue that follows.  That check is also made when the
+  // dispatcher throws, so the events behind the failing one are still
+  // dispatched, by this thread or by the next to take the flag, before the
+  // first failure is rethrown.
+  private void drain() {
+    Throwable failure = null;
+    do {
+      if (!draining.compareAndSet(false, true))
+        break;
+      drainingThread = Thread.currentThread();
+      try {
+        int event;
+        while ((event = poll()) != EMPTY)
+          dispatcher.accept(event);
+      } catch (RuntimeException | Error e) {
+        if (failure == null)
+          failure = e;
+        else
+          failure.addSuppressed(e);
+      } finally {
+        drainingThread = null;
+        draining.set(false);
+      }
+    } while (!isEmpty());
+    if (failure instanceof RuntimeException runtimeException)
+      throw runtimeException;
+    if (failure instanceof Error error)
+      throw error;
+  }
+
+  public boolean isEmpty() {
+    long position = head;
+    return sequences.get((int) position & mask) != position + 1;
+  }
+}
@@ -0,0 +1,77 @@
+package smc.runtime;
+
+// A ring buffer of event numbers for one thread.  A generated machine queues
+// the events its actions send while it is handling an event, and handles
+// them once the current transition is complete.  The buffer is allocated
+// once; when it is full, the overflow policy decides whether offering
+// another event throws, drops the event, or doubles the buffer.
+
+public final class EventQueue {
+  public enum Overflow {THROW, DROP, GROW}
+
+  public static final int DEFAULT_CAPACITY = 16;
+  public static final int EMPTY = -1;
+
+  private final Overflow overflow;
+  private int[] events;
+  private int head = 0;
+  private int size = 0;
+
+  public EventQueue(int capacity, Overflow overflow) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Event queue capacity must be at least 1: " + capacity);
+    events = new int[capacity];
+    this.overflow = overflow;
+  }
+
+  public int capacity() {
+    return events.length;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  // Returns false if the queue was full and the event was dropped.
+  public boolean offer(int event) {
+    if (size == events.length) {
+      switch (overflow) {
+        case THROW -> throw new IllegalStateException("Event queue full: more than " + events.length + " events sent during one transition.");
+        case DROP -> {
+          return false;
+        }
+        case GROW -> grow();
+      }
+    }
+    int tail = head + size;
+    events[tail < events.length ? tail : tail - events.length] = event;
+    size++;
+    return true;
+  }
+
+  public int poll() {
+    if (size == 0)
+      return EMPTY;
+    int event = events[head];
+    head = head + 1 == events.length ? 0 : head + 1;
+    size--;
+    return event;
+  }
+
+  public void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  private void grow() {
+    int[] grown = new int[events.length * 2];
+    for (int i = 0; i < size; i++)
+      grown[i] = events[(head + i) % events.length];
+    events = grown;
+    head = 0;
+  }
+}
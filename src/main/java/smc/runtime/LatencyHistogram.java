@@ -0,0 +1,136 @@
+package smc.runtime;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A histogram of durations in nanoseconds, in a fixed array of buckets that
+// is allocated once.  Durations below twice the number of sub-buckets have a
+// bucket each; above that, each power of two is divided into 2^precisionBits
+// sub-buckets, so with the default of 5 bits a recorded duration is reported
+// to within about 3%.  Durations over the highest value, by default
+// MAX_VALUE, about 68 seconds, are recorded in the last bucket.  The default
+// takes 1024 buckets, 8KB; fewer bits or a lower maximum take less.
+// Recording is one atomic increment, and may be done from any number of
+// threads.
+
+public final class LatencyHistogram {
+  public static final int DEFAULT_PRECISION_BITS = 5;
+  public static final long MAX_VALUE = (1L << 36) - 1;
+
+  private final int subBucketBits;
+  private final long maxValue;
+  private final AtomicLongArray counts;
+
+  public LatencyHistogram() {
+    this(MAX_VALUE, DEFAULT_PRECISION_BITS);
+  }
+
+  public LatencyHistogram(long maxValue, int precisionBits) {
+    if (precisionBits < 1 || precisionBits > 16)
+      throw new IllegalArgumentException("Histogram precision must be between 1 and 16 bits: " + precisionBits);
+    if (maxValue < 1)
+      throw new IllegalArgumentException("Histogram maximum must be positive: " + maxValue);
+    subBucketBits = precisionBits;
+    this.maxValue = maxValue;
+    counts = new AtomicLongArray(bucket(maxValue) + 1);
+  }
+
+  public void record(long nanos) {
+    counts.incrementAndGet(bucket(Math.max(0, Math.min(nanos, maxValue))));
+  }
+
+  int buckets() {
+    return counts.length();
+  }
+
+  int bucket(long value) {
+    int subBuckets = 1 << subBucketBits;
+    if (value < 2L * subBuckets)
+      return (int) value;
+    int shift = 63 - Long.numberOfLeadingZeros(value) - subBucketBits;
+    return shift * subBuckets + (int) (value >>> shift);
+  }
+
+  // The largest value that falls into the bucket.
+  long highestValue(int bucket) {
+    int subBuckets = 1 << subBucketBits;
+    if (bucket < 2 * subBuckets)
+      return bucket;
+    int shift = bucket / subBuckets - 1;
+    long subBucket = bucket % subBuckets + subBuckets;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  public Snapshot snapshot() {
+    long[] copy = new long[counts.length()];
+    for (int i = 0; i < copy.length; i++)
+      copy[i] = counts.get(i);
+    return new Snapshot(this, copy);
+  }
+
+  // Each bucket is read and cleared at once, so no duration recorded while
+  // the snapshot is taken is lost; it is in this snapshot or the next one.
+  public Snapshot snapshotAndReset() {
+    long[] copy = new long[counts.length()];
+    for (int i = 0; i < copy.length; i++)
+      copy[i] = counts.getAndSet(i, 0);
+    return new Snapshot(this, copy);
+  }
+
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++)
+      counts.set(i, 0);
+  }
+
+  public static final class Snapshot {
+    private final LatencyHistogram histogram;
+    private final long[] counts;
+    private final long count;
+
+    private Snapshot(LatencyHistogram histogram, long[] counts) {
+      this.histogram = histogram;
+      this.counts = counts;
+      long count = 0;
+      for (long bucketCount : counts)
+        count += bucketCount;
+      this.count = count;
+    }
+
+    public long count() {
+      return count;
+    }
+
+    // The duration that the given percentage of recorded durations do not
+    // exceed, or 0 if nothing was recorded.
+    public long percentile(double percent) {
+      if (count == 0)
+        return 0;
+      long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+      long seen = 0;
+      for (int bucket = 0; bucket < counts.length; bucket++) {
+        seen += counts[bucket];
+        if (seen >= rank)
+          return histogram.highestValue(bucket);
+      }
+      return max();
+    }
+
+    public long max() {
+      for (int bucket = counts.length - 1; bucket >= 0; bucket--)
+        if (counts[bucket] != 0)
+          return histogram.highestValue(bucket);
+      return 0;
+    }
+
+    public long p50() {
+      return percentile(50);
+    }
+
+    public long p99() {
+      return percentile(99);
+    }
+
+    public long p999() {
+      return percentile(99.9);
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package smc.runtime;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+// Publishes the metrics of generated machine classes on the platform MBean
+// server, as smc.runtime:type=<type>,name=<class name>.  A class of the same
+// name loaded later replaces the earlier one's MBean.
+
+final class MBeans {
+  private MBeans() {
+  }
+
+  static ObjectName objectName(String type, String className) {
+    try {
+      return new ObjectName("smc.runtime:type=" + type + ",name=" + className);
+    } catch (JMException e) {
+      throw new IllegalArgumentException("No MBean name for " + className, e);
+    }
+  }
+
+  static void publish(Object mbean, ObjectName name) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      while (true) {
+        try {
+          server.registerMBean(mbean, name);
+          return;
+        } catch (InstanceAlreadyExistsException e) {
+          try {
+            server.unregisterMBean(name);
+          } catch (InstanceNotFoundException gone) {
+            // Unregistered by another thread since; register again.
+          }
+        }
+      }
+    } catch (JMException e) {
+      throw new IllegalStateException("Cannot publish " + name, e);
+    }
+  }
+
+  // Handled cells are given as a bitmap, sixteen cells to a char, split into
+  // strings short enough to be constants in a class file.
+  static boolean[] handledCells(int cells, String... bitmaps) {
+    String bitmap = String.join("", bitmaps);
+    boolean[] handled = new boolean[cells];
+    for (int cell = 0; cell < cells && cell / 16 < bitmap.length(); cell++)
+      handled[cell] = (bitmap.charAt(cell / 16) & 1 << cell % 16) != 0;
+    return handled;
+  }
+}
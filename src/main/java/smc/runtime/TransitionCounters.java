@@ -0,0 +1,118 @@
+package smc.runtime;
+
+import javax.management.ObjectName;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts how often each transition of a generated machine class is taken,
+// how often each state/event pair goes unhandled, and how often each state
+// is entered, over all instances of the class.  A generated class registers
+// its counters once, when it is loaded, and they are published as the MBean
+// smc.runtime:type=TransitionCounters,name=<class name>.
+//
+// Cells are numbered state * events + event.
+
+public final class TransitionCounters implements TransitionCountersMXBean {
+  private static final Map<Class<?>, TransitionCounters> registry = new ConcurrentHashMap<>();
+
+  private final String[] states;
+  private final String[] events;
+  private final boolean[] handled;
+  private final LongAdder[] transitions;
+  private final LongAdder[] unhandled;
+  private final LongAdder[] entries;
+
+  TransitionCounters(String[] states, String[] events, String... handledCells) {
+    this.states = states;
+    this.events = events;
+    int cells = states.length * events.length;
+    handled = MBeans.handledCells(cells, handledCells);
+    transitions = adders(cells);
+    unhandled = adders(cells);
+    entries = adders(states.length);
+  }
+
+  private static LongAdder[] adders(int count) {
+    LongAdder[] adders = new LongAdder[count];
+    for (int i = 0; i < count; i++)
+      adders[i] = new LongAdder();
+    return adders;
+  }
+
+  public static TransitionCounters register(Class<?> fsmClass, String[] states, String[] events, String... handledCells) {
+    TransitionCounters counters = new TransitionCounters(states, events, handledCells);
+    registry.put(fsmClass, counters);
+    MBeans.publish(counters, objectName(fsmClass.getName()));
+    return counters;
+  }
+
+  public static TransitionCounters of(Class<?> fsmClass) {
+    return registry.get(fsmClass);
+  }
+
+  public static ObjectName objectName(String className) {
+    return MBeans.objectName("TransitionCounters", className);
+  }
+
+  public void transition(int cell, int nextState) {
+    transitions[cell].increment();
+    entries[nextState].increment();
+  }
+
+  public void unhandled(int state, int event) {
+    unhandled[state * events.length + event].increment();
+  }
+
+  public long transitionCount(int state, int event) {
+    return transitions[state * events.length + event].sum();
+  }
+
+  public long unhandledCount(int state, int event) {
+    return unhandled[state * events.length + event].sum();
+  }
+
+  public long entryCount(int state) {
+    return entries[state].sum();
+  }
+
+  // Every transition the machine has, including those never taken.
+  public Map<String, Long> getTransitions() {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (int cell = 0; cell < transitions.length; cell++)
+      if (handled[cell])
+        counts.put(cellName(cell), transitions[cell].sum());
+    return counts;
+  }
+
+  public Map<String, Long> getUnhandledTransitions() {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (int cell = 0; cell < unhandled.length; cell++) {
+      long count = unhandled[cell].sum();
+      if (count != 0)
+        counts.put(cellName(cell), count);
+    }
+    return counts;
+  }
+
+  public Map<String, Long> getStateEntries() {
+    Map<String, Long> counts = new LinkedHashMap<>();
+    for (int state = 0; state < states.length; state++)
+      counts.put(states[state], entries[state].sum());
+    return counts;
+  }
+
+  private String cellName(int cell) {
+    return states[cell / events.length] + "." + events[cell % events.length];
+  }
+
+  public void reset() {
+    for (LongAdder adder : transitions)
+      adder.reset();
+    for (LongAdder adder : unhandled)
+      adder.reset();
+    for (LongAdder adder : entries)
+      adder.reset();
+  }
+}
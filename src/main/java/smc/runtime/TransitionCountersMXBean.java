@@ -0,0 +1,16 @@
+package smc.runtime;
+
+import java.util.Map;
+
+// The counters of a generated machine class, as published through JMX.
+// Transitions are named State.Event.
+
+public interface TransitionCountersMXBean {
+  Map<String, Long> getTransitions();
+
+  Map<String, Long> getUnhandledTransitions();
+
+  Map<String, Long> getStateEntries();
+
+  void reset();
+}
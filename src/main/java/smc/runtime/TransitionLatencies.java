@@ -0,0 +1,124 @@
+package smc.runtime;
+
+import javax.management.ObjectName;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+// Records how long the actions of each transition of a generated machine
+// class take, in a LatencyHistogram per transition, over all instances of
+// the class.  The histograms are allocated when the class registers, so
+// recording allocates nothing.  They are published as the MBean
+// smc.runtime:type=TransitionLatencies,name=<class name>.
+//
+// Each histogram takes 8KB by default.  -Dsmc.latency.maxNanos and
+// -Dsmc.latency.precisionBits lower the range and the precision, and with
+// them the size, for machines with many transitions.
+//
+// Cells are numbered state * events + event.
+
+public final class TransitionLatencies implements TransitionLatenciesMXBean {
+  private static final Map<Class<?>, TransitionLatencies> registry = new ConcurrentHashMap<>();
+  private static final long MAX_NANOS = Long.getLong("smc.latency.maxNanos", LatencyHistogram.MAX_VALUE);
+  private static final int PRECISION_BITS = Integer.getInteger("smc.latency.precisionBits", LatencyHistogram.DEFAULT_PRECISION_BITS);
+
+  private final String[] states;
+  private final String[] events;
+  private final LatencyHistogram[] histograms;
+
+  TransitionLatencies(String[] states, String[] events, String... handledCells) {
+    this(MAX_NANOS, PRECISION_BITS, states, events, handledCells);
+  }
+
+  TransitionLatencies(long maxNanos, int precisionBits, String[] states, String[] events, String... handledCells) {
+    this.states = states;
+    this.events = events;
+    boolean[] handled = MBeans.handledCells(states.length * events.length, handledCells);
+    histograms = new LatencyHistogram[handled.length];
+    for (int cell = 0; cell < handled.length; cell++)
+      if (handled[cell])
+        histograms[cell] = new LatencyHistogram(maxNanos, precisionBits);
+  }
+
+  public static TransitionLatencies register(Class<?> fsmClass, String[] states, String[] events, String... handledCells) {
+    TransitionLatencies latencies = new TransitionLatencies(states, events, handledCells);
+    registry.put(fsmClass, latencies);
+    MBeans.publish(latencies, objectName(fsmClass.getName()));
+    return latencies;
+  }
+
+  public static TransitionLatencies of(Class<?> fsmClass) {
+    return registry.get(fsmClass);
+  }
+
+  public static ObjectName objectName(String className) {
+    return MBeans.objectName("TransitionLatencies", className);
+  }
+
+  public void record(int cell, long nanos) {
+    histograms[cell].record(nanos);
+  }
+
+  public LatencyHistogram.Snapshot snapshot(int state, int event) {
+    LatencyHistogram histogram = histograms[state * events.length + event];
+    if (histogram == null)
+      throw new IllegalArgumentException("No transition " + states[state] + "." + events[event]);
+    return histogram.snapshot();
+  }
+
+  public Map<String, LatencyHistogram.Snapshot> snapshot() {
+    Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<>();
+    for (int cell = 0; cell < histograms.length; cell++)
+      if (histograms[cell] != null)
+        snapshots.put(cellName(cell), histograms[cell].snapshot());
+    return snapshots;
+  }
+
+  // For scraping at intervals: each snapshot holds the durations recorded
+  // since the one before.
+  public Map<String, LatencyHistogram.Snapshot> snapshotAndReset() {
+    Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<>();
+    for (int cell = 0; cell < histograms.length; cell++)
+      if (histograms[cell] != null)
+        snapshots.put(cellName(cell), histograms[cell].snapshotAndReset());
+    return snapshots;
+  }
+
+  private String cellName(int cell) {
+    return states[cell / events.length] + "." + events[cell % events.length];
+  }
+
+  public Map<String, Long> getCounts() {
+    return summary(LatencyHistogram.Snapshot::count);
+  }
+
+  public Map<String, Long> getP50() {
+    return summary(LatencyHistogram.Snapshot::p50);
+  }
+
+  public Map<String, Long> getP99() {
+    return summary(LatencyHistogram.Snapshot::p99);
+  }
+
+  public Map<String, Long> getP999() {
+    return summary(LatencyHistogram.Snapshot::p999);
+  }
+
+  public Map<String, Long> getMax() {
+    return summary(LatencyHistogram.Snapshot::max);
+  }
+
+  private Map<String, Long> summary(ToLongFunction<LatencyHistogram.Snapshot> statistic) {
+    Map<String, Long> summary = new LinkedHashMap<>();
+    for (Map.Entry<String, LatencyHistogram.Snapshot> entry : snapshot().entrySet())
+      summary.put(entry.getKey(), statistic.applyAsLong(entry.getValue()));
+    return summary;
+  }
+
+  public void reset() {
+    for (LatencyHistogram histogram : histograms)
+      if (histogram != null)
+        histogram.reset();
+  }
+}
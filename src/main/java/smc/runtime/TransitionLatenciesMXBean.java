@@ -0,0 +1,20 @@
+package smc.runtime;
+
+import java.util.Map;
+
+// The action latencies of a generated machine class, as published through
+// JMX, in nanoseconds.  Transitions are named State.Event.
+
+public interface TransitionLatenciesMXBean {
+  Map<String, Long> getCounts();
+
+  Map<String, Long> getP50();
+
+  Map<String, Long> getP99();
+
+  Map<String, Long> getP999();
+
+  Map<String, Long> getMax();
+
+  void reset();
+}
@@ -18,12 +18,68 @@ public class SemanticAnalyzer {
 
   public SemanticStateMachine analyze(FsmSyntax fsm) {
     semanticStateMachine = new SemanticStateMachine();
+    if (!fsm.regions.isEmpty())
+      return analyzeRegions(fsm);
     analyzeHeaders(fsm);
     checkSemanticValidity(fsm);
     produceSemanticStateMachine(fsm);
     return new InheritanceTreeSimplifier(semanticStateMachine).simplify();
   }
 
+  // Each region is analyzed as a machine of its own, named after the region.
+  // The machine of regions holds them, and the events and actions of all of
+  // them, but no states of its own.
+  private SemanticStateMachine analyzeRegions(FsmSyntax fsm) {
+    analyzeRegionHeaders(fsm);
+    Set<String> regionNames = new HashSet<>();
+    for (Region region : fsm.regions)
+      if (!regionNames.add(region.name))
+        semanticStateMachine.addError(new AnalysisError(DUPLICATE_REGION, region.name));
+    for (Transition t : fsm.logic)
+      if (t.region == null)
+        semanticStateMachine.addError(new AnalysisError(LOGIC_OUTSIDE_REGION, t.state.name));
+
+    for (Region region : fsm.regions)
+      addRegion(region.name, new SemanticAnalyzer().analyze(regionSyntax(fsm, region)));
+    semanticStateMachine.actionClass = actionsHeader.value;
+    semanticStateMachine.fsmName = fsmHeader.value;
+    return semanticStateMachine;
+  }
+
+  private void analyzeRegionHeaders(FsmSyntax fsm) {
+    for (Header header : fsm.headers) {
+      if (isNamed(header, "fsm"))
+        setHeader(fsmHeader, header);
+      else if (isNamed(header, "actions"))
+        setHeader(actionsHeader, header);
+      else
+        semanticStateMachine.addError(new AnalysisError(INVALID_HEADER, header));
+    }
+    if (isNullHeader(fsmHeader))
+      semanticStateMachine.addError(new AnalysisError(AnalysisError.ID.NO_FSM));
+  }
+
+  private FsmSyntax regionSyntax(FsmSyntax fsm, Region region) {
+    FsmSyntax regionSyntax = new FsmSyntax();
+    regionSyntax.headers.add(new Header("FSM", region.name));
+    if (region.initial != null)
+      regionSyntax.headers.add(new Header("Initial", region.initial));
+    for (Transition t : fsm.logic)
+      if (region.name.equals(t.region))
+        regionSyntax.logic.add(t);
+    return regionSyntax;
+  }
+
+  private void addRegion(String name, SemanticStateMachine region) {
+    for (AnalysisError error : region.errors)
+      semanticStateMachine.addError(error.inRegion(name));
+    for (AnalysisWarning warning : region.warnings)
+      semanticStateMachine.warnings.add(warning.inRegion(name));
+    semanticStateMachine.events.addAll(region.events);
+    semanticStateMachine.actions.addAll(region.actions);
+    semanticStateMachine.regions.add(region);
+  }
+
   private void analyzeHeaders(FsmSyntax fsm) {
     setHeaders(fsm);
     checkMissingHeaders();
@@ -75,31 +131,27 @@ public class SemanticAnalyzer {
     checkForMultiplyDefinedStateActions(fsm);
   }
 
+  // Events and actions are kept in the order they first appear in the source,
+  // so that generated enums and action declarations are stable between runs.
   private void createStateEventAndActionLists(FsmSyntax fsm) {
     addStateNamesToStateList(fsm);
-    addEntryAndExitActionsToActionList(fsm);
-    addEventsToEventList(fsm);
-    addTransitionActionsToActionList(fsm);
-  }
-
-  private void addTransitionActionsToActionList(FsmSyntax fsm) {
-    for (Transition t : fsm.logic)
-      for (SubTransition st : t.subTransitions)
-        semanticStateMachine.actions.addAll(st.actions);
+    for (Transition t : fsm.logic) {
+      addEntryAndExitActionsToActionList(t);
+      addEventsAndActionsToLists(t);
+    }
   }
 
-  private void addEventsToEventList(FsmSyntax fsm) {
-    for (Transition t : fsm.logic)
-      for (SubTransition st : t.subTransitions)
-        if (st.event != null)
-          semanticStateMachine.events.add(st.event);
+  private void addEventsAndActionsToLists(Transition t) {
+    for (SubTransition st : t.subTransitions) {
+      if (st.event != null)
+        semanticStateMachine.events.add(st.event);
+      semanticStateMachine.actions.addAll(st.actions);
+    }
   }
 
-  private void addEntryAndExitActionsToActionList(FsmSyntax fsm) {
-    for (Transition t : fsm.logic) {
-      semanticStateMachine.actions.addAll(t.state.entryActions);
-      semanticStateMachine.actions.addAll(t.state.exitActions);
-    }
+  private void addEntryAndExitActionsToActionList(Transition t) {
+    semanticStateMachine.actions.addAll(t.state.entryActions);
+    semanticStateMachine.actions.addAll(t.state.exitActions);
   }
 
   private void addStateNamesToStateList(FsmSyntax fsm) {
@@ -6,8 +6,9 @@ public class SemanticStateMachine {
   public List<AnalysisError> errors = new ArrayList<>();
   public List<AnalysisWarning> warnings = new ArrayList<>();
   public Map<String, SemanticState> states = new TreeMap<>();
-  public Set<String> events = new HashSet<>();
-  public Set<String> actions = new HashSet<>();
+  public List<SemanticStateMachine> regions = new ArrayList<>();
+  public Set<String> events = new LinkedHashSet<>();
+  public Set<String> actions = new LinkedHashSet<>();
   public SemanticState initialState;
   public String actionClass;
   public String fsmName;
@@ -130,6 +131,10 @@ public class SemanticStateMachine {
       this.extra = extra;
     }
 
+    public AnalysisWarning inRegion(String region) {
+      return new AnalysisWarning(id, extra == null ? region : region + ":" + extra);
+    }
+
     public String toString() {
       return String.format("Semantic Warning: %s(%s)", id.name(), extra);
     }
@@ -159,6 +164,8 @@ public class SemanticStateMachine {
       ABSTRACT_STATE_USED_AS_NEXT_STATE,
       STATE_ACTIONS_MULTIPLY_DEFINED,
       CONFLICTING_SUPERSTATES,
+      DUPLICATE_REGION,
+      LOGIC_OUTSIDE_REGION,
     }
 
     private final ID id;
@@ -173,6 +180,10 @@ public class SemanticStateMachine {
       this.extra = extra;
     }
 
+    public AnalysisError inRegion(String region) {
+      return new AnalysisError(id, extra == null ? region : region + ":" + extra);
+    }
+
     public String toString() {
       return String.format("Semantic Error: %s(%s)", id.name(), extra);
     }
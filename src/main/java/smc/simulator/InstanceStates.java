@@ -0,0 +1,73 @@
+package smc.simulator;
+
+import java.util.Arrays;
+
+// The current state of every instance in a binary trace, in an open
+// addressing table keyed by instance ID, so that a step costs no allocation.
+
+class InstanceStates {
+  private static final int EMPTY = -1;
+  private final int initialState;
+  private int[] instances = new int[1024];
+  private int[] states = new int[1024];
+  private int size = 0;
+
+  InstanceStates(int initialState) {
+    this.initialState = initialState;
+    Arrays.fill(states, EMPTY);
+  }
+
+  // The slot holding the instance's state, which starts as the initial state.
+  int slot(int instance) {
+    int mask = states.length - 1;
+    int slot = mix(instance) & mask;
+    while (states[slot] != EMPTY) {
+      if (instances[slot] == instance)
+        return slot;
+      slot = (slot + 1) & mask;
+    }
+    if (2 * (size + 1) > states.length) {
+      grow();
+      return slot(instance);
+    }
+    instances[slot] = instance;
+    states[slot] = initialState;
+    size++;
+    return slot;
+  }
+
+  int state(int slot) {
+    return states[slot];
+  }
+
+  void setState(int slot, int state) {
+    states[slot] = state;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void countFinalStates(long[] histogram) {
+    for (int state : states)
+      if (state != EMPTY)
+        histogram[state]++;
+  }
+
+  private void grow() {
+    int[] oldInstances = instances;
+    int[] oldStates = states;
+    instances = new int[oldStates.length * 2];
+    states = new int[oldStates.length * 2];
+    Arrays.fill(states, EMPTY);
+    size = 0;
+    for (int i = 0; i < oldStates.length; i++)
+      if (oldStates[i] != EMPTY)
+        states[slot(oldInstances[i])] = oldStates[i];
+  }
+
+  static int mix(int instance) {
+    int h = instance * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
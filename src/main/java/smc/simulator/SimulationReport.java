@@ -0,0 +1,128 @@
+package smc.simulator;
+
+import smc.DenseStateMachine;
+
+import java.util.*;
+
+import static smc.DenseStateMachine.UNHANDLED;
+
+// What a replayed trace exercised: how often each cell of the machine was
+// taken, events the machine does not know, and how many instances ended in
+// each state.  Each thread fills a report of its own, and the reports are
+// then added together.
+
+public class SimulationReport {
+  public final DenseStateMachine sm;
+  public final long[] cellCounts;
+  public final long[] finalStates;
+  public final Map<String, Long> unknownEvents = new TreeMap<>();
+  public long events = 0;
+  public long instances = 0;
+  public int threads = 1;
+  public long elapsedNanos = 0;
+
+  SimulationReport(DenseStateMachine sm) {
+    this.sm = sm;
+    cellCounts = new long[sm.cellCount()];
+    finalStates = new long[sm.states.size()];
+  }
+
+  void add(SimulationReport report) {
+    for (int cell = 0; cell < cellCounts.length; cell++)
+      cellCounts[cell] += report.cellCounts[cell];
+    for (int state = 0; state < finalStates.length; state++)
+      finalStates[state] += report.finalStates[state];
+    report.unknownEvents.forEach((event, count) -> unknownEvents.merge(event, count, Long::sum));
+    events += report.events;
+    instances += report.instances;
+  }
+
+  void unknownEvent(String event) {
+    unknownEvents.merge(event, 1L, Long::sum);
+  }
+
+  public int transitionCount() {
+    int transitions = 0;
+    for (int cell = 0; cell < cellCounts.length; cell++)
+      if (isHandled(cell))
+        transitions++;
+    return transitions;
+  }
+
+  public int coveredTransitionCount() {
+    int covered = 0;
+    for (int cell = 0; cell < cellCounts.length; cell++)
+      if (isHandled(cell) && cellCounts[cell] > 0)
+        covered++;
+    return covered;
+  }
+
+  public long unhandledCount() {
+    long unhandled = 0;
+    for (int cell = 0; cell < cellCounts.length; cell++)
+      if (!isHandled(cell))
+        unhandled += cellCounts[cell];
+    return unhandled;
+  }
+
+  public long unhandledCount(String state, String event) {
+    return cellCounts[sm.states.indexOf(state) * sm.events.size() + sm.events.indexOf(event)];
+  }
+
+  public long finalStateCount(String state) {
+    return finalStates[sm.states.indexOf(state)];
+  }
+
+  public double eventsPerSecond() {
+    return elapsedNanos == 0 ? 0 : events * 1e9 / elapsedNanos;
+  }
+
+  private boolean isHandled(int cell) {
+    return sm.nextState(cell / sm.events.size(), cell % sm.events.size()) != UNHANDLED;
+  }
+
+  private String cellName(int cell) {
+    return sm.states.get(cell / sm.events.size()) + " " + sm.events.get(cell % sm.events.size());
+  }
+
+  public String toString() {
+    StringBuilder report = new StringBuilder(String.format(
+      "Replayed %d events of %d instances on %d threads in %.3f s, %.0f events/s.%n",
+      events, instances, threads, elapsedNanos / 1e9, eventsPerSecond()));
+
+    int transitions = transitionCount();
+    int covered = coveredTransitionCount();
+    report.append(String.format("Transitions covered: %d of %d (%.1f%%).%n",
+      covered, transitions, transitions == 0 ? 100.0 : 100.0 * covered / transitions));
+    for (int cell = 0; cell < cellCounts.length; cell++)
+      if (isHandled(cell) && cellCounts[cell] == 0)
+        report.append(String.format("  not covered: %s%n", cellName(cell)));
+
+    report.append(String.format("Unhandled transitions: %d.%n", unhandledCount()));
+    List<Integer> unhandledCells = new ArrayList<>();
+    for (int cell = 0; cell < cellCounts.length; cell++)
+      if (!isHandled(cell) && cellCounts[cell] > 0)
+        unhandledCells.add(cell);
+    for (int cell : mostFrequentFirst(unhandledCells, cellCounts))
+      report.append(String.format("  %d %s%n", cellCounts[cell], cellName(cell)));
+
+    if (!unknownEvents.isEmpty()) {
+      report.append(String.format("Unknown events: %d.%n", unknownEvents.values().stream().mapToLong(Long::longValue).sum()));
+      unknownEvents.forEach((event, count) -> report.append(String.format("  %d %s%n", count, event)));
+    }
+
+    report.append(String.format("Final states:%n"));
+    List<Integer> reachedStates = new ArrayList<>();
+    for (int state = 0; state < finalStates.length; state++)
+      if (finalStates[state] > 0)
+        reachedStates.add(state);
+    for (int state : mostFrequentFirst(reachedStates, finalStates))
+      report.append(String.format("  %d %s%n", finalStates[state], sm.states.get(state)));
+    return report.toString();
+  }
+
+  private static List<Integer> mostFrequentFirst(List<Integer> indices, long[] counts) {
+    indices.sort(Comparator.comparingLong((Integer index) -> counts[index]).reversed());
+    return indices;
+  }
+}
@@ -0,0 +1,257 @@
+package smc.simulator;
+
+import com.cleancoder.args.Args;
+import com.cleancoder.args.ArgsException;
+import smc.DenseStateMachine;
+import smc.MachineCache;
+import smc.OptimizedStateMachine;
+import smc.binary.StateMachineReader;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static smc.DenseStateMachine.UNHANDLED;
+
+// Replays a recorded event trace against a compiled machine and reports the
+// transitions it covered, the unhandled transitions it hit, the states the
+// instances ended in, and the speed of the replay.  Actions are not run.
+//
+// Instances are partitioned by ID, and each partition is replayed on a thread
+// of its own.  Every thread reads the whole mapped trace and steps only the
+// instances of its own partition, so the events of each instance are applied
+// in trace order without any locking.
+//
+// Usage: java -cp smc.jar smc.simulator.Simulator [-p threads] <machine.smb|machine.sm> <trace>
+
+public class Simulator {
+  private static final String argSchema = "p#";
+  private static final int UNKNOWN = -1;
+  private final DenseStateMachine sm;
+  private final int partitions;
+  private final int eventCount;
+  private final int[] nextStates;
+  private final Map<String, Integer> eventOrdinals = new HashMap<>();
+
+  public Simulator(DenseStateMachine sm, int partitions) {
+    this.sm = sm;
+    this.partitions = partitions;
+    eventCount = sm.events.size();
+    nextStates = new int[sm.cellCount()];
+    for (int cell = 0; cell < nextStates.length; cell++)
+      nextStates[cell] = sm.nextState(cell / eventCount, cell % eventCount);
+    for (String event : sm.events)
+      eventOrdinals.put(event, eventOrdinals.size());
+  }
+
+  public static void main(String[] args) throws Exception {
+    simulate(args, System.out);
+  }
+
+  public static void simulate(String[] args, PrintStream out) throws IOException {
+    Args argParser;
+    try {
+      argParser = new Args(argSchema, args);
+    } catch (ArgsException e) {
+      out.println("usage: " + argSchema + " machine trace");
+      out.println(e.errorMessage());
+      return;
+    }
+    int first = argParser.nextArgument();
+    if (args.length - first != 2) {
+      out.println("usage: " + argSchema + " machine trace");
+      return;
+    }
+    int threads = argParser.has('p') ? argParser.getInt('p') : Runtime.getRuntime().availableProcessors();
+    DenseStateMachine sm = load(Paths.get(args[first]), out);
+    if (sm != null)
+      out.print(new Simulator(sm, Math.max(threads, 1)).run(Trace.open(Paths.get(args[first + 1]))));
+  }
+
+  // A .smb file is used in place; anything else is compiled as a .sm source.
+  private static DenseStateMachine load(Path path, PrintStream out) throws IOException {
+    if (path.toString().endsWith(".smb"))
+      return StateMachineReader.read(path);
+
+    MachineCache.Machine machine = new MachineCache().get(path);
+    if (!machine.syntax().errors.isEmpty()) {
+      machine.syntax().errors.forEach(out::println);
+      return null;
+    }
+    if (!machine.semanticStateMachine().errors.isEmpty()) {
+      machine.semanticStateMachine().errors.forEach(out::println);
+      return null;
+    }
+    OptimizedStateMachine optimized = machine.optimizedStateMachine();
+    if (optimized.productOmitted) {
+      out.println("The product of the regions is too large to simulate.");
+      return null;
+    }
+    return DenseStateMachine.of(optimized);
+  }
+
+  public SimulationReport run(Trace trace) {
+    long start = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(partitions, runnable -> {
+      Thread thread = new Thread(runnable, "smc-simulator-partition");
+      thread.setDaemon(true);
+      return thread;
+    });
+    SimulationReport report = new SimulationReport(sm);
+    try {
+      List<Future<SimulationReport>> partitionReports = new ArrayList<>();
+      for (int partition = 0; partition < partitions; partition++) {
+        int p = partition;
+        partitionReports.add(pool.submit(() -> trace.binary ? replayBinary(trace, p) : replayText(trace, p)));
+      }
+      for (Future<SimulationReport> partitionReport : partitionReports)
+        report.add(partitionReport.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Simulation interrupted.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException)
+        throw runtimeException;
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    report.threads = partitions;
+    report.elapsedNanos = System.nanoTime() - start;
+    return report;
+  }
+
+  private boolean isInPartition(int hash, int partition) {
+    return Math.floorMod(InstanceStates.mix(hash), partitions) == partition;
+  }
+
+  private int step(int state, int event, SimulationReport report) {
+    int cell = state * eventCount + event;
+    report.cellCounts[cell]++;
+    int nextState = nextStates[cell];
+    return nextState == UNHANDLED ? state : nextState;
+  }
+
+  private SimulationReport replayBinary(Trace trace, int partition) {
+    SimulationReport report = new SimulationReport(sm);
+    InstanceStates instances = new InstanceStates(sm.initialState);
+    int[] events = new int[trace.eventNames.size()];
+    for (int i = 0; i < events.length; i++)
+      events[i] = eventOrdinals.getOrDefault(trace.eventNames.get(i), UNKNOWN);
+
+    for (ByteBuffer segment : trace.segments) {
+      int limit = segment.limit();
+      for (int offset = 0; offset < limit; offset += Trace.RECORD_BYTES) {
+        int instance = segment.getInt(offset);
+        if (!isInPartition(instance, partition))
+          continue;
+        int traceEvent = segment.getInt(offset + 4);
+        int event = traceEvent >= 0 && traceEvent < events.length ? events[traceEvent] : UNKNOWN;
+        report.events++;
+        if (event == UNKNOWN)
+          report.unknownEvent(traceEvent >= 0 && traceEvent < events.length ? trace.eventNames.get(traceEvent) : "#" + traceEvent);
+        else {
+          int slot = instances.slot(instance);
+          instances.setState(slot, step(instances.state(slot), event, report));
+        }
+      }
+    }
+    report.instances = instances.size();
+    instances.countFinalStates(report.finalStates);
+    return report;
+  }
+
+  private SimulationReport replayText(Trace trace, int partition) {
+    SimulationReport report = new SimulationReport(sm);
+    Map<String, int[]> instances = new HashMap<>();
+    for (ByteBuffer segment : trace.segments)
+      new TextReplay(segment, partition, report, instances).replay();
+    report.instances = instances.size();
+    for (int[] state : instances.values())
+      report.finalStates[state[0]]++;
+    return report;
+  }
+
+  // Walks the lines of a text trace.  The first token of a line is hashed as
+  // it is scanned, so lines of other partitions are skipped without decoding.
+  private class TextReplay {
+    private final ByteBuffer segment;
+    private final int partition;
+    private final SimulationReport report;
+    private final Map<String, int[]> instances;
+    private byte[] scratch = new byte[64];
+    private int position = 0;
+
+    TextReplay(ByteBuffer segment, int partition, SimulationReport report, Map<String, int[]> instances) {
+      this.segment = segment;
+      this.partition = partition;
+      this.report = report;
+      this.instances = instances;
+    }
+
+    void replay() {
+      int limit = segment.limit();
+      while (position < limit) {
+        skipBlanks(limit);
+        int firstStart = position;
+        int hash = 0;
+        while (position < limit && !isSeparator(segment.get(position)))
+          hash = 31 * hash + segment.get(position++);
+        int firstEnd = position;
+        skipBlanks(limit);
+        int secondStart = position;
+        while (position < limit && !isSeparator(segment.get(position)))
+          position++;
+        int secondEnd = position;
+        while (position < limit && segment.get(position++) != '\n')
+          ;
+
+        if (firstStart == firstEnd || segment.get(firstStart) == '#')
+          continue;
+        if (secondStart == secondEnd)
+          replayEvent(0, firstStart, firstStart, firstStart, firstEnd);
+        else
+          replayEvent(hash, firstStart, firstEnd, secondStart, secondEnd);
+      }
+    }
+
+    // A line with a single token is an event of the instance with the empty ID.
+    private void replayEvent(int instanceHash, int instanceStart, int instanceEnd, int eventStart, int eventEnd) {
+      if (!isInPartition(instanceHash, partition))
+        return;
+      report.events++;
+      String eventName = decode(eventStart, eventEnd);
+      Integer event = eventOrdinals.get(eventName);
+      if (event == null) {
+        report.unknownEvent(eventName);
+        return;
+      }
+      int[] state = instances.computeIfAbsent(decode(instanceStart, instanceEnd), id -> new int[]{sm.initialState});
+      state[0] = step(state[0], event, report);
+    }
+
+    private void skipBlanks(int limit) {
+      while (position < limit && (segment.get(position) == ' ' || segment.get(position) == '\t' || segment.get(position) == '\r'))
+        position++;
+    }
+
+    private boolean isSeparator(byte b) {
+      return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private String decode(int start, int end) {
+      if (scratch.length < end - start)
+        scratch = new byte[end - start];
+      segment.get(start, scratch, 0, end - start);
+      return new String(scratch, 0, end - start, UTF_8);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package smc.simulator;
+
+import smc.binary.StateMachineReader.FormatException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// A recorded event trace, mapped into memory.  A trace is either binary, or
+// text with one event per line.
+//
+// A binary trace is big endian:
+//
+//   offset  0  magic "SMCT"
+//           4  u16 format version, u16 reserved
+//           8  u32 event name count, then (u16 length, UTF-8 bytes)* names
+//              records: (i32 instance ID, i32 event name index)*
+//
+// A text trace holds "instance event", or just "event" for a trace of a
+// single instance, on each line, separated by spaces or tabs.  Blank lines and
+// lines starting with '#' are skipped.
+//
+// Files too large for one mapping are mapped in segments that end on a record
+// or line boundary.
+
+public class Trace {
+  static final int MAGIC = 0x534D4354;
+  static final int VERSION = 1;
+  static final int RECORD_BYTES = 8;
+  private static final int NAMES_OFFSET = 8;
+  private static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+  public final boolean binary;
+  public final List<String> eventNames;
+  public final List<ByteBuffer> segments;
+
+  private Trace(boolean binary, List<String> eventNames, List<ByteBuffer> segments) {
+    this.binary = binary;
+    this.eventNames = eventNames;
+    this.segments = segments;
+  }
+
+  public static Trace open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path)) {
+      long size = channel.size();
+      ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAX_SEGMENT_BYTES));
+      if (size >= 4 && head.getInt(0) == MAGIC)
+        return openBinary(channel, head);
+      return new Trace(false, List.of(), mapText(channel, size));
+    }
+  }
+
+  private static Trace openBinary(FileChannel channel, ByteBuffer head) throws IOException {
+    if (head.getShort(4) != VERSION)
+      throw new FormatException("Unsupported trace version " + head.getShort(4));
+    head.position(NAMES_OFFSET);
+    int count = head.getInt();
+    List<String> names = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      byte[] name = new byte[Short.toUnsignedInt(head.getShort())];
+      head.get(name);
+      names.add(new String(name, UTF_8));
+    }
+    long recordsStart = head.position();
+    if ((channel.size() - recordsStart) % RECORD_BYTES != 0)
+      throw new FormatException("Trace ends inside a record");
+
+    List<ByteBuffer> segments = new ArrayList<>();
+    long maxSegment = MAX_SEGMENT_BYTES - MAX_SEGMENT_BYTES % RECORD_BYTES;
+    for (long start = recordsStart; start < channel.size(); start += maxSegment)
+      segments.add(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(maxSegment, channel.size() - start)));
+    return new Trace(true, List.copyOf(names), segments);
+  }
+
+  private static List<ByteBuffer> mapText(FileChannel channel, long size) throws IOException {
+    List<ByteBuffer> segments = new ArrayList<>();
+    long start = 0;
+    while (start < size) {
+      long length = Math.min(MAX_SEGMENT_BYTES, size - start);
+      ByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+      if (start + length < size)
+        length = lastLineEnd(segment) + 1;
+      segments.add(segment.slice(0, (int) length));
+      start += length;
+    }
+    return segments;
+  }
+
+  private static int lastLineEnd(ByteBuffer segment) throws FormatException {
+    for (int i = segment.limit() - 1; i >= 0; i--)
+      if (segment.get(i) == '\n')
+        return i;
+    throw new FormatException("Trace line too long");
+  }
+}
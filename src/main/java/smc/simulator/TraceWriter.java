@@ -0,0 +1,35 @@
+package smc.simulator;
+
+import java.io.*;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Writes a binary trace in the form read by Trace.  Events are given as
+// indices into the event names the trace was opened with.
+
+public class TraceWriter implements Closeable {
+  private final DataOutputStream out;
+
+  public TraceWriter(OutputStream out, List<String> eventNames) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(out));
+    this.out.writeInt(Trace.MAGIC);
+    this.out.writeShort(Trace.VERSION);
+    this.out.writeShort(0);
+    this.out.writeInt(eventNames.size());
+    for (String name : eventNames) {
+      byte[] bytes = name.getBytes(UTF_8);
+      this.out.writeShort(bytes.length);
+      this.out.write(bytes);
+    }
+  }
+
+  public void write(int instance, int event) throws IOException {
+    out.writeInt(instance);
+    out.writeInt(event);
+  }
+
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,54 @@
+package smc;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class MachineCacheTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private final MachineCache cache = new MachineCache();
+
+  private Path writeSource(String content) throws Exception {
+    Path source = folder.getRoot().toPath().resolve("fsm.sm");
+    Files.writeString(source, content);
+    return source;
+  }
+
+  @Test
+  public void unchangedFileIsParsedOnlyOnce() throws Exception {
+    Path source = writeSource("Initial: I FSM: f {I E I A}");
+    MachineCache.Machine machine = cache.get(source);
+    assertThat(cache.get(source), sameInstance(machine));
+    assertThat(cache.get(source).syntax(), sameInstance(machine.syntax()));
+  }
+
+  @Test
+  public void touchedButIdenticalFileReusesAnalysis() throws Exception {
+    Path source = writeSource("Initial: I FSM: f {I E I A}");
+    MachineCache.Machine machine = cache.get(source);
+    Files.setLastModifiedTime(source, FileTime.fromMillis(0));
+    MachineCache.Machine touched = cache.get(source);
+    assertThat(touched, not(sameInstance(machine)));
+    assertThat(touched.optimizedStateMachine(), sameInstance(machine.optimizedStateMachine()));
+  }
+
+  @Test
+  public void changedFileIsReparsed() throws Exception {
+    Path source = writeSource("Initial: I FSM: f {I E I A}");
+    MachineCache.Machine machine = cache.get(source);
+    writeSource("Initial: I FSM: g {I E I A}");
+    Files.setLastModifiedTime(source, FileTime.fromMillis(0));
+    MachineCache.Machine changed = cache.get(source);
+    assertThat(changed.hash, not(equalTo(machine.hash)));
+    assertThat(changed.optimizedStateMachine().header.fsm, equalTo("g"));
+    assertThat(cache.size(), equalTo(1));
+  }
+}
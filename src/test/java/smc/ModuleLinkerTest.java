@@ -0,0 +1,153 @@
+package smc;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smc.parser.FsmSyntax;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ModuleLinkerTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private Path directory;
+  private Path main;
+  private final ModuleLinker linker = new ModuleLinker();
+
+  @Before
+  public void setUp() throws Exception {
+    directory = folder.getRoot().toPath().toRealPath();
+    main = directory.resolve("main.sm");
+  }
+
+  private Path write(String fileName, String content) throws Exception {
+    Path path = directory.resolve(fileName);
+    Files.writeString(path, content);
+    return path;
+  }
+
+  private FsmSyntax link(String mainSource) throws Exception {
+    write("main.sm", mainSource);
+    return linker.link(main, mainSource).syntax;
+  }
+
+  private String stateNames(FsmSyntax syntax) {
+    StringBuilder names = new StringBuilder();
+    for (FsmSyntax.Transition transition : syntax.logic)
+      names.append(transition.state.name);
+    return names.toString();
+  }
+
+  @Test
+  public void moduleTransitionsFollowTheMachines() throws Exception {
+    write("b.smi", "{b e a -}");
+    FsmSyntax syntax = link("FSM: f Initial: a Include: b {a e b -}");
+
+    assertThat(syntax.errors, is(empty()));
+    assertThat(stateNames(syntax), equalTo("ab"));
+    assertThat(syntax.headers, hasSize(2));
+  }
+
+  @Test
+  public void modulesMayIncludeModulesButAreIncludedOnce() throws Exception {
+    write("b.smi", "Include: c {b e c -}");
+    write("c.smi", "Include: b {c e a -}");
+    FsmSyntax syntax = link("FSM: f Initial: a Include: b Include: c {a e b -}");
+
+    assertThat(syntax.errors, is(empty()));
+    assertThat(stateNames(syntax), equalTo("abc"));
+  }
+
+  @Test
+  public void missingModuleIsASyntaxError() throws Exception {
+    FsmSyntax syntax = link("FSM: f Initial: a\nInclude: nowhere {a e a -}");
+
+    assertThat(syntax.errors, hasSize(1));
+    assertThat(syntax.errors.get(0).type, is(FsmSyntax.SyntaxError.Type.INCLUDE));
+    assertThat(syntax.errors.get(0).lineNumber, is(2));
+  }
+
+  @Test
+  public void errorsInModulesNameTheModule() throws Exception {
+    write("b.smi", "{b e }");
+    FsmSyntax syntax = link("FSM: f Initial: a Include: b {a e b -}");
+
+    assertThat(syntax.errors.get(0).toString(), endsWith("in b.smi"));
+  }
+
+  @Test
+  public void onlyTheLatestFragmentOfEachFileIsCached() throws Exception {
+    Path module = write("b.smi", "{b e a -}");
+    link("FSM: f Initial: a Include: b {a e b -}");
+    FsmSyntax mainFragment = linker.cachedFragment(main);
+    FsmSyntax moduleFragment = linker.cachedFragment(module);
+    write("b.smi", "{b e a x}");
+    link("FSM: f Initial: a Include: b {a e b -}");
+
+    assertThat(linker.cachedFragmentCount(), is(2));
+    assertThat(linker.cachedFragment(main), sameInstance(mainFragment));
+    assertThat(linker.cachedFragment(module), not(sameInstance(moduleFragment)));
+  }
+
+  @Test
+  public void evictedMachinesForgetTheirFragments() throws Exception {
+    MachineCache cache = new MachineCache();
+    write("b.smi", "{b e a -}");
+    write("main.sm", "FSM: f Initial: a Include: b {a e b -}");
+    MachineCache.Machine machine = cache.get(main);
+    machine.syntax();
+    cache.evict(main);
+
+    MachineCache.Machine reloaded = cache.get(main);
+    assertThat(reloaded, not(sameInstance(machine)));
+    assertThat(reloaded.syntax().logic.get(1), not(sameInstance(machine.syntax().logic.get(1))));
+  }
+
+  @Test
+  public void machineCacheNoticesChangedModules() throws Exception {
+    MachineCache cache = new MachineCache();
+    write("b.smi", "{b e a -}");
+    write("main.sm", "FSM: f Initial: a Include: b {a e b -}");
+    MachineCache.Machine machine = cache.get(main);
+    assertThat(machine.semanticStateMachine().errors, is(empty()));
+    assertThat(cache.get(main), sameInstance(machine));
+
+    write("b.smi", "{b e a x}");
+    Files.setLastModifiedTime(directory.resolve("b.smi"), FileTime.fromMillis(0));
+    MachineCache.Machine changed = cache.get(main);
+    assertThat(changed, not(sameInstance(machine)));
+    assertThat(changed.semanticStateMachine().actions, contains("x"));
+  }
+
+  @Test
+  public void machineCacheNoticesMissingModulesAppearing() throws Exception {
+    MachineCache cache = new MachineCache();
+    write("main.sm", "FSM: f Initial: a Include: b {a e b -}");
+    MachineCache.Machine machine = cache.get(main);
+    assertThat(machine.syntax().errors, hasSize(1));
+    assertThat(cache.get(main), sameInstance(machine));
+
+    write("b.smi", "{b e a x}");
+    MachineCache.Machine changed = cache.get(main);
+    assertThat(changed, not(sameInstance(machine)));
+    assertThat(changed.syntax().errors, is(empty()));
+  }
+
+  @Test
+  public void outputCacheKeyCoversModules() throws Exception {
+    write("b.smi", "{b e a -}");
+    write("main.sm", "FSM: f Initial: a Include: b {a e b -}");
+    String before = OutputCache.key(main, "Java", new HashMap<>());
+    write("b.smi", "{b e a x}");
+
+    assertThat(ModuleLinker.includedFiles(main), contains(directory.resolve("b.smi")));
+    assertThat(OutputCache.key(main, "Java", new HashMap<>()), not(equalTo(before)));
+  }
+}
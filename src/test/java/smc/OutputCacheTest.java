@@ -0,0 +1,151 @@
+package smc;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class OutputCacheTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private Path root;
+
+  @Before
+  public void setUp() throws Exception {
+    root = folder.getRoot().toPath();
+  }
+
+  private Path writeFile(String name, String content) throws Exception {
+    Path path = root.resolve(name);
+    Files.writeString(path, content);
+    return path;
+  }
+
+  @Test
+  public void compilerVersionIsAHashOfTheCompilersClasses() throws Exception {
+    Path classes = Files.createDirectories(root.resolve("classes/smc"));
+    Files.write(classes.resolve("SMC.class"), new byte[]{1, 2, 3});
+    String version = OutputCache.codeSourceHash(root.resolve("classes"));
+    assertThat(OutputCache.codeSourceHash(root.resolve("classes")), equalTo(version));
+
+    Files.write(classes.resolve("SMC.class"), new byte[]{1, 2, 4});
+    assertThat(OutputCache.codeSourceHash(root.resolve("classes")), not(equalTo(version)));
+    Path jar = writeFile("smc.jar", "jar bytes");
+    assertThat(OutputCache.codeSourceHash(jar), not(equalTo(version)));
+    assertThat(OutputCache.compilerVersion(), not(equalTo("dev")));
+  }
+
+  @Test
+  public void keyDependsOnSourceLanguageAndFlags() throws Exception {
+    byte[] source = "Initial: I FSM: f {I E I A}".getBytes();
+    String key = OutputCache.key(source, "Java", Map.of("package", "p"));
+    assertThat(OutputCache.key(source, "Java", Map.of("package", "p")), equalTo(key));
+    assertThat(OutputCache.key(source, "Cpp", Map.of("package", "p")), not(equalTo(key)));
+    assertThat(OutputCache.key(source, "Java", Map.of("package", "q")), not(equalTo(key)));
+    assertThat(OutputCache.key("Initial: I FSM: g {I E I A}".getBytes(), "Java", Map.of("package", "p")), not(equalTo(key)));
+  }
+
+  @Test
+  public void storedEntryRestoresFilesAndDiagnostics() throws Exception {
+    OutputCache cache = new OutputCache(root.resolve("cache"), OutputCache.DEFAULT_MAX_BYTES);
+    Path generated = writeFile("F.java", "class F {}");
+    cache.put("k", "Compiled.\n", root, List.of(generated));
+    Files.delete(generated);
+
+    OutputCache.Entry entry = cache.get("k");
+    assertThat(entry.diagnostics, equalTo("Compiled.\n"));
+    assertThat(entry.restore(root), contains(generated));
+    assertThat(Files.readString(generated), equalTo("class F {}"));
+    assertThat(cache.get("missing"), nullValue());
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesAreEvicted() throws Exception {
+    Path cacheDirectory = root.resolve("cache");
+    OutputCache cache = new OutputCache(cacheDirectory, 200);
+    Path generated = writeFile("F.java", "x".repeat(60));
+    cache.put("old", "", root, List.of(generated));
+    Files.setLastModifiedTime(cacheDirectory.resolve("old.entry"), FileTime.fromMillis(1000));
+    cache.put("used", "", root, List.of(generated));
+    Files.setLastModifiedTime(cacheDirectory.resolve("used.entry"), FileTime.fromMillis(2000));
+    cache.get("used");
+    cache.put("new", "", root, List.of(generated));
+
+    assertThat(cache.get("old"), nullValue());
+    assertThat(cache.get("used"), notNullValue());
+    assertThat(cache.get("new"), notNullValue());
+  }
+
+  @Test
+  public void compilerRestoresCachedOutputWithoutRegenerating() throws Exception {
+    writeFile("turnstile.sm", "Initial: Locked FSM: Turnstile {Locked Coin Locked unlock}");
+    String[] args = {"-c", "cache", "turnstile.sm"};
+    ByteArrayOutputStream firstOutput = new ByteArrayOutputStream();
+    SMC.compile(args, root, new PrintStream(firstOutput), new MachineCache());
+    Path generated = root.resolve("Turnstile.java");
+    String generatedCode = Files.readString(generated);
+    Files.delete(generated);
+
+    ByteArrayOutputStream secondOutput = new ByteArrayOutputStream();
+    List<Path> restored = SMC.compile(args, root, new PrintStream(secondOutput), new MachineCache());
+    assertThat(restored, contains(generated));
+    assertThat(Files.readString(generated), equalTo(generatedCode));
+    assertThat(secondOutput.toString(), equalTo(firstOutput.toString()));
+  }
+
+  @Test
+  public void cacheHitsLeaveUnchangedFilesAlone() throws Exception {
+    writeFile("turnstile.sm", "Initial: Locked FSM: Turnstile {Locked Coin Locked unlock}");
+    String[] args = {"-c", "cache", "turnstile.sm"};
+    SMC.compile(args, root, new PrintStream(new ByteArrayOutputStream()), new MachineCache());
+    Path generated = root.resolve("Turnstile.java");
+    FileTime longAgo = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(generated, longAgo);
+
+    List<Path> restored = SMC.compile(args, root, new PrintStream(new ByteArrayOutputStream()), new MachineCache());
+    assertThat(restored, contains(generated));
+    assertThat(Files.getLastModifiedTime(generated), equalTo(longAgo));
+  }
+
+  @Test
+  public void machinesSharingAJarBypassTheCache() throws Exception {
+    writeFile("f.sm", "Initial: i FSM: f {i e i a}");
+    writeFile("g.sm", "Initial: i FSM: g {i e i a}");
+    Path jar = root.resolve("fsm.jar");
+    for (List<String> order : List.of(List.of("f.sm", "g.sm"), List.of("g.sm", "f.sm"))) {
+      Files.deleteIfExists(jar);
+      for (String source : order)
+        SMC.compile(new String[]{"-c", "cache", "-f", "jar:fsm.jar", source}, root, new PrintStream(new ByteArrayOutputStream()), new MachineCache());
+    }
+
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      assertThat(jarFile.getEntry("f.class"), notNullValue());
+      assertThat(jarFile.getEntry("g.class"), notNullValue());
+    }
+  }
+
+  @Test
+  public void machinesGoingIntoAJarAreWrittenOnce() throws Exception {
+    writeFile("f.sm", "Initial: i FSM: f {i e i a}");
+    writeFile("g.sm", "Initial: i FSM: g {i e i a}");
+    List<Path> written = SMC.compile(new String[]{"-f", "jar:fsm.jar", "f.sm", "g.sm"}, root, new PrintStream(new ByteArrayOutputStream()), new MachineCache());
+
+    assertThat(written, contains(root.resolve("fsm.jar").toAbsolutePath().normalize()));
+    try (JarFile jarFile = new JarFile(root.resolve("fsm.jar").toFile())) {
+      assertThat(jarFile.getEntry("f.class"), notNullValue());
+      assertThat(jarFile.getEntry("g.class"), notNullValue());
+    }
+  }
+}
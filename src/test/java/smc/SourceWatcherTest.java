@@ -0,0 +1,98 @@
+package smc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SourceWatcherTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private final BlockingQueue<Path> compiled = new LinkedBlockingQueue<>();
+  private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+  private final MachineCache cache = new MachineCache();
+  private Path directory;
+  private SourceWatcher watcher;
+  private Thread watcherThread;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = folder.getRoot().toPath();
+    Files.writeString(directory.resolve("a.sm"), "Initial: I FSM: a {I E I -}");
+    Files.writeString(directory.resolve("notes.txt"), "not a state machine");
+    watcher = new SourceWatcher(directory, new PrintStream(output, true), cache, source -> {
+      if (source.getFileName().toString().equals("bad.sm")) {
+        compiled.add(source.getFileName());
+        throw new IOException("cannot write output");
+      }
+      cache.get(source);
+      compiled.add(source.getFileName());
+    }, 50);
+    watcherThread = new Thread(() -> {
+      try {
+        watcher.watch();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    watcherThread.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    watcher.close();
+    watcherThread.join(5000);
+  }
+
+  private Path nextCompiled() throws InterruptedException {
+    return compiled.poll(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void existingSourcesAreCompiledOnStartup() throws Exception {
+    assertThat(nextCompiled(), equalTo(Path.of("a.sm")));
+    assertThat(compiled.poll(200, TimeUnit.MILLISECONDS), nullValue());
+  }
+
+  @Test
+  public void changedSourceIsRecompiled() throws Exception {
+    nextCompiled();
+    Files.writeString(directory.resolve("b.sm"), "Initial: I FSM: b {I E I -}");
+    Files.writeString(directory.resolve("notes.txt"), "still not a state machine");
+    assertThat(nextCompiled(), equalTo(Path.of("b.sm")));
+  }
+
+  @Test
+  public void watchingContinuesAfterAFileFailsToCompile() throws Exception {
+    nextCompiled();
+    Files.writeString(directory.resolve("bad.sm"), "Initial: I FSM: bad {I E I -}");
+    assertThat(nextCompiled(), equalTo(Path.of("bad.sm")));
+    Files.writeString(directory.resolve("b.sm"), "Initial: I FSM: b {I E I -}");
+    assertThat(nextCompiled(), equalTo(Path.of("b.sm")));
+    assertThat(output.toString(), containsString("Could not compile bad.sm: java.io.IOException: cannot write output"));
+  }
+
+  @Test
+  public void deletedSourceIsEvicted() throws Exception {
+    nextCompiled();
+    assertThat(cache.size(), equalTo(1));
+    Files.delete(directory.resolve("a.sm"));
+    long deadline = System.currentTimeMillis() + 10000;
+    while (cache.size() != 0 && System.currentTimeMillis() < deadline)
+      Thread.sleep(10);
+    assertThat(cache.size(), equalTo(0));
+  }
+}
@@ -0,0 +1,95 @@
+package smc.binary;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smc.DenseStateMachine;
+import smc.MachineCache;
+import smc.OptimizedStateMachine;
+import smc.optimizer.Optimizer;
+import smc.semanticAnalyzer.SemanticAnalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class StateMachineBinaryTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final String TURNSTILE = """
+    Initial: Locked FSM: Turnstile Actions: TurnstileActions
+    {
+      (Base) Reset Locked {alarmOff lock}
+      Locked : Base { Coin Unlocked unlock  Pass Alarming alarmOn }
+      Unlocked : Base { Coin Unlocked thankyou  Pass Locked lock }
+      Alarming : Base { }
+    }""";
+
+  private OptimizedStateMachine optimize(String source) {
+    return new Optimizer().optimize(new SemanticAnalyzer().analyze(MachineCache.parse(source)));
+  }
+
+  @Test
+  public void denseTableSharesActionSequences() throws Exception {
+    DenseStateMachine sm = DenseStateMachine.of(optimize(TURNSTILE));
+    int locked = sm.states.indexOf("Locked");
+    int unlocked = sm.states.indexOf("Unlocked");
+    int alarming = sm.states.indexOf("Alarming");
+    int reset = sm.events.indexOf("Reset");
+    int coin = sm.events.indexOf("Coin");
+    assertThat(sm.nextState(alarming, coin), equalTo(DenseStateMachine.UNHANDLED));
+    assertThat(sm.nextState(unlocked, reset), equalTo(locked));
+    assertThat(sm.actionSequence(locked, reset), equalTo(sm.actionSequence(unlocked, reset)));
+    assertThat(sm.actionSequences.get(0).length, equalTo(0));
+  }
+
+  @Test
+  public void roundTripPreservesTheMachine() throws Exception {
+    OptimizedStateMachine original = optimize(TURNSTILE);
+    DenseStateMachine read = StateMachineReader.read(ByteBuffer.wrap(StateMachineWriter.write(DenseStateMachine.of(original))));
+    assertThat(read.fsm, equalTo("Turnstile"));
+    assertThat(read.actionsClass, equalTo("TurnstileActions"));
+    assertThat(read.states, equalTo(original.states));
+    assertThat(read.events, equalTo(original.events));
+    assertThat(read.actions, equalTo(original.actions));
+    assertThat(read.toOptimizedStateMachine().canonicalString(), equalTo(original.canonicalString()));
+  }
+
+  @Test
+  public void machineWithoutActionsClassRoundTrips() throws Exception {
+    DenseStateMachine read = StateMachineReader.read(ByteBuffer.wrap(StateMachineWriter.write(DenseStateMachine.of(optimize("Initial: I FSM: f {I E I -}")))));
+    assertThat(read.actionsClass, nullValue());
+    assertThat(read.nextState(0, 0), equalTo(0));
+  }
+
+  @Test
+  public void mappedFileIsReadInPlace() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("Turnstile.smb");
+    StateMachineWriter.write(DenseStateMachine.of(optimize(TURNSTILE)), path);
+    DenseStateMachine read = StateMachineReader.read(path);
+    assertThat(read.toOptimizedStateMachine().canonicalString(), equalTo(optimize(TURNSTILE).canonicalString()));
+  }
+
+  @Test
+  public void cellsAreAViewOfTheBuffer() throws Exception {
+    byte[] bytes = StateMachineWriter.write(DenseStateMachine.of(optimize("Initial: I FSM: f {I E I -}")));
+    DenseStateMachine read = StateMachineReader.read(ByteBuffer.wrap(bytes));
+    bytes[bytes.length - 5] = 7;
+    assertThat(read.nextState(0, 0), equalTo(7));
+  }
+
+  @Test(expected = StateMachineReader.FormatException.class)
+  public void corruptionIsDetectedByChecksum() throws Exception {
+    byte[] bytes = StateMachineWriter.write(DenseStateMachine.of(optimize(TURNSTILE)));
+    bytes[30] ^= 1;
+    StateMachineReader.read(ByteBuffer.wrap(bytes));
+  }
+
+  @Test(expected = StateMachineReader.FormatException.class)
+  public void otherFilesAreRejected() throws Exception {
+    StateMachineReader.read(ByteBuffer.wrap("Initial: I FSM: f {I E I -}".getBytes()));
+  }
+}
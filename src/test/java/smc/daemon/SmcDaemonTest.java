@@ -0,0 +1,85 @@
+package smc.daemon;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SmcDaemonTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private SmcDaemon daemon;
+  private Path workingDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+    workingDirectory = folder.getRoot().toPath();
+    Files.writeString(workingDirectory.resolve("turnstile.sm"),
+      "Initial: Locked FSM: Turnstile {Locked Coin Unlocked unlock Unlocked Pass Locked lock}");
+    daemon = new SmcDaemon(0);
+    Thread server = new Thread(() -> {
+      try {
+        daemon.serve();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    server.setDaemon(true);
+    server.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    daemon.close();
+  }
+
+  private CompileResponse compile(String... args) throws Exception {
+    return SmcClient.send(daemon.getPort(), new CompileRequest(workingDirectory.toString(), args));
+  }
+
+  @Test
+  public void compilesRelativeToClientWorkingDirectory() throws Exception {
+    CompileResponse response = compile("-l", "Java", "turnstile.sm");
+    Path generated = workingDirectory.resolve("Turnstile.java");
+    assertThat(response.diagnostics, containsString("Compiled with 0 syntax errors."));
+    assertThat(response.writtenFiles, contains(generated.toString()));
+    assertThat(Files.readString(generated), startsWith("public abstract class Turnstile {"));
+  }
+
+  @Test
+  public void repeatedRequestsShareCachedMachine() throws Exception {
+    compile("turnstile.sm");
+    compile("-l", "PlantUml", "turnstile.sm");
+    assertThat(daemon.getCache().size(), equalTo(1));
+    assertThat(Files.exists(workingDirectory.resolve("Turnstile.puml")), is(true));
+  }
+
+  @Test
+  public void machinesWithSemanticErrorsAreReportedButNotGenerated() throws Exception {
+    Files.writeString(workingDirectory.resolve("broken.sm"), "Initial: Locked\nFSM: Broken\n{Locked Coin Nowhere unlock}");
+    CompileResponse response = compile("-l", "Java", "broken.sm");
+    assertThat(response.diagnostics, containsString("Semantic Error: UNDEFINED_STATE(Nowhere)"));
+    assertThat(response.writtenFiles, empty());
+  }
+
+  @Test
+  public void implementationErrorsAreReportedToTheClient() throws Exception {
+    CompileResponse response = compile("-l", "C", "turnstile.sm");
+    assertThat(response.diagnostics, containsString("Implementation error: NO_ACTION"));
+    assertThat(response.writtenFiles, empty());
+  }
+
+  @Test
+  public void usageErrorsAreReportedToTheClient() throws Exception {
+    CompileResponse response = compile("-x", "turnstile.sm");
+    assertThat(response.diagnostics, startsWith("usage: "));
+    assertThat(response.writtenFiles, empty());
+  }
+}
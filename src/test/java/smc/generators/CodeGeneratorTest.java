@@ -0,0 +1,161 @@
+package smc.generators;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smc.MachineCache;
+import smc.OptimizedStateMachine;
+import smc.optimizer.Optimizer;
+import smc.semanticAnalyzer.SemanticAnalyzer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CodeGeneratorTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private static final FileTime LONG_AGO = FileTime.fromMillis(0);
+  private Path outputDirectory;
+  private Path fingerprintDirectory;
+  private Path generatedFile;
+
+  @Before
+  public void setUp() throws Exception {
+    outputDirectory = folder.newFolder("out").toPath();
+    fingerprintDirectory = folder.getRoot().toPath().resolve("cache/fingerprints");
+    generatedFile = outputDirectory.resolve("f.java");
+  }
+
+  private void generate(String source) throws Exception {
+    OptimizedStateMachine sm = new Optimizer().optimize(new SemanticAnalyzer().analyze(MachineCache.parse(source)));
+    JavaCodeGenerator generator = new JavaCodeGenerator(sm, outputDirectory.toString(), new HashMap<>());
+    generator.setFingerprintDirectory(fingerprintDirectory);
+    generator.generate();
+  }
+
+  private JavaCodeGenerator generate(String source, String... flagPairs) throws Exception {
+    OptimizedStateMachine sm = new Optimizer().optimize(new SemanticAnalyzer().analyze(MachineCache.parse(source)));
+    Map<String, String> flags = new HashMap<>();
+    for (int i = 0; i < flagPairs.length; i += 2)
+      flags.put(flagPairs[i], flagPairs[i + 1]);
+    JavaCodeGenerator generator = new JavaCodeGenerator(sm, outputDirectory.toString(), flags);
+    generator.generate();
+    return generator;
+  }
+
+  private void generateAndAge(String source) throws Exception {
+    generate(source);
+    Files.setLastModifiedTime(generatedFile, LONG_AGO);
+  }
+
+  @Test
+  public void identicalOutputIsNotRewritten() throws Exception {
+    generateAndAge("Initial: i FSM: f {i e1 s a1 s e2 i a2}");
+    generate("Initial: i FSM: f {i e1 s a1 s e2 i a2}");
+    assertThat(Files.getLastModifiedTime(generatedFile), equalTo(LONG_AGO));
+  }
+
+  @Test
+  public void commentOnlyEditIsNotRewritten() throws Exception {
+    generateAndAge("Initial: i FSM: f {i e1 s a1 s e2 i a2}");
+    generate("Initial: i FSM: f {i e1 s a1 // a comment\n s e2 i a2}");
+    assertThat(Files.getLastModifiedTime(generatedFile), equalTo(LONG_AGO));
+  }
+
+  @Test
+  public void reorderedButEquivalentMachineIsNotRewritten() throws Exception {
+    generateAndAge("Initial: i FSM: f {i e1 s a1 s e2 i a2}");
+    String original = Files.readString(generatedFile);
+    generate("Initial: i FSM: f {s e2 i a2 i e1 s a1}");
+    assertThat(Files.getLastModifiedTime(generatedFile), equalTo(LONG_AGO));
+    assertThat(Files.readString(generatedFile), equalTo(original));
+  }
+
+  @Test
+  public void changedMachineIsRewritten() throws Exception {
+    generateAndAge("Initial: i FSM: f {i e1 s a1 s e2 i a2}");
+    generate("Initial: i FSM: f {i e1 s a1 s e2 i a3}");
+    assertThat(Files.getLastModifiedTime(generatedFile), not(equalTo(LONG_AGO)));
+    assertThat(Files.readString(generatedFile), containsString("a3();"));
+  }
+
+  @Test
+  public void fingerprintsAreKeptOutOfTheOutputDirectory() throws Exception {
+    generate("Initial: i FSM: f {i e1 s a1 s e2 i a2}");
+    try (Stream<Path> files = Files.list(outputDirectory)) {
+      assertThat(files.toList(), contains(generatedFile));
+    }
+    try (Stream<Path> fingerprints = Files.list(fingerprintDirectory)) {
+      assertThat(fingerprints.count(), is(1L));
+    }
+  }
+
+  @Test
+  public void withoutAFingerprintDirectoryOnlyIdenticalOutputIsKept() throws Exception {
+    OptimizedStateMachine sm = new Optimizer().optimize(new SemanticAnalyzer().analyze(MachineCache.parse("Initial: i FSM: f {i e1 s a1 s e2 i a2}")));
+    new JavaCodeGenerator(sm, outputDirectory.toString(), new HashMap<>()).generate();
+    Files.setLastModifiedTime(generatedFile, LONG_AGO);
+    new JavaCodeGenerator(sm, outputDirectory.toString(), new HashMap<>()).generate();
+
+    assertThat(Files.getLastModifiedTime(generatedFile), equalTo(LONG_AGO));
+    assertThat(Files.exists(fingerprintDirectory), is(false));
+    try (Stream<Path> files = Files.list(outputDirectory)) {
+      assertThat(files.toList(), contains(generatedFile));
+    }
+  }
+
+  @Test
+  public void ignoredRegionDispatchIsReported() throws Exception {
+    JavaCodeGenerator generator = generate(
+      "FSM: f Region: r Initial: a {a e b - b e a -} Region: s Initial: c {c e d - d e c -}",
+      "regions", "dispatch", "javaDispatch", "int");
+    assertThat(generator.getWarnings(), contains(
+      "-f regions:dispatch is ignored with javaDispatch:int; f is generated as its product machine."));
+  }
+
+  @Test
+  public void tooLargeProductNamesTheFlagsThatPreventRegionDispatch() throws Exception {
+    StringBuilder source = new StringBuilder("FSM: f");
+    for (String region : List.of("r", "s")) {
+      source.append(String.format(" Region: %s Initial: %s0 {", region, region));
+      for (int i = 0; i < 65; i++)
+        source.append(String.format(" %s%d %sNext %s%d -", region, i, region, region, (i + 1) % 65));
+      source.append("}");
+    }
+    try {
+      generate(source.toString(), "regions", "dispatch", "metrics", "counters");
+      fail();
+    } catch (CodeGenerator.GenerationException e) {
+      assertThat(e.getMessage(), equalTo(
+        "The product of the regions of f is too large, and -f regions:dispatch cannot be combined with metrics:counters."));
+    }
+  }
+
+  @Test
+  public void statesTooLargeForAClassFileAreReported() throws Exception {
+    StringBuilder source = new StringBuilder("Initial: S0 FSM: f {");
+    for (int state = 0; state < 2; state++) {
+      source.append(String.format(" S%d {", state));
+      for (int event = 0; event < 5000; event++)
+        source.append(String.format(" E%d S%d {a%d b}", event, 1 - state, event));
+      source.append(" }");
+    }
+    OptimizedStateMachine sm = new Optimizer().optimize(new SemanticAnalyzer().analyze(MachineCache.parse(source.append(" }").toString())));
+    try {
+      new JavaClassCodeGenerator(sm, outputDirectory.toString(), new HashMap<>()).generate();
+      fail();
+    } catch (CodeGenerator.GenerationException e) {
+      assertThat(e.getMessage(), startsWith("f cannot be generated as a class file: Method handleEventInS"));
+    }
+  }
+}
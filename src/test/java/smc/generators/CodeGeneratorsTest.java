@@ -0,0 +1,31 @@
+package smc.generators;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static smc.generators.CodeGeneratorProvider.Input.OPTIMIZED;
+import static smc.generators.CodeGeneratorProvider.Input.SEMANTIC;
+
+public class CodeGeneratorsTest {
+  @Test
+  public void builtInLanguagesAreRegistered() throws Exception {
+    assertThat(CodeGenerators.providers().keySet(), hasItems("C", "Cpp", "Java", "JavaClass", "JavaStatePattern", "JavaTable", "Mermaid", "PlantUml"));
+  }
+
+  @Test
+  public void providersDeclareTheirInputs() throws Exception {
+    assertThat(CodeGenerators.find("Java").inputs(), contains(OPTIMIZED));
+    assertThat(CodeGenerators.find("PlantUml").inputs(), containsInAnyOrder(OPTIMIZED, SEMANTIC));
+  }
+
+  @Test
+  public void providersAreLoadedOnce() throws Exception {
+    assertThat(CodeGenerators.find("Java"), sameInstance(CodeGenerators.find("Java")));
+  }
+
+  @Test
+  public void unknownLanguageHasNoProvider() throws Exception {
+    assertThat(CodeGenerators.find("Cobol"), nullValue());
+  }
+}
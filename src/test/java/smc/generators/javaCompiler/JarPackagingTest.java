@@ -0,0 +1,152 @@
+package smc.generators.javaCompiler;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smc.MachineCache;
+import smc.OptimizedStateMachine;
+import smc.generators.CodeGenerator;
+import smc.generators.JavaCodeGenerator;
+import smc.optimizer.Optimizer;
+import smc.semanticAnalyzer.SemanticAnalyzer;
+
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class JarPackagingTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private static final FileTime LONG_AGO = FileTime.fromMillis(0);
+  private Path outputDirectory;
+  private Path jar;
+
+  @Before
+  public void setUp() throws Exception {
+    outputDirectory = folder.getRoot().toPath();
+    jar = outputDirectory.resolve("fsm.jar");
+  }
+
+  private void generate(String source, String... flagPairs) throws Exception {
+    generator(source, flagPairs).generate();
+  }
+
+  private JavaCodeGenerator generator(String source, String... flagPairs) {
+    OptimizedStateMachine sm = new Optimizer().optimize(new SemanticAnalyzer().analyze(MachineCache.parse(source)));
+    Map<String, String> flags = new HashMap<>();
+    flags.put("jar", "fsm.jar");
+    for (int i = 0; i < flagPairs.length; i += 2)
+      flags.put(flagPairs[i], flagPairs[i + 1]);
+    return new JavaCodeGenerator(sm, outputDirectory.toString(), flags);
+  }
+
+  private List<String> entries() throws Exception {
+    try (JarFile jarFile = new JarFile(jar.toFile())) {
+      List<String> names = new ArrayList<>();
+      for (ZipEntry entry : Collections.list(jarFile.entries()))
+        if (!entry.isDirectory())
+          names.add(entry.getName());
+      return names;
+    }
+  }
+
+  @Test
+  public void classesAreCompiledStraightIntoTheJar() throws Exception {
+    generate("Initial: i FSM: f {i e i a}", "package", "p.q");
+
+    assertThat(entries(), hasItems("p/q/f.class", "p/q/f$State.class", "p/q/f$Event.class"));
+    try (Stream<Path> files = Files.list(outputDirectory)) {
+      assertThat(files.map(file -> file.getFileName().toString()).toList(), contains("fsm.jar"));
+    }
+    try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toUri().toURL()})) {
+      Class<?> fsm = loader.loadClass("p.q.f");
+      assertThat(Modifier.isAbstract(fsm.getModifiers()), is(true));
+      assertThat(fsm.getMethod("e"), notNullValue());
+    }
+  }
+
+  @Test
+  public void sourcesAreIncludedOnRequest() throws Exception {
+    generate("Initial: i FSM: f {i e i a}", "package", "p", "jarSources", "true");
+
+    assertThat(entries(), hasItem("p/f.java"));
+  }
+
+  @Test
+  public void machinesShareOneJar() throws Exception {
+    generate("Initial: i FSM: f {i e i a}");
+    generate("Initial: i FSM: g {i e i a}");
+
+    assertThat(entries(), hasItems("f.class", "g.class"));
+  }
+
+  @Test
+  public void entriesTheMachineNoLongerHasAreRemoved() throws Exception {
+    generate("Initial: i FSM: f {i e i a}", "jarSources", "true");
+    generate("Initial: i FSM: g {i e i a}");
+    generate("Initial: i FSM: f {i e i a}", "javaDispatch", "int");
+
+    assertThat(entries(), hasItem("f.class"));
+    assertThat(entries(), not(hasItem("f$State.class")));
+    assertThat(entries(), not(hasItem("f.java")));
+    assertThat(entries(), hasItems("g.class", "g$State.class"));
+  }
+
+  @Test
+  public void unchangedJarIsNotRewritten() throws Exception {
+    generate("Initial: i FSM: f {i e i a}");
+    Files.setLastModifiedTime(jar, LONG_AGO);
+    generate("Initial: i FSM: f {i e i a}");
+
+    assertThat(Files.getLastModifiedTime(jar), equalTo(LONG_AGO));
+  }
+
+  @Test(expected = CodeGenerator.GenerationException.class)
+  public void missingActionsInterfaceIsReported() throws Exception {
+    generate("Actions: NoSuchActions Initial: i FSM: f {i e i a}");
+  }
+
+  @Test
+  public void batchedMachinesAreWrittenWhenTheBatchIs() throws Exception {
+    JarBatch batch = new JarBatch();
+    for (String source : List.of("Initial: i FSM: f {i e i a}", "Initial: i FSM: g {i e i a}")) {
+      JavaCodeGenerator generator = generator(source);
+      generator.setJarBatch(batch);
+      generator.generate();
+      assertThat(generator.getWrittenFiles(), is(empty()));
+    }
+    assertThat(Files.exists(jar), is(false));
+
+    List<String> failures = new ArrayList<>();
+    assertThat(batch.write(failures), contains(jar));
+    assertThat(failures, is(empty()));
+    assertThat(entries(), hasItems("f.class", "f$State.class", "g.class", "g$State.class"));
+  }
+
+  @Test
+  public void aMachineThatDoesNotCompileLeavesTheRestOfTheBatchAlone() throws Exception {
+    JarBatch batch = new JarBatch();
+    for (String source : List.of("Actions: NoSuchActions Initial: i FSM: f {i e i a}", "Initial: i FSM: g {i e i a}")) {
+      JavaCodeGenerator generator = generator(source);
+      generator.setJarBatch(batch);
+      generator.generate();
+    }
+
+    List<String> failures = new ArrayList<>();
+    assertThat(batch.write(failures), contains(jar));
+    assertThat(failures, contains(startsWith("Generated code for f did not compile:")));
+    assertThat(entries(), hasItem("g.class"));
+    assertThat(entries(), not(hasItem("f.class")));
+  }
+}
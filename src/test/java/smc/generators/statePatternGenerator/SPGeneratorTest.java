@@ -0,0 +1,86 @@
+package smc.generators.statePatternGenerator;
+
+import org.junit.Before;
+import org.junit.Test;
+import smc.OptimizedStateMachine;
+import smc.lexer.Lexer;
+import smc.optimizer.Optimizer;
+import smc.parser.Parser;
+import smc.parser.SyntaxBuilder;
+import smc.semanticAnalyzer.SemanticAnalyzer;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static smc.generators.statePatternGenerator.SPNode.*;
+import static smc.parser.ParserEvent.EOF;
+
+public class SPGeneratorTest {
+  private Lexer lexer;
+  private Parser parser;
+  private SyntaxBuilder builder;
+  private String output = "";
+
+  @Before
+  public void setUp() throws Exception {
+    builder = new SyntaxBuilder();
+    parser = new Parser(builder);
+    lexer = new Lexer(parser);
+  }
+
+  private void assertGenerated(String stt, String expected) {
+    lexer.lex("Initial: I FSM:f Actions:acts " + stt);
+    parser.handleEvent(EOF, -1, -1);
+    OptimizedStateMachine sm = new Optimizer().optimize(new SemanticAnalyzer().analyze(builder.getFsm()));
+    new SPGenerator().generate(sm).accept(new TestVisitor());
+    assertThat(output, equalTo(expected));
+  }
+
+  private class TestVisitor implements SPNodeVisitor {
+    public void visit(FSMClassNode fsmClassNode) {
+      output += String.format("%s:%s ", fsmClassNode.className, fsmClassNode.initialState);
+      fsmClassNode.delegators.accept(this);
+      fsmClassNode.stateInterface.accept(this);
+      for (StateClassNode stateClass : fsmClassNode.stateClasses)
+        stateClass.accept(this);
+    }
+
+    public void visit(EventDelegatorsNode eventDelegatorsNode) {
+      output += String.format("delegators %s ", eventDelegatorsNode.events);
+    }
+
+    public void visit(StateInterfaceNode stateInterfaceNode) {
+      output += String.format("%s %s", stateInterfaceNode.className, stateInterfaceNode.events);
+    }
+
+    public void visit(StateClassNode stateClassNode) {
+      output += String.format(" %s(%s) {", stateClassNode.className, stateClassNode.stateName);
+      stateClassNode.generateEventMethods(this);
+      output += "}";
+    }
+
+    public void visit(EventMethodNode eventMethodNode) {
+      output += String.format("%s->%s%s", eventMethodNode.event, eventMethodNode.nextStateClass, eventMethodNode.actions);
+    }
+  }
+
+  @Test
+  public void oneTransition() throws Exception {
+    assertGenerated(
+      "{I e I a}",
+      "f:IState delegators [e] State [e] IState(I) {e->IState[a]}");
+  }
+
+  @Test
+  public void unhandledEventsHaveNoMethods() throws Exception {
+    assertGenerated(
+      "{I e1 S a1 S e2 I {a2 a3}}",
+      "f:IState delegators [e1, e2] State [e1, e2] IState(I) {e1->SState[a1]} SState(S) {e2->IState[a2, a3]}");
+  }
+
+  @Test
+  public void superStateTransitionsAreInheritedBySubStates() throws Exception {
+    assertGenerated(
+      "{(B) reset I - I : B e I a}",
+      "f:IState delegators [reset, e] State [reset, e] IState(I) {e->IState[a]reset->IState[]}");
+  }
+}
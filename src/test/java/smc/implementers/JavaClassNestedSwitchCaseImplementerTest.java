@@ -0,0 +1,210 @@
+package smc.implementers;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smc.MachineCache;
+import smc.OptimizedStateMachine;
+import smc.generators.nestedSwitchCaseGenerator.NSCGenerator;
+import smc.optimizer.Optimizer;
+import smc.semanticAnalyzer.SemanticAnalyzer;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+// The bytecode backend is checked against the Java source backend: both are
+// subclassed by the same logging implementation, driven with the same events,
+// and must log the same actions and unhandled transitions.
+
+public class JavaClassNestedSwitchCaseImplementerTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private Path root;
+
+  @Before
+  public void setUp() throws Exception {
+    root = folder.getRoot().toPath();
+  }
+
+  private OptimizedStateMachine produceStateMachine(String fsmSyntax) {
+    return new Optimizer().optimize(new SemanticAnalyzer().analyze(MachineCache.parse(fsmSyntax)));
+  }
+
+  private byte[] generateClass(OptimizedStateMachine sm, Map<String, String> flags) {
+    JavaClassNestedSwitchCaseImplementer implementer = new JavaClassNestedSwitchCaseImplementer(flags);
+    new NSCGenerator().generate(sm).accept(implementer);
+    return implementer.getOutput();
+  }
+
+  private String generateSource(OptimizedStateMachine sm, Map<String, String> flags) {
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(flags);
+    new NSCGenerator().generate(sm).accept(implementer);
+    return implementer.getOutput();
+  }
+
+  @Test
+  public void generatedClassLoadsAndHasTheSameShapeAsTheSource() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine("Initial: I FSM: fsm {I E I A}");
+    Class<?> fsm = load(sm, Map.of(), "fsm", generateClass(sm, Map.of()));
+
+    assertThat(Modifier.isAbstract(fsm.getModifiers()), is(true));
+    assertThat(Modifier.isPublic(fsm.getMethod("E").getModifiers()), is(true));
+    assertThat(Modifier.isAbstract(fsm.getDeclaredMethod("A").getModifiers()), is(true));
+    assertThat(Modifier.isProtected(fsm.getDeclaredMethod("A").getModifiers()), is(true));
+    assertThat(Modifier.isAbstract(fsm.getMethod("unhandledTransition", String.class, String.class).getModifiers()), is(true));
+  }
+
+  @Test
+  public void twoCoinTurnstileWithPackageAndActionsBehavesLikeTheSource() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine("""
+      Actions: Turnstile
+      FSM: TwoCoinTurnstile
+      Initial: Locked
+      {
+        (Base) Reset Locked lock
+        Locked : Base {
+          Pass Alarming -
+          Coin FirstCoin -
+        }
+        Alarming : Base <alarmOn >alarmOff - - -
+        FirstCoin : Base {
+          Pass Alarming -
+          Coin Unlocked unlock
+        }
+        Unlocked : Base {
+          Pass Locked lock
+          Coin - thankyou
+        }
+      }""");
+    Map<String, String> flags = Map.of("package", "turnstile");
+
+    assertSameBehaviour(sm, flags, Map.of());
+  }
+
+  @Test
+  public void eventsRaisedByActionsBehaveLikeTheSource() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine("""
+      Initial: idle
+      FSM: Reentrant
+      {
+        idle start checking -
+        checking <check >checked {
+          auto running -
+          manual waiting prompt
+        }
+        running {
+          stop idle halt
+          auto - -
+        }
+        waiting stop idle -
+      }""");
+    Map<String, String> actionBodies = Map.of(
+      "check", "if (auto = !auto) auto(); else manual();");
+
+    assertSameBehaviour(sm, Map.of(), actionBodies);
+  }
+
+  @Test
+  public void largeMachinesAreSplitIntoOneMethodPerState() throws Exception {
+    StringBuilder source = new StringBuilder("Initial: S0\nFSM: Large\n{\n");
+    for (int state = 0; state < 120; state++) {
+      source.append(String.format("S%d {\n", state));
+      for (int event = 0; event < 40; event++)
+        source.append(String.format("E%d S%d {a%d b%d}\n", event, (state + event + 1) % 120, event, state % 5));
+      source.append("}\n");
+    }
+    OptimizedStateMachine sm = produceStateMachine(source.append("}\n").toString());
+    Class<?> fromClass = load(sm, Map.of(), "Large", generateClass(sm, Map.of()), Map.of());
+    Class<?> fromSource = load(sm, Map.of(), "Large", null, Map.of());
+
+    assertThat(fromClass.getSuperclass().getDeclaredMethod("handleEventInS119", int.class), notNullValue());
+    assertThat(drive(fromClass, sm.events), equalTo(drive(fromSource, sm.events)));
+  }
+
+  private void assertSameBehaviour(OptimizedStateMachine sm, Map<String, String> flags, Map<String, String> actionBodies) throws Exception {
+    String className = sm.header.fsm;
+    String qualifiedName = flags.containsKey("package") ? flags.get("package") + "." + className : className;
+    Class<?> fromClass = load(sm, flags, qualifiedName, generateClass(sm, flags), actionBodies);
+    Class<?> fromSource = load(sm, flags, qualifiedName, null, actionBodies);
+
+    String classLog = drive(fromClass, sm.events);
+    String sourceLog = drive(fromSource, sm.events);
+
+    assertThat(classLog, containsString("U("));
+    assertThat(classLog, equalTo(sourceLog));
+  }
+
+  private String drive(Class<?> implementation, List<String> events) throws Exception {
+    Object fsm = implementation.getConstructor().newInstance();
+    Random random = new Random(42);
+    for (int i = 0; i < 500; i++)
+      implementation.getMethod(events.get(random.nextInt(events.size()))).invoke(fsm);
+    return implementation.getField("log").get(fsm).toString();
+  }
+
+  private Class<?> load(OptimizedStateMachine sm, Map<String, String> flags, String qualifiedName, byte[] classBytes) throws Exception {
+    return load(sm, flags, qualifiedName, classBytes, Map.of()).getSuperclass();
+  }
+
+  // Compiles a logging subclass, and the Actions interface if there is one,
+  // against either the generated class file or the generated source.
+  private Class<?> load(OptimizedStateMachine sm, Map<String, String> flags, String qualifiedName,
+                        byte[] classBytes, Map<String, String> actionBodies) throws Exception {
+    Path directory = Files.createTempDirectory(root, classBytes == null ? "source" : "class");
+    Path packageDirectory = Files.createDirectories(directory.resolve(qualifiedName.replace('.', '/')).getParent());
+    String packageLine = flags.containsKey("package") ? "package " + flags.get("package") + ";\n" : "";
+    List<Path> sources = new ArrayList<>();
+
+    if (classBytes == null) {
+      sources.add(packageDirectory.resolve(sm.header.fsm + ".java"));
+      Files.writeString(sources.get(0), generateSource(sm, flags));
+    } else
+      Files.write(packageDirectory.resolve(sm.header.fsm + ".class"), classBytes);
+
+    String actionModifier = "protected";
+    if (sm.header.actions != null) {
+      actionModifier = "public";
+      StringBuilder actionsInterface = new StringBuilder(packageLine + "public interface " + sm.header.actions + " {\n");
+      for (String action : sm.actions)
+        actionsInterface.append("void ").append(action).append("();\n");
+      sources.add(write(packageDirectory.resolve(sm.header.actions + ".java"), actionsInterface.append("}\n").toString()));
+    }
+
+    StringBuilder implementation = new StringBuilder(packageLine)
+      .append("public class Impl extends ").append(sm.header.fsm).append(" {\n")
+      .append("public final StringBuilder log = new StringBuilder();\n")
+      .append("private boolean auto;\n")
+      .append("public void unhandledTransition(String state, String event) {log.append(\"U(\" + state + \",\" + event + \")\");}\n");
+    for (String action : sm.actions)
+      implementation.append(String.format("%s void %s() {log.append(\"%s;\"); %s}\n",
+        actionModifier, action, action, actionBodies.getOrDefault(action, "")));
+    sources.add(write(packageDirectory.resolve("Impl.java"), implementation.append("}\n").toString()));
+
+    compile(directory, sources);
+    URLClassLoader loader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, getClass().getClassLoader());
+    return loader.loadClass(qualifiedName.replace(sm.header.fsm, "Impl"));
+  }
+
+  private Path write(Path path, String content) throws Exception {
+    Files.writeString(path, content);
+    return path;
+  }
+
+  private void compile(Path directory, List<Path> sources) {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    List<String> arguments = new ArrayList<>(List.of("-classpath", directory.toString(), "-d", directory.toString()));
+    for (Path source : sources)
+      arguments.add(source.toString());
+    assertThat(compiler.run(null, null, null, arguments.toArray(new String[0])), is(0));
+  }
+}
@@ -1,7 +1,9 @@
 package smc.implementers;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import smc.OptimizedStateMachine;
 import smc.generators.nestedSwitchCaseGenerator.NSCGenerator;
 import smc.generators.nestedSwitchCaseGenerator.NSCNode;
@@ -12,15 +14,20 @@ import smc.parser.SyntaxBuilder;
 import smc.semanticAnalyzer.SemanticAnalyzer;
 import smc.semanticAnalyzer.SemanticStateMachine;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.*;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static smc.implementers.LoggingMachine.*;
 import static smc.Utilities.compressWhiteSpace;
 import static smc.parser.ParserEvent.EOF;
 
 public class JavaNestedSwitchCaseImplementerTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
   private Lexer lexer;
   private Parser parser;
   private SyntaxBuilder builder;
@@ -119,4 +126,667 @@ public class JavaNestedSwitchCaseImplementerTest {
     assertThat(output, containsString("protected abstract void A();\n"));
   }
 
+  private static final String DEVICE = """
+    FSM: Device
+    Region: Power
+    Initial: Off
+    {
+      Off Toggle On turnOn
+      On {
+        Toggle Off turnOff
+        Open - beep
+      }
+    }
+    Region: Door
+    Initial: Closed
+    {
+      Closed Open Opened light
+      Opened {
+        Close Closed dark
+        Toggle - -
+      }
+    }""";
+
+  @Test
+  public void regionDispatcherKeepsOneStatePerRegion() throws Exception {
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(emptyFlags);
+    generator.generateRegionDispatcher(produceStateMachine(DEVICE)).accept(implementer);
+    String output = implementer.getOutput();
+
+    assertThat(output, containsString("private PowerState powerState = PowerState.Off;\n"));
+    assertThat(output, containsString("private void setDoorState(DoorState s) {doorState = s;}\n"));
+    assertThat(output, containsString("" +
+      "private void handleEvent(Event event) {\n" +
+      "boolean handled = false;\n" +
+      "handled |= handlePowerEvent(event);\n" +
+      "handled |= handleDoorEvent(event);\n" +
+      "if (!handled) unhandledTransition(powerState.name() + \"_\" + doorState.name(), event.name());\n" +
+      "}\n"));
+    assertThat(output, containsString("" +
+      "case Closed:\n" +
+      "switch(event) {\n" +
+      "case Open:\n" +
+      "setDoorState(DoorState.Opened);\n" +
+      "light();\n" +
+      "return true;\n" +
+      "}\n" +
+      "break;\n"));
+    assertThat(output, not(containsString("State state")));
+  }
+
+  @Test
+  public void regionDispatcherBehavesLikeTheProductMachine() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(DEVICE);
+    JavaNestedSwitchCaseImplementer dispatcher = new JavaNestedSwitchCaseImplementer(emptyFlags);
+    new NSCGenerator().generateRegionDispatcher(sm).accept(dispatcher);
+
+    String log = drive(sm, dispatcher.getOutput());
+    assertThat(log, containsString("U("));
+    assertThat(log, equalTo(simulate(sm, randomEvents(sm.events, 200))));
+  }
+
+  @Test
+  public void intDispatchUsesConstantsAndOneCombinedSwitch() throws Exception {
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(Map.of("javaDispatch", "int"));
+    OptimizedStateMachine sm = produceStateMachine("""
+            Initial: I
+            Fsm: fsm
+            Actions: acts
+            {  I E I A}""");
+    generator.generate(sm).accept(implementer);
+    assertWhitespaceEquivalent(implementer.getOutput(), """
+            public abstract class fsm implements acts {
+              public abstract void unhandledTransition(String state, String event);
+              public static final int STATE_I = 0;
+              public static final int NUMBER_OF_STATES = 1;
+              private static final String[] NAMES_OF_STATES = {"I"};
+              public static final int EVENT_E = 0;
+              public static final int NUMBER_OF_EVENTS = 1;
+              private static final String[] NAMES_OF_EVENTS = {"E"};
+              private int state = STATE_I;
+              public int getState() {return state;}
+              private void setState(int s) {state = s;}
+              public void E() {handleEvent(EVENT_E);}
+              public void handleEvent(int event) {
+                if (event < 0 || event >= NUMBER_OF_EVENTS) throw new IllegalArgumentException("No event " + event);
+                switch(state * NUMBER_OF_EVENTS + event) {
+                  case STATE_I * NUMBER_OF_EVENTS + EVENT_E:
+                    setState(STATE_I);
+                    A();
+                    break;
+                  default: unhandledTransition(NAMES_OF_STATES[state], NAMES_OF_EVENTS[event]); break;
+                }
+              }
+            }
+            """);
+  }
+
+  @Test
+  public void intDispatchBehavesLikeTheStateMachine() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(DEVICE);
+    JavaNestedSwitchCaseImplementer ints = new JavaNestedSwitchCaseImplementer(Map.of("javaDispatch", "int"));
+    new NSCGenerator().generate(sm).accept(ints);
+
+    assertBehavesLikeTheStateMachine(sm, ints.getOutput());
+  }
+
+  @Test
+  public void statesAndEventsNamedCountOrNamesDoNotClashWithGeneratedConstants() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine("""
+            FSM: Clash
+            Initial: NAMES
+            {
+              NAMES COUNT COUNT tick
+              COUNT NAMES NAMES -
+            }""");
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(Map.of("javaDispatch", "int"));
+    new NSCGenerator().generate(sm).accept(implementer);
+
+    assertBehavesLikeTheStateMachine(sm, implementer.getOutput());
+  }
+
+  @Test
+  public void largeIntDispatchMachinesAreSplitByState() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(ring("Many", 600, 2));
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(Map.of("javaDispatch", "int"));
+    generator.generate(sm).accept(implementer);
+    String output = implementer.getOutput();
+
+    assertThat(output, containsString("switch(state / 256) {\n"));
+    String state = sm.states.get(0);
+    assertThat(output, containsString(String.format("case STATE_%s: handleEventIn%s(event); break;\n", state, state)));
+    assertThat(output, containsString(String.format("private void handleEventIn%s(int event) {\nswitch(event) {\ncase EVENT_E0:\n", state)));
+    assertBehavesLikeTheStateMachine(sm, output);
+  }
+
+  @Test
+  public void casThreadingCommitsTheTransitionBeforeTheActions() throws Exception {
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(Map.of("threading", "cas"));
+    OptimizedStateMachine sm = produceStateMachine("""
+            Initial: I
+            Fsm: fsm
+            Actions: acts
+            {  I E I A}""");
+    generator.generate(sm).accept(implementer);
+    String output = implementer.getOutput();
+
+    assertThat(output, containsString("private volatile int state = STATE_I;\n"));
+    assertThat(output, containsString("stateHandle = java.lang.invoke.MethodHandles.lookup().findVarHandle(fsm.class, \"state\", int.class);\n"));
+    assertThat(output, containsString("public int getState() {return state;}\n"));
+    assertWhitespaceEquivalent(output.substring(output.indexOf("public void handleEvent")), """
+            public void handleEvent(int event) {
+              if (event < 0 || event >= NUMBER_OF_EVENTS) throw new IllegalArgumentException("No event " + event);
+              while (!handleEvent(state, event));
+            }
+            private boolean handleEvent(int current, int event) {
+              switch(current * NUMBER_OF_EVENTS + event) {
+                case STATE_I * NUMBER_OF_EVENTS + EVENT_E:
+                  if (!compareAndSetState(current, STATE_I)) return false;
+                  A();
+                  break;
+                default: unhandledTransition(NAMES_OF_STATES[current], NAMES_OF_EVENTS[event]); break;
+              }
+              return true;
+            }
+            }
+            """);
+  }
+
+  @Test
+  public void casThreadingLosesNoTransitionsBetweenThreads() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(ring("Counter", 7, 1));
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(Map.of("threading", "cas"));
+    generator.generate(sm).accept(implementer);
+    StringBuilder implementation = new StringBuilder("public class Impl extends Counter {\n")
+      .append("public final java.util.concurrent.atomic.AtomicInteger count = new java.util.concurrent.atomic.AtomicInteger();\n")
+      .append("public void unhandledTransition(String state, String event) {throw new IllegalStateException(state);}\n");
+    for (String action : sm.actions)
+      implementation.append(String.format("protected void %s() {%s}\n", action, action.equals("a0") ? "count.incrementAndGet();" : ""));
+    Path directory = folder.newFolder().toPath();
+    compile(directory, sm, implementer.getOutput(), implementation.append("}\n").toString());
+
+    int threadCount = 4;
+    int eventsPerThread = 50000;
+    try (URLClassLoader loader = loader(directory)) {
+      Class<?> impl = loader.loadClass("Impl");
+      Object fsm = impl.getConstructor().newInstance();
+      java.lang.reflect.Method e0 = impl.getMethod("E0");
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < threadCount; i++)
+        threads.add(new Thread(() -> {
+          try {
+            for (int j = 0; j < eventsPerThread; j++)
+              e0.invoke(fsm);
+          } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+          }
+        }));
+      threads.forEach(Thread::start);
+      for (Thread thread : threads)
+        thread.join();
+
+      int events = threadCount * eventsPerThread;
+      assertThat(impl.getField("count").get(fsm).toString(), equalTo(Integer.toString(events)));
+      int state = (int) impl.getMethod("getState").invoke(fsm);
+      assertThat(sm.states.get(state), equalTo("S" + events % 7));
+    }
+  }
+
+  @Test
+  public void largeCasMachinesAreSplitByState() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(ring("Many", 600, 2));
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(Map.of("threading", "cas"));
+    generator.generate(sm).accept(implementer);
+    String output = implementer.getOutput();
+
+    assertThat(output, containsString("switch(current / 256) {\ncase 0: return handleEventInStateGroup0(current, event);\n"));
+    assertBehavesLikeTheStateMachine(sm, output);
+  }
+
+  @Test
+  public void queuedReentrancyBehavesLikeTheStateMachineWithoutReentrantEvents() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(DEVICE);
+    JavaNestedSwitchCaseImplementer queued = new JavaNestedSwitchCaseImplementer(Map.of("reentrancy", "queue"));
+    new NSCGenerator().generate(sm).accept(queued);
+
+    assertBehavesLikeTheStateMachine(sm, queued.getOutput());
+  }
+
+  @Test
+  public void mailboxThreadingSendsEventsThroughTheMailbox() throws Exception {
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(Map.of("threading", "mailbox", "mailboxCapacity", "8"));
+    OptimizedStateMachine sm = produceStateMachine("""
+            Initial: I
+            Fsm: fsm
+            Actions: acts
+            {  I E I A}""");
+    generator.generate(sm).accept(implementer);
+    String output = implementer.getOutput();
+
+    assertThat(output, containsString("private volatile int state = STATE_I;\n"));
+    assertThat(output, containsString("private final smc.runtime.EventMailbox mailbox = new smc.runtime.EventMailbox(8, this::dispatchEvent);\n"));
+    assertThat(output, containsString("" +
+      "mailbox.send(event);\n" +
+      "}\n" +
+      "private void dispatchEvent(int event) {\n" +
+      "switch(state * NUMBER_OF_EVENTS + event) {\n"));
+  }
+
+  @Test
+  public void mailboxThreadingBehavesLikeTheStateMachine() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(DEVICE);
+    JavaNestedSwitchCaseImplementer mailbox = new JavaNestedSwitchCaseImplementer(Map.of("threading", "mailbox"));
+    new NSCGenerator().generate(sm).accept(mailbox);
+
+    assertBehavesLikeTheStateMachine(sm, mailbox.getOutput());
+  }
+
+  @Test
+  public void queuedReentrancyDispatchesEventsSentByActionsAfterTheTransition() throws Exception {
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(Map.of("reentrancy", "queue", "eventQueueCapacity", "4", "eventQueueOverflow", "grow"));
+    OptimizedStateMachine sm = produceStateMachine("""
+            Initial: I
+            Fsm: fsm
+            Actions: acts
+            {  I E I A}""");
+    generator.generate(sm).accept(implementer);
+    String output = implementer.getOutput();
+
+    assertThat(output, containsString("private static final Event[] EVENTS = Event.values();\n"));
+    assertThat(output, containsString("private final smc.runtime.EventQueue eventQueue = new smc.runtime.EventQueue(4, smc.runtime.EventQueue.Overflow.GROW);\n"));
+    assertThat(output, containsString("" +
+      "private void handleEvent(Event event) {\n" +
+      "if (dispatching) {\n" +
+      "eventQueue.offer(event.ordinal());\n" +
+      "return;\n" +
+      "}\n"));
+    assertThat(output, containsString("private void dispatchEvent(Event event) {\n"));
+  }
+
+  private static final String MODE = """
+    Initial: Idle
+    FSM: Mode
+    {
+      Idle Start Determining check
+      Determining {
+        Auto Running auto
+        Manual Running manual
+      }
+      Running Start Running -
+    }""";
+
+  // The check action sends Auto while the machine is handling Start.
+  private String runReentrantMachine(Map<String, String> flags) throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(MODE);
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(flags);
+    new NSCGenerator().generate(sm).accept(implementer);
+    Path directory = folder.newFolder().toPath();
+    compile(directory, sm, implementer.getOutput(), """
+      public class Impl extends Mode {
+      public final StringBuilder log = new StringBuilder();
+      public void unhandledTransition(String state, String event) {log.append("U(" + state + "," + event + ")");}
+      protected void check() {log.append("check;"); Auto(); log.append("checked;");}
+      protected void auto() {log.append("auto;");}
+      protected void manual() {log.append("manual;");}
+      }
+      """);
+
+    try (URLClassLoader loader = loader(directory)) {
+      return replay(loader, List.of("Start", "Manual"));
+    }
+  }
+
+  @Test
+  public void eventsSentByActionsAreHandledRecursivelyByDefault() throws Exception {
+    assertThat(runReentrantMachine(emptyFlags), equalTo("check;auto;checked;U(Running,Manual)"));
+  }
+
+  @Test
+  public void queuedEventsRunToCompletion() throws Exception {
+    assertThat(runReentrantMachine(Map.of("reentrancy", "queue")), equalTo("check;checked;auto;U(Running,Manual)"));
+  }
+
+  @Test
+  public void queuedEventsRunToCompletionWithIntDispatch() throws Exception {
+    assertThat(runReentrantMachine(Map.of("reentrancy", "queue", "javaDispatch", "int")), equalTo("check;checked;auto;U(Running,Manual)"));
+  }
+
+  @Test
+  public void bulkEventsKeepTheStateInALocalVariable() throws Exception {
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(Map.of("bulkEvents", "true"));
+    OptimizedStateMachine sm = produceStateMachine("""
+            Initial: I
+            Fsm: fsm
+            Actions: acts
+            {  I E I A}""");
+    generator.generate(sm).accept(implementer);
+    String output = implementer.getOutput();
+
+    assertThat(output, containsString("public void handleEvents(int[] events, int offset, int length) {\n"));
+    assertThat(output, containsString("public void handleEvents(java.nio.ByteBuffer events) {\n"));
+    assertThat(output, containsString("" +
+      "int i = 0;\n" +
+      "int state = this.state;\n" +
+      "try {\n" +
+      "for (; i < length; i++) {\n" +
+      "int event = array != null ? array[offset + i] : buffer.get(offset + i) & 0xFF;\n"));
+    assertThat(output, containsString("" +
+      "case STATE_I * NUMBER_OF_EVENTS + EVENT_E:\n" +
+      "this.state = state = STATE_I;\n" +
+      "A();\n" +
+      "state = this.state;\n" +
+      "break;\n"));
+    assertThat(output, containsString("" +
+      "} finally {\n" +
+      "if (buffer != null) buffer.position(offset + i);\n" +
+      "}\n"));
+  }
+
+  @Test
+  public void bulkEventsBehaveLikeSingleEvents() throws Exception {
+    assertBulkEventsBehaveLikeSingleEvents(Map.of("bulkEvents", "true"));
+  }
+
+  // kick sends Next while the machine is handling Go.
+  @Test
+  public void eventsSentByActionsDuringBulkEventsSeeTheNewState() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine("""
+      Initial: Idle
+      FSM: Kicker
+      {
+        Idle Go Busy kick
+        Busy Next Idle -
+      }""");
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(Map.of("bulkEvents", "true"));
+    new NSCGenerator().generate(sm).accept(implementer);
+    Path directory = folder.newFolder().toPath();
+    compile(directory, sm, implementer.getOutput(), """
+      public class Impl extends Kicker {
+      public final StringBuilder log = new StringBuilder();
+      public void unhandledTransition(String state, String event) {log.append("U(" + state + "," + event + ")");}
+      protected void kick() {log.append("kick@" + getState() + ";"); Next();}
+      }
+      """);
+
+    try (URLClassLoader loader = loader(directory)) {
+      Class<?> impl = loader.loadClass("Impl");
+      Object single = impl.getConstructor().newInstance();
+      impl.getMethod("Go").invoke(single);
+      impl.getMethod("Go").invoke(single);
+      Object array = impl.getConstructor().newInstance();
+      int go = impl.getField("EVENT_Go").getInt(null);
+      impl.getMethod("handleEvents", int[].class, int.class, int.class).invoke(array, new int[]{go, go}, 0, 2);
+
+      assertThat(impl.getField("log").get(single).toString(), equalTo("kick@1;kick@1;"));
+      assertThat(impl.getField("log").get(array).toString(), equalTo("kick@1;kick@1;"));
+      assertThat(impl.getMethod("getState").invoke(array), equalTo(impl.getMethod("getState").invoke(single)));
+    }
+  }
+
+  @Test
+  public void queuedBulkEventsAreSentOneAtATime() throws Exception {
+    assertBulkEventsBehaveLikeSingleEvents(Map.of("bulkEvents", "true", "reentrancy", "queue"));
+  }
+
+  // Sends the same events to three instances: one at a time, as part of an
+  // int array, and as bytes in a ByteBuffer.
+  private void assertBulkEventsBehaveLikeSingleEvents(Map<String, String> flags) throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(DEVICE);
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(flags);
+    new NSCGenerator().generate(sm).accept(implementer);
+    Path directory = folder.newFolder().toPath();
+    compile(directory, sm, implementer.getOutput());
+
+    int count = 300;
+    Random random = new Random(42);
+    int[] events = new int[count + 5];
+    byte[] bytes = new byte[count];
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      events[i + 3] = random.nextInt(sm.events.size());
+      bytes[i] = (byte) events[i + 3];
+      names.add(sm.events.get(events[i + 3]));
+    }
+    try (URLClassLoader loader = loader(directory)) {
+      Class<?> impl = loader.loadClass("Impl");
+      Object single = impl.getConstructor().newInstance();
+      for (int i = 0; i < count; i++)
+        impl.getMethod("handleEvent", int.class).invoke(single, events[i + 3]);
+      Object array = impl.getConstructor().newInstance();
+      impl.getMethod("handleEvents", int[].class, int.class, int.class).invoke(array, events, 3, count);
+      Object buffer = impl.getConstructor().newInstance();
+      java.nio.ByteBuffer byteBuffer = java.nio.ByteBuffer.wrap(bytes);
+      impl.getMethod("handleEvents", java.nio.ByteBuffer.class).invoke(buffer, byteBuffer);
+
+      String expected = impl.getField("log").get(single).toString();
+      assertThat(expected, equalTo(simulate(sm, names)));
+      assertThat(impl.getField("log").get(array).toString(), equalTo(expected));
+      assertThat(impl.getField("log").get(buffer).toString(), equalTo(expected));
+      Object state = impl.getMethod("getState").invoke(single);
+      assertThat(impl.getMethod("getState").invoke(array), equalTo(state));
+      assertThat(impl.getMethod("getState").invoke(buffer), equalTo(state));
+      assertThat(byteBuffer.hasRemaining(), is(false));
+
+      java.nio.ByteBuffer badEvent = java.nio.ByteBuffer.wrap(new byte[]{0, (byte) 200, 0});
+      try {
+        impl.getMethod("handleEvents", java.nio.ByteBuffer.class).invoke(buffer, badEvent);
+        fail("expected IllegalArgumentException");
+      } catch (java.lang.reflect.InvocationTargetException e) {
+        assertThat(e.getCause(), instanceOf(IllegalArgumentException.class));
+      }
+      assertThat(badEvent.position(), is(1));
+    }
+  }
+
+  @Test
+  public void countersAreOnlyGeneratedWithTheMetricsFlag() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine("""
+            Initial: I
+            Fsm: fsm
+            {  I E I A}""");
+    JavaNestedSwitchCaseImplementer counted = new JavaNestedSwitchCaseImplementer(Map.of("metrics", "counters"));
+    new NSCGenerator().generate(sm).accept(counted);
+    JavaNestedSwitchCaseImplementer plain = new JavaNestedSwitchCaseImplementer(emptyFlags);
+    new NSCGenerator().generate(sm).accept(plain);
+
+    assertThat(counted.getOutput(), containsString("" +
+      "case E:\n" +
+      "setState(State.I);\n" +
+      "counters.transition(0, 0);\n" +
+      "A();\n"));
+    assertThat(counted.getOutput(), containsString("default: counters.unhandled(state.ordinal(), event.ordinal()); unhandledTransition(state.name(), event.name()); break;\n"));
+    assertThat(counted.getOutput(), containsString("" +
+      "private static final smc.runtime.TransitionCounters counters = smc.runtime.TransitionCounters.register(fsm.class,\n" +
+      "new String[]{\"I\"},\n" +
+      "new String[]{\"E\"},\n" +
+      "\"\\001\");\n"));
+    assertThat(plain.getOutput(), not(containsString("counters")));
+  }
+
+  @Test
+  public void countersCountEveryTransition() throws Exception {
+    assertCountersAddUp(Map.of("metrics", "counters"), loader -> {});
+  }
+
+  @Test
+  public void countersCountEveryTransitionWithBulkIntDispatch() throws Exception {
+    assertCountersAddUp(Map.of("metrics", "counters", "bulkEvents", "true"), loader -> {});
+  }
+
+  // Runs the check with the machine's class loader after the counters are
+  // checked.
+  private void assertCountersAddUp(Map<String, String> flags, LoaderCheck afterwards) throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(DEVICE);
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(flags);
+    new NSCGenerator().generate(sm).accept(implementer);
+    String log = drive(sm, implementer.getOutput(), loader -> {
+      smc.runtime.TransitionCounters counters = smc.runtime.TransitionCounters.of(loader.loadClass("Device"));
+      long taken = counters.getTransitions().values().stream().mapToLong(Long::longValue).sum();
+      long unhandled = counters.getUnhandledTransitions().values().stream().mapToLong(Long::longValue).sum();
+      long entries = counters.getStateEntries().values().stream().mapToLong(Long::longValue).sum();
+      assertThat(taken + unhandled, is(200L));
+      assertThat(entries, is(taken));
+      assertThat(counters.getTransitions().keySet(), hasItem("Off_Closed.Toggle"));
+      assertThat(counters.getUnhandledTransitions().keySet(), hasSize(greaterThan(0)));
+      afterwards.check(loader);
+    });
+    assertThat(log, containsString("U("));
+  }
+
+  @Test
+  public void latencyTimesTheActionsOfEachTransition() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine("""
+            Initial: I
+            Fsm: fsm
+            {  I E I {A B}}""");
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(Map.of("metrics", "latency"));
+    new NSCGenerator().generate(sm).accept(implementer);
+    String output = implementer.getOutput();
+
+    assertThat(output, containsString("" +
+      "case E:\n" +
+      "{\n" +
+      "setState(State.I);\n" +
+      "long start = System.nanoTime();\n" +
+      "A();\n" +
+      "B();\n" +
+      "latencies.record(0, System.nanoTime() - start);\n" +
+      "}\n" +
+      "break;\n"));
+    assertThat(output, containsString("private static final smc.runtime.TransitionLatencies latencies = smc.runtime.TransitionLatencies.register(fsm.class,\n"));
+    assertThat(output, not(containsString("counters")));
+  }
+
+  @Test
+  public void latencyIsRecordedForEveryTransitionTaken() throws Exception {
+    assertLatenciesMatchCounters(Map.of("metrics", "counters+latency"));
+  }
+
+  @Test
+  public void latencyIsRecordedForEveryTransitionTakenWithBulkIntDispatch() throws Exception {
+    assertLatenciesMatchCounters(Map.of("metrics", "counters+latency", "bulkEvents", "true"));
+  }
+
+  private void assertLatenciesMatchCounters(Map<String, String> flags) throws Exception {
+    assertCountersAddUp(flags, loader -> {
+      Class<?> device = loader.loadClass("Device");
+      assertThat(smc.runtime.TransitionLatencies.of(device).getCounts(), equalTo(smc.runtime.TransitionCounters.of(device).getTransitions()));
+    });
+  }
+
+  // A ring of states, each with the given number of events leading on to the
+  // next few states.
+  private static String ring(String name, int stateCount, int eventCount) {
+    StringBuilder source = new StringBuilder(String.format("Initial: S0\nFSM: %s\n{\n", name));
+    for (int state = 0; state < stateCount; state++) {
+      source.append(String.format("S%d {\n", state));
+      for (int event = 0; event < eventCount; event++)
+        source.append(String.format("E%d S%d {a%d b%d}\n", event, (state + event + 1) % stateCount, event, state % 5));
+      source.append("}\n");
+    }
+    return source.append("}\n").toString();
+  }
+
+  @Test
+  public void smallMachinesKeepASingleHandleEvent() throws Exception {
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(emptyFlags);
+    generator.generate(produceStateMachine(ring("Small", 10, 5))).accept(implementer);
+
+    assertThat(implementer.getOutput(), not(containsString("handleEventIn")));
+    assertThat(implementer.getWarnings(), is(empty()));
+  }
+
+  @Test
+  public void largeMachinesAreSplitIntoOneMethodPerState() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(ring("Large", 100, 10));
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(emptyFlags);
+    generator.generate(sm).accept(implementer);
+    String output = implementer.getOutput();
+
+    assertThat(output, containsString("" +
+      "private void handleEvent(Event event) {\n" +
+      "switch(state) {\n"));
+    assertThat(output, containsString("case S0: handleEventInS0(event); break;\n"));
+    assertThat(output, containsString("" +
+      "private void handleEventInS99(Event event) {\n" +
+      "switch(event) {\n" +
+      "case E0:\n" +
+      "setState(State.S0);\n"));
+    assertThat(implementer.getWarnings(), is(empty()));
+    assertBehavesLikeTheStateMachine(sm, output);
+  }
+
+  @Test
+  public void manyStatesAreDispatchedInGroupsByOrdinal() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(ring("Many", 600, 2));
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(emptyFlags);
+    generator.generate(sm).accept(implementer);
+    String output = implementer.getOutput();
+
+    assertThat(output, containsString("" +
+      "private void handleEvent(Event event) {\n" +
+      "switch(state.ordinal() / 256) {\n" +
+      "case 0: handleEventInStateGroup0(event); break;\n" +
+      "case 1: handleEventInStateGroup1(event); break;\n" +
+      "case 2: handleEventInStateGroup2(event); break;\n" +
+      "}\n" +
+      "}\n"));
+    String state = sm.states.get(512);
+    assertThat(output, containsString(String.format("" +
+      "private void handleEventInStateGroup2(Event event) {\n" +
+      "switch(state) {\n" +
+      "case %s: handleEventIn%s(event); break;\n", state, state)));
+    assertBehavesLikeTheStateMachine(sm, output);
+  }
+
+  @Test
+  public void statesTooLargeToCompileAreReported() throws Exception {
+    JavaNestedSwitchCaseImplementer implementer = new JavaNestedSwitchCaseImplementer(emptyFlags);
+    generator.generate(produceStateMachine(ring("Wide", 2, 400))).accept(implementer);
+
+    assertThat(implementer.getWarnings(), hasSize(2));
+    assertThat(implementer.getWarnings(), hasItem(startsWith("Wide.handleEventInS0 is about ")));
+    assertThat(implementer.getWarnings(), everyItem(endsWith("HotSpot will not compile methods over 8000 bytes.")));
+  }
+
+  @Test
+  public void largeRegionsAreSplitIntoOneMethodPerState() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(ring("Device", 60, 8)
+      .replace("Initial: S0\nFSM: Device\n", "FSM: Device\nRegion: Power\nInitial: S0\n") +
+      "Region: Door\nInitial: Closed\n{\nClosed E0 Opened light\nOpened E1 Closed dark\n}\n");
+    JavaNestedSwitchCaseImplementer dispatcher = new JavaNestedSwitchCaseImplementer(emptyFlags);
+    new NSCGenerator().generateRegionDispatcher(sm).accept(dispatcher);
+    String output = dispatcher.getOutput();
+
+    assertThat(output, containsString("case S0: return handlePowerEventInS0(event);\n"));
+    assertThat(output, containsString("" +
+      "private boolean handleDoorEvent(Event event) {\n" +
+      "switch(doorState) {\n"));
+    assertBehavesLikeTheStateMachine(sm, output);
+  }
+
+  // Compiles the generated machine with LoggingMachine's Impl and sends it the
+  // same random events every time.
+  private String drive(OptimizedStateMachine sm, String source) throws Exception {
+    return drive(sm, source, loader -> {});
+  }
+
+  private interface LoaderCheck {
+    void check(ClassLoader loader) throws Exception;
+  }
+
+  // Runs the check with the machine's class loader after the events are sent.
+  private String drive(OptimizedStateMachine sm, String source, LoaderCheck afterwards) throws Exception {
+    Path directory = folder.newFolder().toPath();
+    compile(directory, sm, source);
+    try (URLClassLoader loader = loader(directory)) {
+      String log = replay(loader, randomEvents(sm.events, 200));
+      afterwards.check(loader);
+      return log;
+    }
+  }
+
+  private void assertBehavesLikeTheStateMachine(OptimizedStateMachine sm, String source) throws Exception {
+    assertThat(drive(sm, source), equalTo(simulate(sm, randomEvents(sm.events, 200))));
+  }
 }
@@ -0,0 +1,151 @@
+package smc.implementers;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smc.OptimizedStateMachine;
+import smc.generators.statePatternGenerator.SPGenerator;
+import smc.lexer.Lexer;
+import smc.optimizer.Optimizer;
+import smc.parser.Parser;
+import smc.parser.SyntaxBuilder;
+import smc.semanticAnalyzer.SemanticAnalyzer;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static smc.implementers.LoggingMachine.*;
+import static smc.Utilities.compressWhiteSpace;
+import static smc.parser.ParserEvent.EOF;
+
+public class JavaStatePatternImplementerTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private Lexer lexer;
+  private Parser parser;
+  private SyntaxBuilder builder;
+  private final Map<String, String> emptyFlags = new HashMap<>();
+
+  @Before
+  public void setUp() throws Exception {
+    builder = new SyntaxBuilder();
+    parser = new Parser(builder);
+    lexer = new Lexer(parser);
+  }
+
+  private OptimizedStateMachine produceStateMachine(String fsmSyntax) {
+    lexer.lex(fsmSyntax);
+    parser.handleEvent(EOF, -1, -1);
+    return new Optimizer().optimize(new SemanticAnalyzer().analyze(builder.getFsm()));
+  }
+
+  private String implement(OptimizedStateMachine sm, Map<String, String> flags) {
+    JavaStatePatternImplementer implementer = new JavaStatePatternImplementer(flags);
+    new SPGenerator().generate(sm).accept(implementer);
+    return implementer.getOutput();
+  }
+
+  @Test
+  public void oneTransitionWithPackageAndActions() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine("""
+            Initial: I
+            Fsm: fsm
+            Actions: acts
+            {  I E I A}""");
+    assertThat(compressWhiteSpace(implement(sm, Map.of("package", "thePackage"))), equalTo(compressWhiteSpace("""
+            package thePackage;
+            public abstract class fsm implements acts {
+              public abstract void unhandledTransition(String state, String event);
+              private State state = IState.INSTANCE;
+              public void E() {state.E(this);}
+              private interface State {
+                String name();
+                default void E(fsm fsm) {fsm.unhandledTransition(name(), "E");}
+              }
+              private static final class IState implements State {
+                static final State INSTANCE = new IState();
+                public String name() {return "I";}
+                public void E(fsm fsm) {
+                  fsm.state = IState.INSTANCE;
+                  fsm.A();
+                }
+              }
+            }
+            """)));
+  }
+
+  @Test
+  public void actionsAreAbstractWithoutAnActionsInterface() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine("""
+            Initial: I
+            Fsm: fsm
+            {  I E I A}""");
+    String output = implement(sm, emptyFlags);
+
+    assertThat(output, startsWith("public abstract class fsm {\n"));
+    assertThat(output, endsWith("protected abstract void A();\n}\n"));
+  }
+
+  private static final String TURNSTILE = """
+    Initial: Locked
+    FSM: Turnstile
+    {
+      (Base) Reset Locked lock
+      Locked : Base {
+        Coin Unlocked {alarmOff unlock}
+        Pass Alarming alarmOn
+      }
+      Unlocked : Base {
+        Coin Unlocked thankyou
+        Pass Locked lock
+      }
+      Alarming : Base {
+        Reset Locked {alarmOff lock}
+      }
+    }""";
+
+  @Test
+  public void behavesLikeTheStateMachine() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(TURNSTILE);
+    List<String> events = randomEvents(sm.events, 300);
+
+    String expected = simulate(sm, events);
+    assertThat(expected, containsString("U(Alarming,Coin)"));
+    assertThat(drive(folder.newFolder().toPath(), sm, implement(sm, emptyFlags), events), equalTo(expected));
+  }
+
+  @Test
+  public void stateClassesAreLoadedWhenTheStateIsFirstEntered() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(TURNSTILE);
+    Path directory = folder.newFolder().toPath();
+    compile(directory, sm, implement(sm, emptyFlags));
+    List<String> loaded = new ArrayList<>();
+
+    try (URLClassLoader loader = new RecordingClassLoader(directory, loaded)) {
+      replay(loader, List.of("Pass"));
+    }
+    assertThat(loaded, hasItems("Turnstile$LockedState", "Turnstile$AlarmingState"));
+    assertThat(loaded, not(hasItem("Turnstile$UnlockedState")));
+  }
+
+  // Records the classes loaded from the generated code.
+  private static class RecordingClassLoader extends URLClassLoader {
+    private final List<String> loaded;
+
+    RecordingClassLoader(Path directory, List<String> loaded) throws Exception {
+      super(new URL[]{directory.toUri().toURL()});
+      this.loaded = loaded;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      loaded.add(name);
+      return super.findClass(name);
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package smc.implementers;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smc.DenseStateMachine;
+import smc.OptimizedStateMachine;
+import smc.lexer.Lexer;
+import smc.optimizer.Optimizer;
+import smc.parser.Parser;
+import smc.parser.SyntaxBuilder;
+import smc.semanticAnalyzer.SemanticAnalyzer;
+
+import java.util.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static smc.implementers.LoggingMachine.*;
+import static smc.parser.ParserEvent.EOF;
+
+public class JavaTableImplementerTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private Lexer lexer;
+  private Parser parser;
+  private SyntaxBuilder builder;
+  private final Map<String, String> emptyFlags = new HashMap<>();
+
+  @Before
+  public void setUp() throws Exception {
+    builder = new SyntaxBuilder();
+    parser = new Parser(builder);
+    lexer = new Lexer(parser);
+  }
+
+  private OptimizedStateMachine produceStateMachine(String fsmSyntax) {
+    lexer.lex(fsmSyntax);
+    parser.handleEvent(EOF, -1, -1);
+    return new Optimizer().optimize(new SemanticAnalyzer().analyze(builder.getFsm()));
+  }
+
+  private String implement(OptimizedStateMachine sm, Map<String, String> flags) {
+    JavaTableImplementer implementer = new JavaTableImplementer(flags);
+    implementer.implement(DenseStateMachine.of(sm));
+    return implementer.getOutput();
+  }
+
+  @Test
+  public void oneTransitionWithPackageAndActions() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine("""
+            Initial: I
+            Fsm: fsm
+            Actions: acts
+            {  I E I A}""");
+    String output = implement(sm, Map.of("package", "thePackage"));
+
+    assertThat(output, startsWith("" +
+      "package thePackage;\n" +
+      "public abstract class fsm implements acts {\n" +
+      "public abstract void unhandledTransition(String state, String event);\n"));
+    assertThat(output, containsString("private int state = 0;\n"));
+    assertThat(output, containsString("public void E() {handleEvent(0);}\n"));
+    assertThat(output, containsString("" +
+      "switch(sequence) {\n" +
+      "case 1:\n" +
+      "A();\n" +
+      "break;\n" +
+      "}\n"));
+    assertThat(output, not(containsString("abstract void A()")));
+  }
+
+  @Test
+  public void actionsAreAbstractWithoutAnActionsInterface() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine("""
+            Initial: I
+            Fsm: fsm
+            {  I E I A}""");
+    String output = implement(sm, emptyFlags);
+
+    assertThat(output, startsWith("public abstract class fsm {\n"));
+    assertThat(output, containsString("protected abstract void A();\n"));
+  }
+
+  @Test
+  public void tableEntriesAreEscapedForJavaSource() throws Exception {
+    assertThat(JavaTableImplementer.literals("a\0\n\"\\\u00e9"), equalTo("\"a\\000\\012\\042\\134\\u00e9\""));
+    assertThat(JavaTableImplementer.literals(""), equalTo("\"\""));
+    assertThat(JavaTableImplementer.literals("x".repeat(JavaTableImplementer.CHUNK_LENGTH + 1)).split(",\n"), arrayWithSize(2));
+  }
+
+  private static final String TURNSTILE = """
+    Initial: Locked
+    FSM: Turnstile
+    {
+      (Base) Reset Locked lock
+      Locked : Base {
+        Coin Unlocked {alarmOff unlock}
+        Pass Alarming alarmOn
+      }
+      Unlocked : Base {
+        Coin Unlocked thankyou
+        Pass Locked lock
+      }
+      Alarming : Base {
+        Reset Locked {alarmOff lock}
+      }
+    }""";
+
+  @Test
+  public void behavesLikeTheStateMachine() throws Exception {
+    OptimizedStateMachine sm = produceStateMachine(TURNSTILE);
+    List<String> events = randomEvents(sm.events, 300);
+
+    String expected = simulate(sm, events);
+    assertThat(expected, containsString("U(Alarming,Coin)"));
+    assertThat(drive(folder.newFolder().toPath(), sm, implement(sm, emptyFlags), events), equalTo(expected));
+  }
+
+  // Far too large for a nested switch in one method, and with enough distinct
+  // action sequences to split the sequence switch into groups.
+  @Test
+  public void largeMachinesCompileAndRun() throws Exception {
+    int stateCount = 2000;
+    int eventCount = 8;
+    StringBuilder source = new StringBuilder("Initial: S0\nFSM: Big\n{\n");
+    for (int state = 0; state < stateCount; state++) {
+      source.append(String.format("S%d {\n", state));
+      for (int event = 0; event < eventCount - 1; event++)
+        source.append(String.format("E%d S%d {a%d b%d}\n", event, (state * 7 + event + 1) % stateCount, (state + event) % 40, state % 37));
+      source.append("}\n");
+    }
+    OptimizedStateMachine sm = produceStateMachine(source.append("}\n").toString());
+    DenseStateMachine dense = DenseStateMachine.of(sm);
+    assertThat(dense.actionSequences.size(), greaterThan(JavaTableImplementer.SEQUENCE_GROUP));
+    List<String> events = randomEvents(sm.events, 2000);
+
+    assertThat(drive(folder.newFolder().toPath(), sm, implement(sm, emptyFlags), events), equalTo(simulate(dense, events)));
+  }
+}
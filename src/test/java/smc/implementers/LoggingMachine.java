@@ -0,0 +1,97 @@
+package smc.implementers;
+
+import smc.DenseStateMachine;
+import smc.OptimizedStateMachine;
+
+import javax.tools.ToolProvider;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+// Compiles the Java generated for a machine together with Impl, a subclass
+// that logs each action as "action;" and each unhandled transition as
+// "U(state,event)", and sends it events by name.  simulate gives the log the
+// machine should produce, from its transition table, without compiling
+// anything.
+
+class LoggingMachine {
+  static String implementation(OptimizedStateMachine sm) {
+    StringBuilder implementation = new StringBuilder("public class Impl extends " + sm.header.fsm + " {\n")
+      .append("public final StringBuilder log = new StringBuilder();\n")
+      .append("public void unhandledTransition(String state, String event) {log.append(\"U(\" + state + \",\" + event + \")\");}\n");
+    for (String action : sm.actions)
+      implementation.append(String.format("protected void %s() {log.append(\"%s;\");}\n", action, action));
+    return implementation.append("}\n").toString();
+  }
+
+  static void compile(Path directory, OptimizedStateMachine sm, String source) throws Exception {
+    compile(directory, sm, source, implementation(sm));
+  }
+
+  // smc.runtime is on the classpath, for the flags that need it.
+  static void compile(Path directory, OptimizedStateMachine sm, String source, String implementation) throws Exception {
+    Path machineSource = Files.writeString(directory.resolve(sm.header.fsm + ".java"), source);
+    Path implementationSource = Files.writeString(directory.resolve("Impl.java"), implementation);
+    int status = ToolProvider.getSystemJavaCompiler().run(null, null, null,
+      "-d", directory.toString(), "-classpath", System.getProperty("java.class.path"),
+      machineSource.toString(), implementationSource.toString());
+    assertThat(status, is(0));
+  }
+
+  static URLClassLoader loader(Path directory) throws Exception {
+    return new URLClassLoader(new URL[]{directory.toUri().toURL()});
+  }
+
+  static String drive(Path directory, OptimizedStateMachine sm, String source, List<String> events) throws Exception {
+    compile(directory, sm, source);
+    try (URLClassLoader loader = loader(directory)) {
+      return replay(loader, events);
+    }
+  }
+
+  // Sends the events to a new Impl and returns its log.
+  static String replay(ClassLoader loader, List<String> events) throws Exception {
+    Class<?> impl = loader.loadClass("Impl");
+    Object fsm = impl.getConstructor().newInstance();
+    for (String event : events)
+      impl.getMethod(event).invoke(fsm);
+    return impl.getField("log").get(fsm).toString();
+  }
+
+  // The same events every time for the same names.
+  static List<String> randomEvents(List<String> names, int count) {
+    Random random = new Random(42);
+    List<String> events = new ArrayList<>();
+    for (int i = 0; i < count; i++)
+      events.add(names.get(random.nextInt(names.size())));
+    return events;
+  }
+
+  static String simulate(OptimizedStateMachine sm, List<String> events) {
+    return simulate(DenseStateMachine.of(sm), events);
+  }
+
+  static String simulate(DenseStateMachine sm, List<String> events) {
+    StringBuilder log = new StringBuilder();
+    int state = sm.initialState;
+    for (String eventName : events) {
+      int event = sm.events.indexOf(eventName);
+      int next = sm.nextState(state, event);
+      if (next == DenseStateMachine.UNHANDLED) {
+        log.append("U(").append(sm.states.get(state)).append(",").append(eventName).append(")");
+        continue;
+      }
+      for (int action : sm.actions(state, event))
+        log.append(sm.actions.get(action)).append(";");
+      state = next;
+    }
+    return log.toString();
+  }
+}
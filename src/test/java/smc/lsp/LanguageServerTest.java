@@ -0,0 +1,207 @@
+package smc.lsp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class LanguageServerTest {
+  private static final String URI = "file:///turnstile.sm";
+  private static final String TURNSTILE = """
+    FSM: Turnstile
+    Initial: Locked
+    {
+      Locked {
+        Coin Unlocked unlock
+        Pass Locked alarm
+      }
+      Unlocked {
+        Coin Unlocked thankyou
+        Pass Locked lock
+      }
+    }
+    """;
+
+  private final StringBuilder input = new StringBuilder();
+  private int nextId = 1;
+
+  private void request(String method, Object params) {
+    send(Map.of("jsonrpc", "2.0", "id", nextId++, "method", method, "params", params));
+  }
+
+  private void notification(String method, Object params) {
+    send(Map.of("jsonrpc", "2.0", "method", method, "params", params));
+  }
+
+  private void send(Map<String, Object> message) {
+    String content = Json.write(message);
+    input.append(String.format("Content-Length: %d\r\n\r\n%s", content.getBytes(StandardCharsets.UTF_8).length, content));
+  }
+
+  private List<Map<String, Object>> run() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new LanguageServer(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)), output).serve();
+    List<Map<String, Object>> messages = new ArrayList<>();
+    for (String part : output.toString(StandardCharsets.UTF_8).split("Content-Length: \\d+\r\n\r\n"))
+      if (!part.isEmpty())
+        messages.add(map(Json.parse(part)));
+    return messages;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> map(Object value) {
+    return (Map<String, Object>) value;
+  }
+
+  private void open(String text) {
+    notification("textDocument/didOpen", Map.of("textDocument", Map.of("uri", URI, "languageId", "statelang", "version", 1, "text", text)));
+  }
+
+  private List<?> diagnostics(Map<String, Object> message) {
+    assertThat(message.get("method"), equalTo("textDocument/publishDiagnostics"));
+    return (List<?>) map(message.get("params")).get("diagnostics");
+  }
+
+  private Map<String, Object> position(int line, int character) {
+    return Map.of("line", line, "character", character);
+  }
+
+  @Test
+  public void initializeAdvertisesCapabilities() throws Exception {
+    request("initialize", Map.of());
+    request("shutdown", Map.of());
+    notification("exit", Map.of());
+
+    List<Map<String, Object>> messages = run();
+    Map<String, Object> capabilities = map(map(messages.get(0).get("result")).get("capabilities"));
+    assertThat(capabilities.get("textDocumentSync"), equalTo(2L));
+    assertThat(capabilities.get("definitionProvider"), equalTo(true));
+    assertThat(messages.get(1).get("id"), equalTo(2L));
+  }
+
+  @Test
+  public void publishesSyntaxErrorsWithTheirLines() throws Exception {
+    open(TURNSTILE.replace("Pass Locked lock", "Pass } lock"));
+
+    Map<String, Object> diagnostic = map(diagnostics(run().get(0)).get(0));
+    assertThat(map(map(diagnostic.get("range")).get("start")).get("line"), equalTo(9L));
+    assertThat(diagnostic.get("severity"), equalTo(1L));
+  }
+
+  @Test
+  public void publishesSemanticErrorsAtTheStateTheyMention() throws Exception {
+    open(TURNSTILE.replace("Pass Locked lock", "Pass Nowhere lock"));
+
+    Map<String, Object> diagnostic = map(diagnostics(run().get(0)).get(0));
+    assertThat((String) diagnostic.get("message"), containsString("UNDEFINED_STATE"));
+  }
+
+  @Test
+  public void incrementalEditsUpdateDiagnostics() throws Exception {
+    open(TURNSTILE.replace("Pass Locked lock", "Pass } lock"));
+    notification("textDocument/didChange", Map.of(
+      "textDocument", Map.of("uri", URI, "version", 2),
+      "contentChanges", List.of(Map.of(
+        "range", Map.of("start", position(9, 9), "end", position(9, 10)),
+        "text", "Locked"))));
+
+    List<Map<String, Object>> messages = run();
+    assertThat(diagnostics(messages.get(0)), hasSize(greaterThan(0)));
+    assertThat(diagnostics(messages.get(1)), is(empty()));
+  }
+
+  @Test
+  public void definitionFindsTheState() throws Exception {
+    open(TURNSTILE);
+    request("textDocument/definition", Map.of("textDocument", Map.of("uri", URI), "position", position(4, 12)));
+
+    Map<String, Object> location = map(run().get(1).get("result"));
+    assertThat(location.get("uri"), equalTo(URI));
+    assertThat(map(location.get("range")).get("start"), equalTo(Map.of("line", 7L, "character", 2L)));
+  }
+
+  @Test
+  public void unknownRequestsAreAnswered() throws Exception {
+    request("textDocument/hover", Map.of());
+
+    assertThat(map(run().get(0).get("error")).get("code"), equalTo(-32601L));
+  }
+
+  @Test
+  public void malformedJsonIsAnsweredWithAParseError() throws Exception {
+    String content = "{\"jsonrpc\": \"2.0\", \"id\": 1,";
+    input.append(String.format("Content-Length: %d\r\n\r\n%s", content.length(), content));
+    request("shutdown", Map.of());
+
+    List<Map<String, Object>> messages = run();
+    assertThat(messages, hasSize(2));
+    assertThat(messages.get(0).get("id"), nullValue());
+    assertThat(map(messages.get(0).get("error")).get("code"), equalTo(-32700L));
+    assertThat(messages.get(1).get("id"), equalTo(1L));
+  }
+
+  @Test
+  public void messagesWithoutAContentLengthAreAnsweredWithAParseError() throws Exception {
+    input.append("Content-Type: application/vscode-jsonrpc\r\n\r\n{\"jsonrpc\": \"2.0\", \"id\": 7, \"method\": \"shutdown\"}");
+    request("shutdown", Map.of());
+
+    List<Map<String, Object>> messages = run();
+    assertThat(messages, hasSize(2));
+    assertThat(map(messages.get(0).get("error")).get("code"), equalTo(-32700L));
+    assertThat(messages.get(1).get("id"), equalTo(1L));
+  }
+
+  @Test
+  public void malformedContentLengthsAreAnsweredWithAParseError() throws Exception {
+    input.append("Content-Length: twelve\r\n\r\n{\"jsonrpc\": \"2.0\", \"id\": 7, \"method\": \"shutdown\"}");
+    request("shutdown", Map.of());
+
+    List<Map<String, Object>> messages = run();
+    assertThat(messages, hasSize(2));
+    assertThat(map(messages.get(0).get("error")).get("code"), equalTo(-32700L));
+    assertThat(messages.get(1).get("id"), equalTo(1L));
+  }
+
+  @Test
+  public void requestsWithInvalidParamsAreAnsweredWithAnError() throws Exception {
+    open(TURNSTILE);
+    request("textDocument/definition", Map.of("textDocument", Map.of("uri", URI)));
+    request("shutdown", Map.of());
+
+    List<Map<String, Object>> messages = run();
+    assertThat(map(messages.get(1).get("error")).get("code"), equalTo(-32602L));
+    assertThat(messages.get(2).get("id"), equalTo(2L));
+  }
+
+  @Test
+  public void notificationsWithInvalidParamsAreLoggedAndSkipped() throws Exception {
+    open(TURNSTILE);
+    notification("textDocument/didChange", Map.of("textDocument", Map.of("uri", URI)));
+    request("shutdown", Map.of());
+
+    List<Map<String, Object>> messages = run();
+    assertThat(messages.get(1).get("method"), equalTo("window/logMessage"));
+    assertThat(messages.get(2).get("id"), equalTo(1L));
+  }
+
+  @Test
+  public void onlyChangedBlocksAreParsedAgain() throws Exception {
+    Document document = new Document(TURNSTILE);
+    assertThat(document.getParsedBlockCount(), is(3));
+
+    document.replace(0, 0, 0, 0, "// a comment\n");
+    document.analyze();
+    assertThat(document.getParsedBlockCount(), is(1));
+    assertThat(document.findDefinition("Unlocked").lineNumber, is(9));
+
+    document.replace(9, 9, 9, 17, "Locked");
+    document.analyze();
+    assertThat(document.getParsedBlockCount(), is(1));
+    assertThat(document.getSemanticStateMachine().errors, is(empty()));
+  }
+}
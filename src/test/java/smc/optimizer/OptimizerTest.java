@@ -87,6 +87,13 @@ public class OptimizerTest {
       assertThat(sm.actions, contains("a1", "a2"));
     }
 
+    @Test
+    public void eventsAndActionsKeepSourceOrder() throws Exception {
+      OptimizedStateMachine sm = produceStateMachineWithHeader("{i zz s {a9 a1} s <a5 aa i a0 s b s -}");
+      assertThat(sm.events, contains("zz", "aa", "b"));
+      assertThat(sm.actions, contains("a9", "a1", "a5", "a0"));
+    }
+
     @Test
     public void simpleStateMachine() throws Exception {
       assertOptimization(
@@ -386,6 +393,86 @@ public class OptimizerTest {
     }
   }// Super State Transitions
 
+  public class Regions {
+    private static final String DEVICE = """
+      FSM: Device
+      Region: Power
+      Initial: Off
+      {
+        Off Toggle On turnOn
+        On {
+          Toggle Off turnOff
+          Open - beep
+        }
+      }
+      Region: Door
+      Initial: Closed
+      {
+        Closed Open Opened light
+        Opened Close Closed dark
+      }""";
+
+    @Test
+    public void productOfReachableRegionStates() throws Exception {
+      OptimizedStateMachine sm = produceStateMachine(DEVICE);
+      assertThat(sm.header.initial, equalTo("Off_Closed"));
+      assertThat(sm.states, contains("Off_Closed", "On_Closed", "Off_Opened", "On_Opened"));
+      assertThat(sm.regions, hasSize(2));
+      assertThat(
+        compressWhiteSpace(sm.transitionsToString()),
+        equalTo(compressWhiteSpace("""
+          Off_Closed {
+            Toggle On_Closed {turnOn}
+            Open Off_Opened {light}
+          }
+          On_Closed {
+            Toggle Off_Closed {turnOff}
+            Open On_Opened {beep light}
+          }
+          Off_Opened {
+            Toggle On_Opened {turnOn}
+            Close Off_Closed {dark}
+          }
+          On_Opened {
+            Toggle Off_Opened {turnOff}
+            Open On_Opened {beep}
+            Close On_Closed {dark}
+          }
+          """)));
+    }
+
+    @Test
+    public void unreachableCombinationsAreLeftOut() throws Exception {
+      OptimizedStateMachine sm = produceStateMachine(
+        "FSM:f Region:r Initial:a {a e b - b e a -} Region:s Initial:c {c e d - d e c -}");
+      assertThat(sm.states, contains("a_c", "b_d"));
+      assertThat(RegionProduct.possibleStates(sm), equalTo(4L));
+    }
+
+    @Test
+    public void productStatesWithTheSameJoinedNameAreNumbered() throws Exception {
+      OptimizedStateMachine sm = produceStateMachine(
+        "FSM:f Region:r Initial:a_b {a_b e a - a e a_b -} Region:s Initial:c {c e b_c - b_c e c -}");
+      assertThat(sm.states, contains("a_b_c", "a_b_c_2"));
+      assertThat(sm.header.initial, equalTo("a_b_c"));
+    }
+
+    @Test
+    public void tooLargeProductIsNotBuilt() throws Exception {
+      StringBuilder source = new StringBuilder("FSM:f");
+      for (String region : new String[]{"r", "s"}) {
+        source.append(String.format(" Region:%s Initial:%s0 {", region, region));
+        for (int i = 0; i < 65; i++)
+          source.append(String.format(" %s%d %sNext %s%d -", region, i, region, region, (i + 1) % 65));
+        source.append("}");
+      }
+      OptimizedStateMachine sm = produceStateMachine(source.toString());
+      assertThat(sm.productOmitted, is(true));
+      assertThat(sm.transitions, is(empty()));
+      assertThat(sm.regions.get(1).states, hasSize(65));
+    }
+  }
+
   public class AcceptanceTests {
     @Test
     public void exitAndEntryActionsSuperState() throws Exception {
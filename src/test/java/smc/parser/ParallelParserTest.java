@@ -0,0 +1,59 @@
+package smc.parser;
+
+import org.junit.Test;
+import smc.MachineCache;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ParallelParserTest {
+  private String largeMachine(int states) {
+    StringBuilder source = new StringBuilder("FSM: big\nInitial: s0\n{\n");
+    for (int i = 0; i < states; i++) {
+      source.append(String.format("  s%d <enter%d {\n", i, i));
+      source.append(String.format("    next s%d {step%d log}\n", (i + 1) % states, i));
+      source.append(String.format("    back s%d -\n", (i + states - 1) % states));
+      source.append("  }\n");
+      source.append(String.format("  t%d e s%d a\n", i, i));
+    }
+    return source.append("}\n").toString();
+  }
+
+  @Test
+  public void chunksCoverTheSourceInOrder() throws Exception {
+    String source = largeMachine(100);
+    StringBuilder rejoined = new StringBuilder();
+    for (SourceBlocks.Block chunk : ParallelParser.chunks(SourceBlocks.split(source), 1000))
+      rejoined.append(chunk.text);
+
+    assertThat(ParallelParser.chunks(SourceBlocks.split(source), 1000).size(), greaterThan(5));
+    assertThat(rejoined.toString(), equalTo(source));
+  }
+
+  @Test
+  public void parsesLikeTheSequentialParser() throws Exception {
+    String source = largeMachine(2000);
+    FsmSyntax parallel = ParallelParser.parse(source, 4096);
+
+    assertThat(parallel.errors, is(empty()));
+    assertThat(parallel.logic, hasSize(4000));
+    assertThat(parallel.toString(), equalTo(MachineCache.parse(source).toString()));
+    assertThat(parallel.logic.get(3998).state.lineNumber, is(4 + 5 * 1999));
+  }
+
+  @Test
+  public void errorsInLateChunksKeepTheirLineNumbers() throws Exception {
+    String source = largeMachine(2000).replace("back s1500 -", "back } -");
+    FsmSyntax parallel = ParallelParser.parse(source, 4096);
+    FsmSyntax sequential = MachineCache.parse(source);
+
+    assertThat(parallel.errors, hasSize(greaterThan(0)));
+    assertThat(parallel.errors.get(0).toString(), equalTo(sequential.errors.get(0).toString()));
+    assertThat(parallel.errors.get(0).lineNumber, is(4 + 5 * 1501 + 2));
+  }
+
+  @Test
+  public void smallSourceIsOneChunk() throws Exception {
+    assertThat(ParallelParser.chunks(SourceBlocks.split(largeMachine(3)), 16 * 1024), hasSize(1));
+  }
+}
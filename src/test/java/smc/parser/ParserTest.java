@@ -224,6 +224,20 @@ public class ParserTest {
           "}\n" +
           ".\n");
     }
+
+    @Test
+    public void regions() throws Exception {
+      assertParseResult("FSM:f Region:r Initial:a {a e a -} Region:s Initial:b {b e b -}",
+        "" +
+          "FSM:f\n" +
+          "Region:r Initial:a\n" +
+          "Region:s Initial:b\n" +
+          "{\n" +
+          "  r.a e a {}\n" +
+          "  s.b e b {}\n" +
+          "}\n" +
+          ".\n");
+    }
   }
 
   public class AcceptanceTests {
@@ -0,0 +1,106 @@
+package smc.parser;
+
+import org.junit.Test;
+import smc.MachineCache;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SourceBlocksTest {
+  private FsmSyntax parseInBlocks(String source) {
+    List<FsmSyntax> fragments = new ArrayList<>();
+    for (SourceBlocks.Block block : SourceBlocks.split(source))
+      fragments.add(SourceBlocks.parse(block));
+    return SourceBlocks.merge(fragments);
+  }
+
+  private List<String> blockTexts(String source) {
+    List<String> texts = new ArrayList<>();
+    for (SourceBlocks.Block block : SourceBlocks.split(source))
+      texts.add(block.text);
+    return texts;
+  }
+
+  @Test
+  public void splitsAfterEachTransitionGroup() throws Exception {
+    String source = "FSM: f\nInitial: a\n{\n  a {\n    e b -\n  }\n  b {\n    e a -\n  }\n}\n";
+
+    assertThat(blockTexts(source), contains(
+      "FSM: f\nInitial: a\n{\n  a {\n    e b -\n  }\n",
+      "  b {\n    e a -\n  }\n",
+      "}\n"));
+  }
+
+  @Test
+  public void splitsAfterActionGroupOfSingleTransition() throws Exception {
+    assertThat(blockTexts("{\n  a e b {x y}\n  b e a -\n}\n"), hasSize(2));
+  }
+
+  @Test
+  public void doesNotSplitInsideStateModifiers() throws Exception {
+    assertThat(blockTexts("{\n  a <{x y}\n  e b -\n  b e a -\n}\n"), hasSize(1));
+  }
+
+  @Test
+  public void doesNotSplitWhenTheLineGoesOn() throws Exception {
+    assertThat(blockTexts("{\n  a {e b -} b e a -\n}\n"), hasSize(1));
+  }
+
+  @Test
+  public void ignoresBracesInComments() throws Exception {
+    assertThat(blockTexts("{\n  a e b - // {\n  b {e a -} // }\n  c e a -\n}\n"), hasSize(2));
+  }
+
+  @Test
+  public void blocksParseLikeTheWholeSource() throws Exception {
+    String ice = Files.readString(Paths.get("test_cases/Ice/ice.sm"));
+
+    assertThat(SourceBlocks.split(ice).size(), greaterThan(10));
+    assertThat(parseInBlocks(ice).toString(), equalTo(MachineCache.parse(ice).toString()));
+  }
+
+  @Test
+  public void transitionsKeepTheirRegionAcrossBlocks() throws Exception {
+    String source = "FSM: f\nRegion: r\nInitial: a\n{\n  a {\n    e b -\n  }\n  b {\n    e a -\n  }\n}\n" +
+      "Region: s\nInitial: c\n{\n  c {\n    e c -\n  }\n  d e c -\n}\n";
+    FsmSyntax fsm = parseInBlocks(source);
+
+    assertThat(SourceBlocks.split(source).size(), greaterThan(3));
+    assertThat(fsm.logic.get(1).region, equalTo("r"));
+    assertThat(fsm.logic.get(3).region, equalTo("s"));
+    assertThat(fsm.toString(), equalTo(MachineCache.parse(source).toString()));
+  }
+
+  @Test
+  public void errorsKeepTheirLineNumbers() throws Exception {
+    String source = "FSM: f\nInitial: a\n{\n  a {\n    e b -\n  }\n  b {\n    e a -\n  }\n  c {\n    e a } -\n  }\n}\n";
+    FsmSyntax fsm = parseInBlocks(source);
+
+    assertThat(fsm.errors, hasSize(greaterThan(0)));
+    assertThat(fsm.errors.get(0).toString(), equalTo(MachineCache.parse(source).errors.get(0).toString()));
+  }
+
+  @Test
+  public void statesRecordWhereTheyAreDefined() throws Exception {
+    FsmSyntax fsm = parseInBlocks("{\n  a {\n    e b -\n  }\n    b e a -\n}\n");
+
+    assertThat(fsm.logic.get(1).state.lineNumber, is(5));
+    assertThat(fsm.logic.get(1).state.position, is(4));
+  }
+
+  @Test
+  public void shiftingMovesStatesAndErrorsWithoutChangingTheFragment() throws Exception {
+    FsmSyntax fragment = SourceBlocks.parse(new SourceBlocks.Block("  a e b -\n  b e } -\n", 1, false, false));
+    FsmSyntax shifted = SourceBlocks.shift(fragment, 10);
+
+    assertThat(shifted.logic.get(0).state.lineNumber, is(11));
+    assertThat(shifted.errors.get(0).lineNumber, is(12));
+    assertThat(fragment.logic.get(0).state.lineNumber, is(1));
+    assertThat(fragment.errors.get(0).lineNumber, is(2));
+  }
+}
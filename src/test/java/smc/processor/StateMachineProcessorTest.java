@@ -0,0 +1,103 @@
+package smc.processor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.*;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class StateMachineProcessorTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private Path sourceDirectory;
+  private Path generatedDirectory;
+  private Path classDirectory;
+  private final StringWriter diagnostics = new StringWriter();
+
+  @Before
+  public void setUp() throws Exception {
+    Path root = folder.getRoot().toPath();
+    sourceDirectory = Files.createDirectories(root.resolve("src/turnstile"));
+    generatedDirectory = Files.createDirectories(root.resolve("generated"));
+    classDirectory = Files.createDirectories(root.resolve("classes"));
+    Files.writeString(sourceDirectory.resolve("TurnstileImpl.java"), """
+      package turnstile;
+      @smc.processor.StateMachine("turnstile.sm")
+      public class TurnstileImpl extends Turnstile {
+        public final StringBuilder log = new StringBuilder();
+        public void unhandledTransition(String state, String event) {log.append("U");}
+        protected void unlock() {log.append("u");}
+        protected void lock() {log.append("l");}
+      }
+      """);
+  }
+
+  private boolean compile() throws Exception {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+      List<String> options = List.of(
+        "-processor", StateMachineProcessor.class.getName(),
+        "-classpath", System.getProperty("java.class.path"),
+        "-sourcepath", sourceDirectory.getParent().toString(),
+        "-s", generatedDirectory.toString(),
+        "-d", classDirectory.toString());
+      Iterable<? extends JavaFileObject> sources = fileManager.getJavaFileObjects(sourceDirectory.resolve("TurnstileImpl.java").toFile());
+      return compiler.getTask(diagnostics, fileManager, null, options, null, sources).call();
+    }
+  }
+
+  @Test
+  public void generatesFsmClassInsideJavac() throws Exception {
+    Files.writeString(sourceDirectory.resolve("turnstile.sm"),
+      "Initial: Locked FSM: Turnstile {Locked Coin Unlocked unlock Unlocked Pass Locked lock}");
+    assertThat(diagnostics.toString(), compile(), is(true));
+    assertThat(Files.readString(generatedDirectory.resolve("turnstile/Turnstile.java")), startsWith("package turnstile;"));
+
+    try (URLClassLoader loader = new URLClassLoader(new URL[]{classDirectory.toUri().toURL()})) {
+      Object fsm = loader.loadClass("turnstile.TurnstileImpl").getConstructor().newInstance();
+      for (String event : List.of("Coin", "Pass", "Pass"))
+        fsm.getClass().getMethod(event).invoke(fsm);
+      assertThat(fsm.getClass().getField("log").get(fsm).toString(), equalTo("ulU"));
+    }
+  }
+
+  @Test
+  public void reportsStateMachineErrorsAsCompilerErrors() throws Exception {
+    Files.writeString(sourceDirectory.resolve("turnstile.sm"), "Initial: Locked FSM: Turnstile {Locked Coin Nowhere unlock}");
+    assertThat(compile(), is(false));
+    assertThat(diagnostics.toString(), containsString("UNDEFINED_STATE(Nowhere)"));
+  }
+
+  @Test
+  public void includedModulesAreFoundNextToTheSource() throws Exception {
+    Files.writeString(sourceDirectory.resolve("turnstile.sm"),
+      "Initial: Locked FSM: Turnstile Include: unlocked {Locked Coin Unlocked unlock}");
+    Files.writeString(sourceDirectory.resolve("unlocked.smi"), "{Unlocked Pass Locked lock}");
+    assertThat(diagnostics.toString(), compile(), is(true));
+
+    try (URLClassLoader loader = new URLClassLoader(new URL[]{classDirectory.toUri().toURL()})) {
+      Object fsm = loader.loadClass("turnstile.TurnstileImpl").getConstructor().newInstance();
+      for (String event : List.of("Coin", "Pass", "Pass"))
+        fsm.getClass().getMethod(event).invoke(fsm);
+      assertThat(fsm.getClass().getField("log").get(fsm).toString(), equalTo("ulU"));
+    }
+  }
+
+  @Test
+  public void missingModulesAreCompilerErrors() throws Exception {
+    Files.writeString(sourceDirectory.resolve("turnstile.sm"),
+      "Initial: Locked FSM: Turnstile Include: nowhere {Locked Coin Locked unlock}");
+    assertThat(compile(), is(false));
+    assertThat(diagnostics.toString(), containsString("Cannot read nowhere.smi"));
+  }
+}
@@ -0,0 +1,126 @@
+package smc.runtime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class EventMailboxTest {
+  private final List<String> log = new ArrayList<>();
+
+  @Test
+  public void capacityIsRoundedUpToAPowerOfTwo() throws Exception {
+    assertThat(new EventMailbox(1000, event -> {}).capacity(), is(1024));
+    assertThat(new EventMailbox(1, event -> {}).capacity(), is(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void capacityMustBePositive() throws Exception {
+    new EventMailbox(0, event -> {});
+  }
+
+  @Test
+  public void eventsAreDispatchedInOrder() throws Exception {
+    EventMailbox mailbox = new EventMailbox(4, event -> log.add("e" + event));
+    for (int i = 0; i < 10; i++)
+      mailbox.send(i);
+    assertThat(log, contains("e0", "e1", "e2", "e3", "e4", "e5", "e6", "e7", "e8", "e9"));
+    assertThat(mailbox.isEmpty(), is(true));
+  }
+
+  private EventMailbox mailbox;
+
+  @Test
+  public void eventsSentByAnActionRunAfterTheCurrentEvent() throws Exception {
+    mailbox = new EventMailbox(4, event -> {
+      log.add("start" + event);
+      if (event == 1)
+        mailbox.send(2);
+      log.add("end" + event);
+    });
+    mailbox.send(1);
+    assertThat(log, contains("start1", "end1", "start2", "end2"));
+  }
+
+  @Test
+  public void anActionCannotWaitForRoomInAFullMailbox() throws Exception {
+    mailbox = new EventMailbox(2, event -> {
+      if (event == 0)
+        for (int i = 1; i <= 3; i++)
+          mailbox.send(i);
+    });
+    try {
+      mailbox.send(0);
+      fail("expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), startsWith("Mailbox full"));
+    }
+
+    mailbox.send(4);
+    assertThat(mailbox.isEmpty(), is(true));
+  }
+
+  @Test
+  public void eventsBehindAFailingEventAreStillDispatched() throws Exception {
+    mailbox = new EventMailbox(4, event -> {
+      log.add("e" + event);
+      if (event == 1) {
+        mailbox.send(2);
+        mailbox.send(3);
+        throw new IllegalArgumentException("bad event");
+      }
+    });
+    try {
+      mailbox.send(1);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), equalTo("bad event"));
+    }
+
+    assertThat(log, contains("e1", "e2", "e3"));
+    assertThat(mailbox.isEmpty(), is(true));
+  }
+
+  @Test
+  public void eventsFromManyThreadsAreDispatchedOneAtATimeAndInOrderPerThread() throws Exception {
+    int threadCount = 4;
+    int eventsPerThread = 50000;
+    AtomicBoolean dispatching = new AtomicBoolean();
+    int[] lastEvent = new int[threadCount];
+    int[] dispatched = new int[1];
+    List<String> errors = new ArrayList<>();
+    Arrays.fill(lastEvent, -1);
+    mailbox = new EventMailbox(64, event -> {
+      if (!dispatching.compareAndSet(false, true))
+        errors.add("concurrent dispatch");
+      int thread = event / eventsPerThread;
+      if (event % eventsPerThread != lastEvent[thread] + 1)
+        errors.add("out of order: " + event);
+      lastEvent[thread] = event % eventsPerThread;
+      dispatched[0]++;
+      dispatching.set(false);
+    });
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      int first = t * eventsPerThread;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < eventsPerThread; i++)
+          mailbox.send(first + i);
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads)
+      thread.join();
+
+    assertThat(errors, is(empty()));
+    assertThat(dispatched[0], is(threadCount * eventsPerThread));
+    assertThat(mailbox.isEmpty(), is(true));
+  }
+}
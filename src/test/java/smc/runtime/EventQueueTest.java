@@ -0,0 +1,75 @@
+package smc.runtime;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class EventQueueTest {
+  @Test
+  public void emptyQueue() throws Exception {
+    EventQueue queue = new EventQueue(2, EventQueue.Overflow.THROW);
+    assertThat(queue.isEmpty(), is(true));
+    assertThat(queue.poll(), is(EventQueue.EMPTY));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void capacityMustBePositive() throws Exception {
+    new EventQueue(0, EventQueue.Overflow.THROW);
+  }
+
+  @Test
+  public void eventsComeOutInOrderAcrossTheEndOfTheBuffer() throws Exception {
+    EventQueue queue = new EventQueue(3, EventQueue.Overflow.THROW);
+    queue.offer(1);
+    queue.offer(2);
+    assertThat(queue.poll(), is(1));
+    queue.offer(3);
+    queue.offer(4);
+    assertThat(queue.size(), is(3));
+    assertThat(queue.poll(), is(2));
+    assertThat(queue.poll(), is(3));
+    assertThat(queue.poll(), is(4));
+    assertThat(queue.poll(), is(EventQueue.EMPTY));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void overflowCanThrow() throws Exception {
+    EventQueue queue = new EventQueue(1, EventQueue.Overflow.THROW);
+    queue.offer(1);
+    queue.offer(2);
+  }
+
+  @Test
+  public void overflowCanDropTheNewEvent() throws Exception {
+    EventQueue queue = new EventQueue(1, EventQueue.Overflow.DROP);
+    assertThat(queue.offer(1), is(true));
+    assertThat(queue.offer(2), is(false));
+    assertThat(queue.poll(), is(1));
+    assertThat(queue.poll(), is(EventQueue.EMPTY));
+  }
+
+  @Test
+  public void overflowCanGrowTheBuffer() throws Exception {
+    EventQueue queue = new EventQueue(2, EventQueue.Overflow.GROW);
+    queue.offer(1);
+    queue.offer(2);
+    assertThat(queue.poll(), is(1));
+    queue.offer(3);
+    queue.offer(4);
+    assertThat(queue.capacity(), is(4));
+    assertThat(queue.poll(), is(2));
+    assertThat(queue.poll(), is(3));
+    assertThat(queue.poll(), is(4));
+  }
+
+  @Test
+  public void clearEmptiesTheQueue() throws Exception {
+    EventQueue queue = new EventQueue(2, EventQueue.Overflow.THROW);
+    queue.offer(1);
+    queue.clear();
+    assertThat(queue.isEmpty(), is(true));
+    queue.offer(2);
+    assertThat(queue.poll(), is(2));
+  }
+}
@@ -0,0 +1,95 @@
+package smc.runtime;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class LatencyHistogramTest {
+  private final LatencyHistogram defaultHistogram = new LatencyHistogram();
+
+  @Test
+  public void smallDurationsAreExact() throws Exception {
+    for (long value = 0; value < 64; value++) {
+      assertThat(defaultHistogram.bucket(value), is((int) value));
+      assertThat(defaultHistogram.highestValue((int) value), is(value));
+    }
+  }
+
+  @Test
+  public void bucketsCoverEveryValueWithinThreePercent() throws Exception {
+    assertThat(defaultHistogram.buckets(), is(1024));
+    assertBucketsCoverEveryValueWithin(defaultHistogram, 0.032);
+    assertThat(defaultHistogram.highestValue(defaultHistogram.buckets() - 1), is(LatencyHistogram.MAX_VALUE));
+  }
+
+  @Test
+  public void rangeAndPrecisionCanBeLowered() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram((1L << 20) - 1, 3);
+    assertThat(histogram.buckets(), is(144));
+    assertBucketsCoverEveryValueWithin(histogram, 0.126);
+    histogram.record(Long.MAX_VALUE);
+    assertThat(histogram.snapshot().max(), is((1L << 20) - 1));
+  }
+
+  private void assertBucketsCoverEveryValueWithin(LatencyHistogram histogram, double precision) {
+    long lowest = 0;
+    for (int bucket = 0; bucket < histogram.buckets(); bucket++) {
+      long highest = histogram.highestValue(bucket);
+      assertThat(histogram.bucket(lowest), is(bucket));
+      assertThat(histogram.bucket(highest), is(bucket));
+      assertThat((double) (highest - lowest), lessThanOrEqualTo(highest * precision));
+      lowest = highest + 1;
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void precisionMustBeAtLeastOneBit() throws Exception {
+    new LatencyHistogram(1000, 0);
+  }
+
+  @Test
+  public void emptySnapshot() throws Exception {
+    LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+    assertThat(snapshot.count(), is(0L));
+    assertThat(snapshot.p50(), is(0L));
+    assertThat(snapshot.max(), is(0L));
+  }
+
+  @Test
+  public void percentiles() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long nanos = 1; nanos <= 1000; nanos++)
+      histogram.record(nanos * 1000);
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+    assertThat(snapshot.count(), is(1000L));
+    assertThat((double) snapshot.p50(), closeTo(500_000, 500_000 * 0.032));
+    assertThat((double) snapshot.p99(), closeTo(990_000, 990_000 * 0.032));
+    assertThat((double) snapshot.p999(), closeTo(999_000, 999_000 * 0.032));
+    assertThat((double) snapshot.max(), closeTo(1_000_000, 1_000_000 * 0.032));
+    assertThat(snapshot.percentile(100), is(snapshot.max()));
+  }
+
+  @Test
+  public void outOfRangeDurationsAreClamped() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+    assertThat(snapshot.percentile(50), is(0L));
+    assertThat(snapshot.max(), is(LatencyHistogram.MAX_VALUE));
+  }
+
+  @Test
+  public void snapshotAndResetStartsAnEmptyHistogram() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(100);
+    assertThat(histogram.snapshotAndReset().count(), is(1L));
+    assertThat(histogram.snapshot().count(), is(0L));
+    histogram.record(100);
+    histogram.reset();
+    assertThat(histogram.snapshot().count(), is(0L));
+  }
+}
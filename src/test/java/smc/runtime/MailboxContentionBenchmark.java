@@ -0,0 +1,75 @@
+package smc.runtime;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntConsumer;
+
+// Compares sending events to a small machine through an EventMailbox with
+// calling it through a synchronized wrapper, with the given number of
+// threads sending at once.  Run it with
+//   java -cp target/classes:target/test-classes smc.runtime.MailboxContentionBenchmark [threads] [eventsPerThread]
+
+public class MailboxContentionBenchmark {
+  private static final int STATES = 4;
+  private static final int EVENTS = 4;
+
+  // Stands in for a generated machine dispatching with javaDispatch:int.
+  private static class Machine {
+    int state = 0;
+    long actions = 0;
+
+    void handleEvent(int event) {
+      switch (state * EVENTS + event) {
+        case 0, 5, 10, 15 -> {
+          state = (state + 1) % STATES;
+          actions++;
+        }
+        case 3, 6, 9, 12 -> state = 0;
+        default -> actions += 2;
+      }
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    int eventsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+    for (int round = 0; round < 3; round++) {
+      Machine locked = new Machine();
+      report("synchronized", run(threads, eventsPerThread, event -> {
+        synchronized (locked) {
+          locked.handleEvent(event);
+        }
+      }), threads, eventsPerThread);
+      Machine queued = new Machine();
+      EventMailbox mailbox = new EventMailbox(EventMailbox.DEFAULT_CAPACITY, queued::handleEvent);
+      report("mailbox", run(threads, eventsPerThread, mailbox::send), threads, eventsPerThread);
+    }
+  }
+
+  private static long run(int threads, int eventsPerThread, IntConsumer send) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] senders = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      int seed = t;
+      senders[t] = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < eventsPerThread; i++)
+          send.accept((i + seed) % EVENTS);
+      });
+      senders[t].start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread sender : senders)
+      sender.join();
+    return System.nanoTime() - begin;
+  }
+
+  private static void report(String name, long nanos, int threads, int eventsPerThread) {
+    double eventsPerSecond = (double) threads * eventsPerThread / nanos * 1e9;
+    System.out.printf("%-12s %2d threads %,15.0f events/s%n", name, threads, eventsPerSecond);
+  }
+}
@@ -0,0 +1,81 @@
+package smc.runtime;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TransitionCountersTest {
+  private static final String[] STATES = {"Locked", "Unlocked"};
+  private static final String[] EVENTS = {"Coin", "Pass"};
+
+  // Locked.Coin is cell 0 and Unlocked.Pass is cell 3.
+  private static final String HANDLED = "\u0009";
+
+  @Test
+  public void everyTransitionIsListedEvenIfNeverTaken() throws Exception {
+    TransitionCounters counters = new TransitionCounters(STATES, EVENTS, HANDLED);
+    counters.transition(0, 1);
+    counters.transition(0, 1);
+
+    assertThat(counters.getTransitions(), equalTo(Map.of("Locked.Coin", 2L, "Unlocked.Pass", 0L)));
+    assertThat(counters.transitionCount(0, 0), is(2L));
+    assertThat(counters.getStateEntries(), equalTo(Map.of("Locked", 0L, "Unlocked", 2L)));
+    assertThat(counters.entryCount(1), is(2L));
+  }
+
+  @Test
+  public void onlyUnhandledTransitionsThatHappenedAreListed() throws Exception {
+    TransitionCounters counters = new TransitionCounters(STATES, EVENTS, HANDLED);
+    counters.unhandled(0, 1);
+
+    assertThat(counters.getUnhandledTransitions(), equalTo(Map.of("Locked.Pass", 1L)));
+    assertThat(counters.unhandledCount(0, 1), is(1L));
+  }
+
+  @Test
+  public void resetClearsEveryCounter() throws Exception {
+    TransitionCounters counters = new TransitionCounters(STATES, EVENTS, HANDLED);
+    counters.transition(3, 0);
+    counters.unhandled(1, 0);
+    counters.reset();
+
+    assertThat(counters.getTransitions().values(), everyItem(is(0L)));
+    assertThat(counters.getUnhandledTransitions().entrySet(), empty());
+    assertThat(counters.getStateEntries().values(), everyItem(is(0L)));
+  }
+
+  @Test
+  public void handledCellsMaySpanSeveralStrings() throws Exception {
+    String[] states = new String[17];
+    for (int i = 0; i < states.length; i++)
+      states[i] = "S" + i;
+    TransitionCounters counters = new TransitionCounters(states, new String[]{"E"}, "\u0001", "\u0001");
+
+    assertThat(counters.getTransitions().keySet(), contains("S0.E", "S16.E"));
+  }
+
+  private static class Registered {
+  }
+
+  @Test
+  public void registeredCountersArePublishedThroughJmx() throws Exception {
+    TransitionCounters counters = TransitionCounters.register(Registered.class, STATES, EVENTS, HANDLED);
+    counters.transition(0, 1);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    assertThat(TransitionCounters.of(Registered.class), sameInstance(counters));
+    TabularData transitions = (TabularData) server.getAttribute(TransitionCounters.objectName(Registered.class.getName()), "Transitions");
+    assertThat(transitions.get(new Object[]{"Locked.Coin"}).get("value"), equalTo(1L));
+
+    TransitionCounters replacement = TransitionCounters.register(Registered.class, STATES, EVENTS, HANDLED);
+    server.invoke(TransitionCounters.objectName(Registered.class.getName()), "reset", null, null);
+    assertThat(TransitionCounters.of(Registered.class), sameInstance(replacement));
+    assertThat(counters.transitionCount(0, 0), is(1L));
+  }
+}
@@ -0,0 +1,59 @@
+package smc.runtime;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class TransitionLatenciesTest {
+  private static final String[] STATES = {"Locked", "Unlocked"};
+  private static final String[] EVENTS = {"Coin", "Pass"};
+
+  // Locked.Coin is cell 0 and Unlocked.Pass is cell 3.
+  private static final String HANDLED = "\u0009";
+
+  @Test
+  public void durationsAreRecordedPerTransition() throws Exception {
+    TransitionLatencies latencies = new TransitionLatencies(STATES, EVENTS, HANDLED);
+    latencies.record(0, 10);
+    latencies.record(0, 20);
+
+    assertThat(latencies.snapshot(0, 0).count(), is(2L));
+    assertThat(latencies.snapshot(0, 0).max(), is(20L));
+    assertThat(latencies.getCounts(), equalTo(Map.of("Locked.Coin", 2L, "Unlocked.Pass", 0L)));
+    assertThat(latencies.getP50(), hasEntry("Locked.Coin", 10L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unhandledCellsHaveNoHistogram() throws Exception {
+    new TransitionLatencies(STATES, EVENTS, HANDLED).snapshot(0, 1);
+  }
+
+  @Test
+  public void snapshotAndResetEmptiesEveryHistogram() throws Exception {
+    TransitionLatencies latencies = new TransitionLatencies(STATES, EVENTS, HANDLED);
+    latencies.record(3, 10);
+
+    assertThat(latencies.snapshotAndReset().get("Unlocked.Pass").count(), is(1L));
+    assertThat(latencies.getCounts().values(), everyItem(is(0L)));
+  }
+
+  private static class Registered {
+  }
+
+  @Test
+  public void registeredLatenciesArePublishedThroughJmx() throws Exception {
+    TransitionLatencies latencies = TransitionLatencies.register(Registered.class, STATES, EVENTS, HANDLED);
+    latencies.record(0, 42);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    assertThat(TransitionLatencies.of(Registered.class), sameInstance(latencies));
+    TabularData p99 = (TabularData) server.getAttribute(TransitionLatencies.objectName(Registered.class.getName()), "P99");
+    assertThat(p99.get(new Object[]{"Locked.Coin"}).get("value"), equalTo(42L));
+  }
+}
@@ -496,6 +496,39 @@ public class SemanticAnalyzerTest {
     }
   } //Logic
 
+  public class Regions {
+    @Test
+    public void eachRegionIsAMachineOfItsOwn() throws Exception {
+      SemanticStateMachine sm = produceAst("FSM:f Region:r Initial:a {a e a x} Region:s Initial:a {a g a y}");
+      assertThat(sm.errors, hasSize(0));
+      assertThat(sm.regions, hasSize(2));
+      assertThat(sm.regions.get(1).fsmName, equalTo("s"));
+      assertThat(sm.regions.get(1).initialState.name, equalTo("a"));
+      assertThat(sm.events, contains("e", "g"));
+      assertThat(sm.actions, contains("x", "y"));
+    }
+
+    @Test
+    public void errorsNameTheirRegion() throws Exception {
+      List<AnalysisError> errors = produceAst("FSM:f Region:r Initial:a {a e b -} Region:s {c e c -}").errors;
+      assertThat(errors, hasItems(
+        new AnalysisError(UNDEFINED_STATE, "r:b"),
+        new AnalysisError(NO_INITIAL, "s")));
+    }
+
+    @Test
+    public void logicBeforeTheFirstRegion() throws Exception {
+      List<AnalysisError> errors = produceAst("FSM:f {a e a -} Region:r Initial:b {b e b -}").errors;
+      assertThat(errors, hasItems(new AnalysisError(LOGIC_OUTSIDE_REGION, "a")));
+    }
+
+    @Test
+    public void duplicateRegion() throws Exception {
+      List<AnalysisError> errors = produceAst("FSM:f Region:r Initial:a {a e a -} Region:r Initial:a {}").errors;
+      assertThat(errors, hasItems(new AnalysisError(DUPLICATE_REGION, "r")));
+    }
+  }
+
   public class AcceptanceTests {
     @Test
     public void subwayTurnstileOne() throws Exception {
@@ -0,0 +1,136 @@
+package smc.simulator;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import smc.DenseStateMachine;
+import smc.MachineCache;
+import smc.binary.StateMachineWriter;
+import smc.optimizer.Optimizer;
+import smc.semanticAnalyzer.SemanticAnalyzer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SimulatorTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private static final String TURNSTILE = """
+    FSM: Turnstile
+    Initial: Locked
+    {
+      Locked {
+        Coin Unlocked unlock
+        Pass Locked alarm
+      }
+      Unlocked Pass Locked lock
+    }""";
+  private DenseStateMachine sm;
+  private final List<String> traceInstances = new ArrayList<>();
+  private final List<String> traceEvents = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    sm = DenseStateMachine.of(new Optimizer().optimize(new SemanticAnalyzer().analyze(MachineCache.parse(TURNSTILE))));
+    // Every instance pays; every second one pays again, which is unhandled;
+    // every fourth one passes.  Instance 7 is also kicked.
+    for (int i = 0; i < 1000; i++)
+      record(i, "Coin");
+    for (int i = 0; i < 1000; i += 2)
+      record(i, "Coin");
+    for (int i = 0; i < 1000; i += 4)
+      record(i, "Pass");
+    record(7, "Kick");
+  }
+
+  private void record(int instance, String event) {
+    traceInstances.add(Integer.toString(instance));
+    traceEvents.add(event);
+  }
+
+  private Trace textTrace() throws Exception {
+    StringBuilder text = new StringBuilder("# instance event\n\n");
+    for (int i = 0; i < traceEvents.size(); i++)
+      text.append(traceInstances.get(i)).append(i % 2 == 0 ? " " : "\t ").append(traceEvents.get(i)).append(i % 3 == 0 ? "\r\n" : "\n");
+    Path path = folder.newFile("trace.txt").toPath();
+    Files.writeString(path, text);
+    return Trace.open(path);
+  }
+
+  private Trace binaryTrace() throws Exception {
+    Path path = folder.newFile("trace.bin").toPath();
+    List<String> eventNames = List.of("Pass", "Kick", "Coin");
+    try (TraceWriter writer = new TraceWriter(Files.newOutputStream(path), eventNames)) {
+      for (int i = 0; i < traceEvents.size(); i++)
+        writer.write(Integer.parseInt(traceInstances.get(i)), eventNames.indexOf(traceEvents.get(i)));
+    }
+    return Trace.open(path);
+  }
+
+  private void assertTurnstileReport(SimulationReport report) {
+    assertThat(report.events, is(1751L));
+    assertThat(report.instances, is(1000L));
+    assertThat(report.transitionCount(), is(3));
+    assertThat(report.coveredTransitionCount(), is(2));
+    assertThat(report.unhandledCount(), is(500L));
+    assertThat(report.unhandledCount("Unlocked", "Coin"), is(500L));
+    assertThat(report.unknownEvents, hasEntry("Kick", 1L));
+    assertThat(report.finalStateCount("Locked"), is(250L));
+    assertThat(report.finalStateCount("Unlocked"), is(750L));
+  }
+
+  @Test
+  public void textTraceIsReplayed() throws Exception {
+    assertTurnstileReport(new Simulator(sm, 1).run(textTrace()));
+  }
+
+  @Test
+  public void binaryTraceIsReplayed() throws Exception {
+    assertTurnstileReport(new Simulator(sm, 1).run(binaryTrace()));
+  }
+
+  @Test
+  public void partitionsGiveTheSameReport() throws Exception {
+    SimulationReport report = new Simulator(sm, 4).run(textTrace());
+
+    assertTurnstileReport(report);
+    assertThat(report.threads, is(4));
+    assertTurnstileReport(new Simulator(sm, 3).run(binaryTrace()));
+  }
+
+  @Test
+  public void linesWithOnlyAnEventBelongToOneInstance() throws Exception {
+    Path path = folder.newFile("single.txt").toPath();
+    Files.writeString(path, "Coin\nPass\nCoin");
+    SimulationReport report = new Simulator(sm, 2).run(Trace.open(path));
+
+    assertThat(report.instances, is(1L));
+    assertThat(report.finalStateCount("Unlocked"), is(1L));
+  }
+
+  @Test
+  public void commandLineReplaysACompiledMachine() throws Exception {
+    Path machine = folder.getRoot().toPath().resolve("turnstile.smb");
+    StateMachineWriter.write(sm, machine);
+    Path trace = folder.getRoot().toPath().resolve("trace.txt");
+    textTrace();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    Simulator.simulate(new String[]{"-p", "2", machine.toString(), trace.toString()}, new PrintStream(out, true));
+
+    String report = out.toString();
+    assertThat(report, startsWith("Replayed 1751 events of 1000 instances on 2 threads"));
+    assertThat(report, containsString("Transitions covered: 2 of 3 (66.7%).\n  not covered: Locked Pass\n"));
+    assertThat(report, containsString("Unhandled transitions: 500.\n  500 Unlocked Coin\n"));
+    assertThat(report, containsString("Unknown events: 1.\n  1 Kick\n"));
+    assertThat(report, endsWith("Final states:\n  750 Unlocked\n  250 Locked\n"));
+  }
+}
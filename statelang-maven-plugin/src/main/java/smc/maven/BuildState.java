@@ -0,0 +1,99 @@
+package smc.maven;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// Remembers, for every .sm file, the key it was last compiled with and the
+// files that compile produced.  A source is stale when its key has changed
+// or when one of its outputs has gone missing.
+
+public class BuildState {
+  private static final String OUTPUT_SEPARATOR = "|";
+  private final Path stateFile;
+  private final Map<String, Record> records = new TreeMap<>();
+
+  public BuildState(Path stateFile) throws IOException {
+    this.stateFile = stateFile;
+    if (Files.exists(stateFile))
+      load();
+  }
+
+  public boolean isStale(String source, String key) {
+    Record record = records.get(source);
+    if (record == null || !record.key.equals(key))
+      return true;
+    for (Path output : record.outputs)
+      if (!Files.exists(output))
+        return true;
+    return false;
+  }
+
+  public void update(String source, String key, List<Path> outputs) {
+    records.put(source, new Record(key, outputs));
+  }
+
+  public List<Path> outputs(String source) {
+    Record record = records.get(source);
+    return record == null ? List.of() : record.outputs;
+  }
+
+  // Whether any source still records the output, such as a jar that
+  // several machines are packaged into.
+  public boolean isOutput(Path output) {
+    for (Record record : records.values())
+      if (record.outputs.contains(output))
+        return true;
+    return false;
+  }
+
+  public List<Path> remove(String source) {
+    Record record = records.remove(source);
+    return record == null ? List.of() : record.outputs;
+  }
+
+  public Set<String> sources() {
+    return new TreeSet<>(records.keySet());
+  }
+
+  private void load() throws IOException {
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(stateFile)) {
+      properties.load(reader);
+    }
+    for (String source : properties.stringPropertyNames()) {
+      String[] fields = properties.getProperty(source).split("\\" + OUTPUT_SEPARATOR);
+      List<Path> outputs = new ArrayList<>();
+      for (int i = 1; i < fields.length; i++)
+        outputs.add(Path.of(fields[i]));
+      records.put(source, new Record(fields[0], outputs));
+    }
+  }
+
+  public void save() throws IOException {
+    Properties properties = new Properties();
+    for (Map.Entry<String, Record> record : records.entrySet()) {
+      StringBuilder value = new StringBuilder(record.getValue().key);
+      for (Path output : record.getValue().outputs)
+        value.append(OUTPUT_SEPARATOR).append(output);
+      properties.setProperty(record.getKey(), value.toString());
+    }
+    Files.createDirectories(stateFile.getParent());
+    try (Writer writer = Files.newBufferedWriter(stateFile)) {
+      properties.store(writer, "StateLang incremental build state");
+    }
+  }
+
+  private static class Record {
+    final String key;
+    final List<Path> outputs;
+
+    Record(String key, List<Path> outputs) {
+      this.key = key;
+      this.outputs = outputs;
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package smc.maven;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import smc.MachineCache;
+import smc.OutputCache;
+import smc.SMC;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Compiles the .sm files under src/main/sm during generate-sources.  Only
+// files whose source, language or flags changed since the last build are
+// compiled, and those are compiled in parallel inside the Maven JVM.  Files
+// a machine produced last time but no longer produces, such as the output
+// of a renamed machine, are deleted, unless another machine produces them.
+
+@Mojo(name = "generate", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
+public class GenerateMojo extends AbstractMojo {
+  @Parameter(defaultValue = "${project}", readonly = true, required = true)
+  private MavenProject project;
+
+  @Parameter(defaultValue = "${project.basedir}/src/main/sm")
+  private File sourceDirectory;
+
+  @Parameter(defaultValue = "${project.build.directory}/generated-sources/statelang")
+  private File outputDirectory;
+
+  @Parameter(defaultValue = "${project.build.directory}/statelang/build-state.properties")
+  private File stateFile;
+
+  @Parameter(defaultValue = "Java")
+  private String language;
+
+  @Parameter
+  private Map<String, String> flags = new HashMap<>();
+
+  @Parameter(defaultValue = "0")
+  private int threads;
+
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    project.addCompileSourceRoot(outputDirectory.getPath());
+    if (!sourceDirectory.isDirectory())
+      return;
+
+    try {
+      Files.createDirectories(outputDirectory.toPath());
+      BuildState state = new BuildState(stateFile.toPath());
+      Map<String, Path> sources = findSources();
+      removeDeletedSources(state, sources.keySet());
+      Map<String, String> staleSources = findStaleSources(state, sources);
+      getLog().info(String.format("%d of %d state machines are out of date.", staleSources.size(), sources.size()));
+      List<String> failures = staleSources.isEmpty() ? List.of() : compile(state, sources, staleSources);
+      state.save();
+      if (!failures.isEmpty())
+        throw new MojoFailureException("StateLang compilation failed for " + String.join(", ", failures));
+    } catch (IOException e) {
+      throw new MojoExecutionException("StateLang generation failed", e);
+    }
+  }
+
+  private Map<String, Path> findSources() throws IOException {
+    Path root = sourceDirectory.toPath();
+    Map<String, Path> sources = new TreeMap<>();
+    try (Stream<Path> files = Files.walk(root)) {
+      files.filter(p -> p.toString().endsWith(".sm"))
+        .forEach(p -> sources.put(root.relativize(p).toString(), p));
+    }
+    return sources;
+  }
+
+  private void removeDeletedSources(BuildState state, Set<String> sources) throws IOException {
+    for (String source : state.sources())
+      if (!sources.contains(source))
+        deleteOutputs(state, state.remove(source));
+  }
+
+  private void deleteOutputs(BuildState state, List<Path> outputs) throws IOException {
+    for (Path output : outputs)
+      if (!state.isOutput(output))
+        Files.deleteIfExists(output);
+  }
+
+  private Map<String, String> findStaleSources(BuildState state, Map<String, Path> sources) throws IOException {
+    Map<String, String> staleSources = new TreeMap<>();
+    for (Map.Entry<String, Path> source : sources.entrySet()) {
+      String key = OutputCache.key(source.getValue(), language, flags);
+      if (state.isStale(source.getKey(), key))
+        staleSources.put(source.getKey(), key);
+    }
+    return staleSources;
+  }
+
+  private List<String> compile(BuildState state, Map<String, Path> sources, Map<String, String> staleSources) throws MojoExecutionException, IOException {
+    int threadCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    MachineCache cache = new MachineCache();
+    try {
+      Map<String, Future<Compilation>> compilations = new TreeMap<>();
+      for (String source : staleSources.keySet())
+        compilations.put(source, executor.submit(() -> compile(sources.get(source), cache)));
+
+      List<String> failures = new ArrayList<>();
+      for (Map.Entry<String, Future<Compilation>> compilation : compilations.entrySet()) {
+        String source = compilation.getKey();
+        Compilation result = compilation.getValue().get();
+        if (result.outputs.isEmpty()) {
+          getLog().error(source + ":\n" + result.diagnostics);
+          failures.add(source);
+        } else {
+          getLog().debug(source + ":\n" + result.diagnostics);
+          List<Path> previousOutputs = new ArrayList<>(state.outputs(source));
+          previousOutputs.removeAll(result.outputs);
+          state.update(source, staleSources.get(source), result.outputs);
+          deleteOutputs(state, previousOutputs);
+        }
+      }
+      return failures;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("StateLang generation was interrupted", e);
+    } catch (ExecutionException e) {
+      throw new MojoExecutionException("StateLang generation failed", e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private Compilation compile(Path source, MachineCache cache) throws IOException {
+    List<String> args = new ArrayList<>(List.of("-l", language, "-o", outputDirectory.getPath()));
+    if (!flags.isEmpty()) {
+      StringJoiner flagList = new StringJoiner(",");
+      flags.forEach((name, value) -> flagList.add(name + ":" + value));
+      args.add("-f");
+      args.add(flagList.toString());
+    }
+    args.add(source.toString());
+
+    ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+    List<Path> outputs = SMC.compile(args.toArray(new String[0]), Path.of(""), new PrintStream(diagnostics, true, UTF_8), cache);
+    return new Compilation(diagnostics.toString(UTF_8), outputs);
+  }
+
+  private static class Compilation {
+    final String diagnostics;
+    final List<Path> outputs;
+
+    Compilation(String diagnostics, List<Path> outputs) {
+      this.diagnostics = diagnostics;
+      this.outputs = outputs;
+    }
+  }
+}
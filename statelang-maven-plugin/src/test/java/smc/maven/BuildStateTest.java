@@ -0,0 +1,59 @@
+package smc.maven;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class BuildStateTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private Path stateFile;
+  private Path output;
+
+  @Before
+  public void setUp() throws Exception {
+    stateFile = folder.getRoot().toPath().resolve("state/build-state.properties");
+    output = folder.getRoot().toPath().resolve("Turnstile.java");
+    Files.writeString(output, "class Turnstile {}");
+  }
+
+  @Test
+  public void unknownSourceIsStale() throws Exception {
+    assertThat(new BuildState(stateFile).isStale("turnstile.sm", "k1"), is(true));
+  }
+
+  @Test
+  public void savedSourceIsUpToDateUntilItsKeyChanges() throws Exception {
+    BuildState state = new BuildState(stateFile);
+    state.update("turnstile.sm", "k1", List.of(output));
+    state.save();
+
+    BuildState reloaded = new BuildState(stateFile);
+    assertThat(reloaded.isStale("turnstile.sm", "k1"), is(false));
+    assertThat(reloaded.isStale("turnstile.sm", "k2"), is(true));
+  }
+
+  @Test
+  public void missingOutputMakesSourceStale() throws Exception {
+    BuildState state = new BuildState(stateFile);
+    state.update("turnstile.sm", "k1", List.of(output));
+    Files.delete(output);
+    assertThat(state.isStale("turnstile.sm", "k1"), is(true));
+  }
+
+  @Test
+  public void removedSourceReturnsItsOutputs() throws Exception {
+    BuildState state = new BuildState(stateFile);
+    state.update("turnstile.sm", "k1", List.of(output));
+    assertThat(state.remove("turnstile.sm"), contains(output));
+    assertThat(state.sources(), empty());
+  }
+}
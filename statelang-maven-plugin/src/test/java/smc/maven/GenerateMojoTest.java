@@ -0,0 +1,155 @@
+package smc.maven;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+// Runs the goal as Maven would, with its parameters set on a fresh instance
+// for every build.
+
+public class GenerateMojoTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private static final FileTime LONG_AGO = FileTime.fromMillis(0);
+  private Path sourceDirectory;
+  private Path outputDirectory;
+  private Path stateFile;
+  private MavenProject project;
+  private final List<String> log = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    Path root = folder.getRoot().toPath();
+    sourceDirectory = Files.createDirectories(root.resolve("src/main/sm"));
+    outputDirectory = root.resolve("target/generated-sources/statelang");
+    stateFile = root.resolve("target/statelang/build-state.properties");
+    project = new MavenProject();
+  }
+
+  private void writeSource(String name, String fsm) throws Exception {
+    Files.writeString(sourceDirectory.resolve(name), String.format("Initial: i FSM: %s {i e i a}", fsm));
+  }
+
+  private void build(Map<String, String> flags, int threads) throws Exception {
+    GenerateMojo mojo = new GenerateMojo();
+    set(mojo, "project", project);
+    set(mojo, "sourceDirectory", sourceDirectory.toFile());
+    set(mojo, "outputDirectory", outputDirectory.toFile());
+    set(mojo, "stateFile", stateFile.toFile());
+    set(mojo, "language", "Java");
+    set(mojo, "flags", new HashMap<>(flags));
+    set(mojo, "threads", threads);
+    mojo.setLog(new SystemStreamLog() {
+      public void info(CharSequence content) {
+        log.add(content.toString());
+      }
+    });
+    mojo.execute();
+  }
+
+  private void build() throws Exception {
+    build(Map.of(), 1);
+  }
+
+  private static void set(GenerateMojo mojo, String name, Object value) throws Exception {
+    Field field = GenerateMojo.class.getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(mojo, value);
+  }
+
+  @Test
+  public void outputDirectoryIsACompileSourceRoot() throws Exception {
+    build();
+
+    assertThat(project.getCompileSourceRoots(), contains(outputDirectory.toString()));
+  }
+
+  @Test
+  public void machinesAreCompiledInParallelAndRecorded() throws Exception {
+    for (int i = 0; i < 8; i++)
+      writeSource("m" + i + ".sm", "M" + i);
+    build(Map.of(), 4);
+
+    BuildState state = new BuildState(stateFile);
+    assertThat(state.sources(), hasSize(8));
+    for (int i = 0; i < 8; i++) {
+      Path output = outputDirectory.resolve("M" + i + ".java");
+      assertThat(Files.readString(output), containsString("class M" + i));
+      assertThat(state.outputs("m" + i + ".sm"), contains(output));
+    }
+  }
+
+  @Test
+  public void onlyStaleMachinesAreCompiled() throws Exception {
+    writeSource("f.sm", "f");
+    writeSource("g.sm", "g");
+    build();
+    Path unchanged = outputDirectory.resolve("f.java");
+    Files.setLastModifiedTime(unchanged, LONG_AGO);
+    Files.writeString(sourceDirectory.resolve("g.sm"), "Initial: i FSM: g {i e i b}");
+    build();
+
+    assertThat(log, contains("2 of 2 state machines are out of date.", "1 of 2 state machines are out of date."));
+    assertThat(Files.getLastModifiedTime(unchanged), equalTo(LONG_AGO));
+    assertThat(Files.readString(outputDirectory.resolve("g.java")), containsString("b();"));
+  }
+
+  @Test
+  public void changedFlagsMakeEveryMachineStale() throws Exception {
+    writeSource("f.sm", "f");
+    build();
+    build(Map.of("package", "p"), 1);
+
+    assertThat(log, contains("1 of 1 state machines are out of date.", "1 of 1 state machines are out of date."));
+  }
+
+  @Test
+  public void outputsAMachineNoLongerProducesAreDeleted() throws Exception {
+    writeSource("f.sm", "f");
+    build();
+    writeSource("f.sm", "renamed");
+    build();
+
+    assertThat(Files.exists(outputDirectory.resolve("f.java")), is(false));
+    assertThat(Files.exists(outputDirectory.resolve("renamed.java")), is(true));
+  }
+
+  @Test
+  public void outputsOfDeletedMachinesAreDeleted() throws Exception {
+    writeSource("f.sm", "f");
+    writeSource("g.sm", "g");
+    build();
+    Files.delete(sourceDirectory.resolve("g.sm"));
+    build();
+
+    assertThat(Files.exists(outputDirectory.resolve("f.java")), is(true));
+    assertThat(Files.exists(outputDirectory.resolve("g.java")), is(false));
+    assertThat(new BuildState(stateFile).sources(), contains("f.sm"));
+  }
+
+  @Test
+  public void aJarSharedWithAnotherMachineIsKept() throws Exception {
+    writeSource("f.sm", "f");
+    writeSource("g.sm", "g");
+    build(Map.of("jar", "fsm.jar"), 1);
+    Files.delete(sourceDirectory.resolve("g.sm"));
+    build(Map.of("jar", "fsm.jar"), 1);
+
+    assertThat(Files.exists(outputDirectory.resolve("fsm.jar")), is(true));
+  }
+}